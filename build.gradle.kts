@@ -9,6 +9,26 @@ repositories {
     mavenCentral()
 }
 
+// the Vector API kernels, in src/vector/java, compiled apart so that no other source depends on the
+// incubating module; loaded at run time only with -Dpivoter.vectorKernels=true, see DoubleKernels
+val vector: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+}
+
+// JMH benchmarks of the hot paths, in src/jmh/java, run with ./gradlew jmh
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output + vector.output
+    }
+    test {
+        runtimeClasspath += vector.output
+    }
+}
+
+val jmhImplementation by configurations.getting
+val jmhAnnotationProcessor by configurations.getting
+
 dependencies {
 
     // JUnit dependencies
@@ -21,11 +41,25 @@ dependencies {
     // Mockito for mocking
     testImplementation("org.mockito:mockito-core:5.6.0")
 
+    // JMH for benchmarks
+    jmhImplementation("org.openjdk.jmh:jmh-core:1.37")
+    jmhAnnotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+
     // add other dependencies here as needed
 }
 
+tasks.named<JavaCompile>("compileVectorJava") {
+    // -nowarn silences the "using incubating module(s)" warning, which javac cannot otherwise disable
+    options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector", "-nowarn"))
+}
+
+tasks.jar {
+    from(vector.output)
+}
+
 tasks.test {
     useJUnitPlatform()
+    jvmArgs("--add-modules", "jdk.incubator.vector")
     testLogging {
         events("passed", "skipped", "failed")
         exceptionFormat = org.gradle.api.tasks.testing.logging.TestExceptionFormat.FULL
@@ -37,3 +71,13 @@ java {
         languageVersion.set(JavaLanguageVersion.of(17)) // Adjust Java version if necessary
     }
 }
+
+// e.g. ./gradlew jmh -Pjmh.includes=QueryBenchmark, allocation rates being reported by the GC profiler
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    jvmArgs("--add-modules", "jdk.incubator.vector")
+    args = listOf("-prof", "gc") + listOfNotNull(project.findProperty("jmh.includes")?.toString())
+}
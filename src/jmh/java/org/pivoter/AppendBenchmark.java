@@ -0,0 +1,72 @@
+package org.pivoter;
+
+import org.openjdk.jmh.annotations.*;
+import org.pivoter.aggregation.Aggregations;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures appending a small delta to the next version of a built pivot tree, as {@link Pivoter#append(List)}
+ * does, against the claim of {@link ValueStore} that retaining raw values only copies the nodes along the paths
+ * of the delta: with and without retained values, and with a query of the root values right after, which
+ * assembles the view of the changed root.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AppendBenchmark {
+
+    @Param({"10000", "100000"})
+    int rowCount;
+
+    @Param({"1", "100"})
+    int deltaSize;
+
+    @Param({"8"})
+    int depth;
+
+    @Param({"10"})
+    int cardinality;
+
+    private PivotTree retainingTree;
+    private PivotTree aggregatingTree;
+    private List<PivotRow> delta;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DataGenerator generator = new DataGenerator(depth, cardinality, 0.0, 42);
+        List<PivotRow> pivotRows = generator.pivotRows(rowCount + deltaSize);
+        delta = pivotRows.subList(rowCount, pivotRows.size());
+
+        retainingTree = new PivotTree(List.of(Aggregations.SUM), true);
+        retainingTree.build(pivotRows.subList(0, rowCount));
+        aggregatingTree = new PivotTree(List.of(Aggregations.SUM), false);
+        aggregatingTree.build(pivotRows.subList(0, rowCount));
+    }
+
+    // each invocation starts from the same built version, which nextVersion leaves unmodified
+    @Benchmark
+    public PivotTree appendRetainingValues() {
+        PivotTree pivotTree = retainingTree.nextVersion();
+        pivotTree.build(delta);
+        return pivotTree;
+    }
+
+    @Benchmark
+    public PivotTree appendAggregatesOnly() {
+        PivotTree pivotTree = aggregatingTree.nextVersion();
+        pivotTree.build(delta);
+        return pivotTree;
+    }
+
+    @Benchmark
+    public double appendThenQueryRootValues() {
+        PivotTree pivotTree = retainingTree.nextVersion();
+        pivotTree.build(delta);
+        return pivotTree.getRoot().getValues().sum();
+    }
+}
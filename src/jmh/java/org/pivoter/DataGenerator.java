@@ -0,0 +1,91 @@
+package org.pivoter;
+
+import java.util.*;
+
+/**
+ * Generates synthetic data rows for the benchmarks: {@code depth} label columns "level00", "level01", ...
+ * and the value column '#'. The labels of each column are drawn among {@code cardinality} ones following
+ * a Zipf distribution, which is uniform for a skew of 0 and concentrates the rows on a few labels as the
+ * skew grows. Rows are reproducible for a given seed.
+ */
+final class DataGenerator {
+
+    private final int depth;
+    private final String[][] labels; // per level
+    private final double[] cumulativeProbabilities; // of the label ranks
+    private final Random random;
+
+    DataGenerator(int depth, int cardinality, double skew, long seed) {
+        if (depth <= 0 || cardinality <= 0 || skew < 0)
+            throw new IllegalArgumentException(String.format(
+                    "Invalid depth %d, cardinality %d or skew %s.", depth, cardinality, skew));
+
+        this.depth = depth;
+        this.labels = new String[depth][cardinality];
+        for (int level = 0; level < depth; level++)
+            for (int rank = 0; rank < cardinality; rank++)
+                labels[level][rank] = String.format("l%02d-%d", level, rank);
+
+        this.cumulativeProbabilities = new double[cardinality];
+        double total = 0;
+        for (int rank = 0; rank < cardinality; rank++) {
+            total += 1 / Math.pow(rank + 1, skew);
+            cumulativeProbabilities[rank] = total;
+        }
+        for (int rank = 0; rank < cardinality; rank++)
+            cumulativeProbabilities[rank] /= total;
+
+        this.random = new Random(seed);
+    }
+
+    static String column(int level) {
+        return String.format("level%02d", level); // padded, so that the natural order is the level order
+    }
+
+    /**
+     * @return the label columns, in level order.
+     */
+    List<String> columns() {
+        List<String> columns = new ArrayList<>(depth);
+        for (int level = 0; level < depth; level++)
+            columns.add(column(level));
+        return columns;
+    }
+
+    List<Map<String, String>> dataRows(int rowCount) {
+        List<Map<String, String>> dataRows = new ArrayList<>(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            Map<String, String> dataRow = new HashMap<>();
+            for (int level = 0; level < depth; level++)
+                dataRow.put(column(level), labels[level][nextRank()]);
+            dataRow.put("#", Double.toString(Math.round(random.nextDouble() * 100_000) / 100.0));
+            dataRows.add(dataRow);
+        }
+        return dataRows;
+    }
+
+    /**
+     * @return rows already in level order, as produced by {@link Pivoter#convert(List)}.
+     */
+    List<PivotRow> pivotRows(int rowCount) {
+        List<PivotRow> pivotRows = new ArrayList<>(rowCount);
+        for (int row = 0; row < rowCount; row++)
+            pivotRows.add(new PivotRow(path(depth), random.nextDouble() * 1000));
+        return pivotRows;
+    }
+
+    /**
+     * @return the labels of a random node at the given depth, drawn like the rows are.
+     */
+    List<String> path(int length) {
+        List<String> path = new ArrayList<>(length);
+        for (int level = 0; level < length; level++)
+            path.add(labels[level][nextRank()]);
+        return path;
+    }
+
+    private int nextRank() {
+        int rank = Arrays.binarySearch(cumulativeProbabilities, random.nextDouble());
+        return Math.min(rank < 0 ? -rank - 1 : rank, cumulativeProbabilities.length - 1);
+    }
+}
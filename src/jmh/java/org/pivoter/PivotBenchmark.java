@@ -0,0 +1,124 @@
+package org.pivoter;
+
+import org.openjdk.jmh.annotations.*;
+import org.pivoter.aggregation.Aggregations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building a pivot tree from data rows, against the O(m * n) claim of {@link Pivoter}:
+ * the whole {@link Pivoter#pivot(List)}, its validation and conversion steps alone, and the insertion
+ * of converted rows by {@link PivotTree#build(List)} and {@link PivotTree#buildRecursive(List)}.
+ * Conversion goes through the {@link HierarchyComparator} of a custom hierarchy, after a varying number
+ * of prior appends, as its cost must not grow with the number of comparisons made before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PivotBenchmark {
+
+    @Param({"10000", "100000"})
+    int rowCount;
+
+    @Param({"3", "8", "24"})
+    int depth;
+
+    @Param({"10", "1000"})
+    int cardinality;
+
+    @Param({"0.0", "1.2"})
+    double skew;
+
+    private List<Map<String, String>> dataRows;
+    private List<String> reversedHierarchy;
+    private List<PivotRow> pivotRows;
+    private Pivoter pivoter;
+
+    /**
+     * A pivoter whose hierarchy comparator has ordered the labels of a number of appends before the conversions.
+     */
+    @State(Scope.Benchmark)
+    public static class AppendedPivoter {
+
+        @Param({"0", "100", "10000"})
+        int priorAppends;
+
+        private Pivoter pivoter;
+
+        @Setup(Level.Trial)
+        public void setUp(PivotBenchmark benchmark) {
+            List<Map<String, String>> dataRow = benchmark.dataRows.subList(0, 1);
+            pivoter = new Pivoter();
+            pivoter.pivot(dataRow, benchmark.reversedHierarchy); // sets the hierarchy used by convert
+            for (int append = 0; append < priorAppends; append++)
+                pivoter.append(dataRow); // orders the labels of the row with the hierarchy comparator
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DataGenerator generator = new DataGenerator(depth, cardinality, skew, 42);
+        dataRows = generator.dataRows(rowCount);
+        reversedHierarchy = new ArrayList<>(generator.columns());
+        Collections.reverse(reversedHierarchy);
+        pivotRows = generator.pivotRows(rowCount);
+
+        pivoter = new Pivoter();
+        pivoter.pivot(dataRows.subList(0, 1));
+    }
+
+    @Benchmark
+    public PivotTree pivotNaturalOrder() {
+        Pivoter pivoter = new Pivoter();
+        pivoter.pivot(dataRows);
+        return pivoter.getPivotTree();
+    }
+
+    @Benchmark
+    public PivotTree pivotCustomHierarchy() {
+        Pivoter pivoter = new Pivoter();
+        pivoter.pivot(dataRows, reversedHierarchy);
+        return pivoter.getPivotTree();
+    }
+
+    @Benchmark
+    public PivotTree pivotMaintainedAggregations() {
+        Pivoter pivoter = new Pivoter();
+        pivoter.setAggregations(List.of(Aggregations.SUM, Aggregations.MEAN));
+        pivoter.setRetainValues(false);
+        pivoter.pivot(dataRows);
+        return pivoter.getPivotTree();
+    }
+
+    @Benchmark
+    public List<PivotRow> convert(AppendedPivoter appended) {
+        return appended.pivoter.convert(dataRows);
+    }
+
+    @Benchmark
+    public Pivoter validateDataRows() {
+        pivoter.validateDataRows(dataRows);
+        return pivoter;
+    }
+
+    @Benchmark
+    public PivotTree build() {
+        PivotTree pivotTree = new PivotTree();
+        pivotTree.build(pivotRows);
+        return pivotTree;
+    }
+
+    @Benchmark
+    public PivotTree buildRecursive() {
+        PivotTree pivotTree = new PivotTree();
+        pivotTree.buildRecursive(pivotRows);
+        return pivotTree;
+    }
+}
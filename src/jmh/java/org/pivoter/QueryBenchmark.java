@@ -0,0 +1,117 @@
+package org.pivoter;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pivoter.aggregation.Aggregations;
+import org.pivoter.utils.PivoterUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Measures queries of random nodes at every depth, against the O(m * log(n)) and O(m) claims of
+ * {@link Pivoter}: each {@link PivoterUtils} function scanning the retained values of the mutable and
+ * of the frozen tree, a maintained aggregation, and an aggregation computed lazily then memoized.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+    private static final int QUERY_COUNT = 1024;
+
+    @Param({"100000"})
+    int rowCount;
+
+    @Param({"3", "8"})
+    int depth;
+
+    @Param({"10", "1000"})
+    int cardinality;
+
+    @Param({"0.0", "1.2"})
+    double skew;
+
+    private List<List<String>> queryPaths;
+    private Pivoter pivoter;
+    private Pivoter maintainingPivoter;
+    private Pivoter lazyPivoter;
+    private FrozenPivotTree frozenPivotTree;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DataGenerator generator = new DataGenerator(depth, cardinality, skew, 42);
+        List<Map<String, String>> dataRows = generator.dataRows(rowCount);
+        queryPaths = new ArrayList<>(QUERY_COUNT);
+        for (int query = 0; query < QUERY_COUNT; query++)
+            queryPaths.add(generator.path(query % (depth + 1)));
+
+        pivoter = new Pivoter();
+        pivoter.pivot(dataRows);
+        frozenPivotTree = pivoter.freeze();
+
+        maintainingPivoter = new Pivoter();
+        maintainingPivoter.setAggregations(List.of(Aggregations.SUM));
+        maintainingPivoter.setRetainValues(false);
+        maintainingPivoter.pivot(dataRows);
+
+        lazyPivoter = new Pivoter();
+        lazyPivoter.setLazyAggregation(true);
+        lazyPivoter.pivot(dataRows);
+    }
+
+    // a separate state, so that only the benchmarks of the functions are run for each of them
+    @State(Scope.Benchmark)
+    public static class PivotFunction {
+
+        @Param({"sum", "average", "mode"})
+        String function;
+
+        Function<Collection<Double>, Double> pivotFunction;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            pivotFunction = switch (function) {
+                case "sum" -> PivoterUtils::sum;
+                case "average" -> PivoterUtils::average;
+                case "mode" -> PivoterUtils::mode;
+                default -> throw new IllegalArgumentException("Unknown function: " + function);
+            };
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public void queryFunction(PivotFunction function, Blackhole blackhole) {
+        for (List<String> queryPath : queryPaths)
+            blackhole.consume(pivoter.query(queryPath, function.pivotFunction));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public void queryFrozenFunction(PivotFunction function, Blackhole blackhole) {
+        for (List<String> queryPath : queryPaths)
+            blackhole.consume(frozenPivotTree.query(queryPath, function.pivotFunction));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public void queryMaintainedAggregation(Blackhole blackhole) {
+        for (List<String> queryPath : queryPaths)
+            blackhole.consume(maintainingPivoter.query(queryPath, Aggregations.SUM));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public void queryLazyAggregation(Blackhole blackhole) {
+        for (List<String> queryPath : queryPaths)
+            blackhole.consume(lazyPivoter.query(queryPath, Aggregations.MEAN));
+    }
+}
@@ -0,0 +1,111 @@
+package org.pivoter.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link DoubleKernels} against the loops they replace: a boxed {@code List<Double>} as
+ * iterated by the {@link PivoterUtils} functions, and a {@link DoubleValues} folded value by value
+ * into an accumulator. The scalar and Vector API kernels are both measured, whatever
+ * {@link DoubleKernels#VECTOR_PROPERTY} is, to compare them on the same machine, the latter
+ * requiring the {@code jdk.incubator.vector} module, which the jmh task resolves.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KernelBenchmark {
+
+    @Param({"16", "1024", "1000000"})
+    int size;
+
+    private double[] array;
+    private DoubleValues values;
+    private List<Double> boxed;
+    private DoubleKernels.Vectorized vectorKernels;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        array = new double[size];
+        boxed = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            array[i] = random.nextGaussian() * 1000;
+            boxed.add(array[i]);
+        }
+        values = DoubleValues.of(array, 0, size);
+        vectorKernels = DoubleKernels.loadVectorized();
+        if (vectorKernels == null)
+            throw new IllegalStateException("The Vector API kernels require --add-modules jdk.incubator.vector.");
+    }
+
+    @Benchmark
+    public double sumBoxed() {
+        double sum = 0.0;
+        for (Double value : boxed)
+            sum += value;
+        return sum;
+    }
+
+    @Benchmark
+    public double sumSequential() {
+        double sum = 0.0;
+        for (int i = 0; i < values.size(); i++)
+            sum += values.getDouble(i);
+        return sum;
+    }
+
+    @Benchmark
+    public double sumScalarKernel() {
+        return DoubleKernels.scalarSum(array, 0, size);
+    }
+
+    @Benchmark
+    public double sumVectorKernel() {
+        return vectorKernels.sum(array, 0, size);
+    }
+
+    @Benchmark
+    public double sumPairwise() {
+        return DoubleKernels.sum(array, 0, size);
+    }
+
+    @Benchmark
+    public double sumCompensated() {
+        return DoubleKernels.compensatedSum(array, 0, size);
+    }
+
+    @Benchmark
+    public double minBoxed() {
+        double min = Double.NaN;
+        for (Double value : boxed)
+            if (Double.isNaN(min) || value < min) min = value;
+        return min;
+    }
+
+    @Benchmark
+    public double minScalarKernel() {
+        return DoubleKernels.scalarMin(array, 0, size);
+    }
+
+    @Benchmark
+    public double minVectorKernel() {
+        return vectorKernels.min(array, 0, size);
+    }
+
+    @Benchmark
+    public double averageBoxed() {
+        return PivoterUtils.average(boxed);
+    }
+
+    @Benchmark
+    public double averageKernel() {
+        return PivoterUtils.average(values);
+    }
+}
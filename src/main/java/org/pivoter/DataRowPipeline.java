@@ -0,0 +1,107 @@
+package org.pivoter;
+
+import org.pivoter.utils.DoubleParser;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Validates, converts and hands over data rows, one row at a time.
+ *
+ * <p>The stages are kept separate but run fused, each row flowing through all of them before the
+ * next one is read: a schema check against the labels of the first data row, a single parse of
+ * each '#' (or measure) value by a {@link DoubleParser}, a constant-time lookup of every label, the conversion
+ * into a {@link PivotRow} in level order, and finally the sink, e.g. {@link PivotTree#insert(PivotRow)}.
+ * The data rows are therefore read once, and never materialized as an intermediate list unless
+ * the sink does so.</p>
+ *
+ * <p>A pipeline is not thread-safe.</p>
+ */
+final class DataRowPipeline implements Consumer<Map<String, String>> {
+
+    private final Set<String> labels; // labels of the first dataRow, which all dataRows must match
+    private final List<String> measures; // labels of the numerical values, ["#"] by default
+    private final LevelOrder levelOrder;
+    private final Consumer<PivotRow> sink;
+    private final DoubleParser parser = new DoubleParser();
+
+    DataRowPipeline(Set<String> labels, Comparator<String> pivotHierarchyComparator, Consumer<PivotRow> sink) {
+        this(labels, List.of("#"), pivotHierarchyComparator, sink);
+    }
+
+    DataRowPipeline(Set<String> labels, List<String> measures,
+                    Comparator<String> pivotHierarchyComparator, Consumer<PivotRow> sink) {
+        this.labels = labels;
+        this.measures = measures;
+        this.levelOrder = LevelOrder.of(labels, measures, pivotHierarchyComparator);
+        this.sink = sink;
+    }
+
+    /**
+     * @return the labels of the data row, in iteration order, as the set all other data rows must match.
+     */
+    static Set<String> labelsOf(Map<String, String> dataRow) {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(dataRow.keySet()));
+    }
+
+    Set<String> getLabels() {
+        return labels;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the data row is invalid.
+     */
+    @Override
+    public void accept(Map<String, String> dataRow) {
+        checkSchema(dataRow, labels.size(), measures);
+        if (measures.size() == 1) {
+            double value = parseValue(dataRow, measures.get(0), parser);
+            checkLabels(dataRow);
+            sink.accept(levelOrder.convert(dataRow, value));
+        } else {
+            double[] measureValues = new double[measures.size()];
+            for (int measure = 0; measure < measureValues.length; measure++)
+                measureValues[measure] = parseValue(dataRow, measures.get(measure), parser);
+            checkLabels(dataRow);
+            sink.accept(levelOrder.convert(dataRow, measureValues));
+        }
+    }
+
+    private void checkLabels(Map<String, String> dataRow) {
+        for (String label : dataRow.keySet())
+            checkLabel(label, labels, dataRow);
+    }
+
+    static void checkSchema(Map<String, String> dataRow, int labelsSize, List<String> measures) { // map prevents duplicated labels
+        if (labelsSize != dataRow.size())
+            throw new IllegalArgumentException(String.format(
+                    "Inconsistent number of labels in dataRow. Expected %d labels, but found %d: %s",
+                    labelsSize, dataRow.size(), dataRow));
+
+        for (String measure : measures)
+            if (!dataRow.containsKey(measure))
+                throw new IllegalArgumentException("Each dataRow must contain a label '" + measure + "' for the numerical value.");
+    }
+
+    static double parseValue(Map<String, String> dataRow, String measure, DoubleParser parser) {
+        String value = dataRow.get(measure);
+        if (!parser.parse(value))
+            throw new IllegalArgumentException(String.format(
+                    "Invalid numerical value for label '%s': '%s'. The value must be a valid Double.", measure, value));
+        return parser.value();
+    }
+
+    static void checkLabel(String label, Set<String> labels, Map<String, String> dataRow) {
+        if (label.isEmpty() || label.isBlank())
+            throw new IllegalArgumentException(String.format(
+                    "dataRow contains empty or blank labels: %s. Labels must be non-empty strings.", dataRow));
+
+        if (dataRow.get(label) == null)
+            throw new IllegalArgumentException(String.format(
+                    "dataRow %s contains a null value for label '%s'. All labels must have non-null values.", dataRow, label));
+
+        if (!labels.contains(label))
+            throw new IllegalArgumentException(String.format(
+                    "Label '%s' in dataRow %s does not match the consistent set of labels: %s", label, dataRow, labels));
+    }
+}
@@ -0,0 +1,311 @@
+package org.pivoter;
+
+import org.pivoter.utils.DoubleParser;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Reads a delimited (e.g. CSV or TSV) UTF-8 file straight into a pivot tree, see {@link Pivoter#pivot(Path, char, String)}.
+ *
+ * <p>The file is memory-mapped in windows, and each line is tokenized in place: the bytes of a label
+ * are looked up in a per-column cache of dictionary codes, so a label is only decoded into a
+ * {@code String} the first time it is seen, and the value is parsed from its bytes by a
+ * {@link DoubleParser}. No map, row or string is allocated per line.</p>
+ *
+ * <p>The first line is the header. Fields may be quoted with '"', a quote inside a quoted field
+ * being escaped as '""', but cannot span lines. Empty lines are skipped.</p>
+ */
+final class DelimitedFileReader {
+
+    static final int DEFAULT_WINDOW_SIZE = 1 << 28;
+    private static final int VALUE = -1;
+    private static final int IGNORED = -2;
+
+    private final byte delimiter;
+    private final String valueColumn;
+    private final List<String> pivotHierarchy; // null for the order of the header
+    private final int windowSize;
+    private final DoubleParser parser = new DoubleParser();
+
+    // set once the header is read
+    private List<String> header;
+    private int[] roles; // per column, its level in the hierarchy, VALUE or IGNORED
+    private LabelCodes[] labelCodes; // per level
+    private int[] codes; // of the current line, per level
+    private long lineNumber;
+    private long rowCount;
+
+    DelimitedFileReader(char delimiter, String valueColumn, List<String> pivotHierarchy, int windowSize) {
+        if (delimiter > 0x7F || delimiter == '"' || delimiter == '\r' || delimiter == '\n')
+            throw new IllegalArgumentException("Invalid delimiter: '" + delimiter + "'. It must be an ASCII character other than a quote or a line break.");
+        if (valueColumn == null || valueColumn.isBlank())
+            throw new IllegalArgumentException("valueColumn cannot be null or blank.");
+
+        this.delimiter = (byte) delimiter;
+        this.valueColumn = valueColumn;
+        this.pivotHierarchy = pivotHierarchy;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Inserts all the lines of the file into the tree.
+     *
+     * @return the pivot hierarchy of the tree: the columns of its levels, in order.
+     * @throws IllegalArgumentException if the file or the pivot hierarchy is invalid.
+     */
+    List<String> read(Path file, PivotTree pivotTree) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+
+            while (position < size) {
+                long length = Math.min(windowSize, size - position);
+                boolean last = position + length == size;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                int from = position == 0 ? skipByteOrderMark(buffer) : 0;
+                int to = last ? (int) length : lastLineEnd(buffer);
+                if (to < 0)
+                    throw new IllegalArgumentException(String.format(
+                            "Line %d is longer than %d bytes.", lineNumber + 1, windowSize));
+
+                while (from < to)
+                    from = readLine(buffer, from, to, pivotTree);
+                position += to;
+            }
+        }
+
+        if (header == null)
+            throw new IllegalArgumentException("The file has no header: " + file);
+        return getPivotHierarchy();
+    }
+
+    long getRowCount() {
+        return rowCount;
+    }
+
+    private static int skipByteOrderMark(MappedByteBuffer buffer) {
+        boolean bom = buffer.limit() >= 3
+                && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF;
+        return bom ? 3 : 0;
+    }
+
+    // the index just after the last line break of the window, or -1 if there is none
+    private static int lastLineEnd(MappedByteBuffer buffer) {
+        for (int i = buffer.limit() - 1; i >= 0; i--)
+            if (buffer.get(i) == '\n') return i + 1;
+        return -1;
+    }
+
+    /**
+     * @return the index just after the line starting at {@code from}.
+     */
+    private int readLine(MappedByteBuffer buffer, int from, int to, PivotTree pivotTree) {
+        lineNumber++;
+        int i = from;
+        if (buffer.get(i) == '\n') return i + 1;
+        if (buffer.get(i) == '\r' && (i + 1 == to || buffer.get(i + 1) == '\n')) return Math.min(i + 2, to);
+
+        List<String> headerFields = header == null ? new ArrayList<>() : null;
+        double value = 0;
+        int field = 0;
+
+        while (true) {
+            int fieldStart = i;
+            boolean quoted = i < to && buffer.get(i) == '"';
+            if (quoted) i = skipQuoted(buffer, i, to);
+            else while (i < to && buffer.get(i) != delimiter && buffer.get(i) != '\n') i++;
+
+            int fieldEnd = i;
+            if (fieldEnd > fieldStart && buffer.get(fieldEnd - 1) == '\r' && (i == to || buffer.get(i) == '\n')) fieldEnd--;
+
+            if (headerFields != null) headerFields.add(decode(buffer, fieldStart, fieldEnd));
+            else if (field < roles.length) {
+                int role = roles[field];
+                if (role >= 0) codes[role] = encode(role, buffer, fieldStart, fieldEnd);
+                else if (role == VALUE) value = parseValue(buffer, fieldStart, fieldEnd);
+            }
+            field++;
+
+            if (i == to) break;
+            if (buffer.get(i++) == '\n') break;
+        }
+
+        if (headerFields != null) {
+            readHeader(headerFields, pivotTree);
+        } else {
+            if (field != roles.length)
+                throw new IllegalArgumentException(String.format(
+                        "Inconsistent number of fields in line %d. Expected %d fields, but found %d.", lineNumber, roles.length, field));
+            pivotTree.insert(codes, value);
+            rowCount++;
+        }
+        return i;
+    }
+
+    // the index just after the closing quote of the field starting at i
+    private int skipQuoted(MappedByteBuffer buffer, int i, int to) {
+        i++;
+        while (true) {
+            if (i == to || buffer.get(i) == '\n')
+                throw new IllegalArgumentException(String.format("Unterminated quoted field in line %d.", lineNumber));
+            if (buffer.get(i) == '"') {
+                if (i + 1 < to && buffer.get(i + 1) == '"') i += 2;
+                else return skipToFieldEnd(buffer, i + 1, to);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private int skipToFieldEnd(MappedByteBuffer buffer, int i, int to) {
+        if (i < to && buffer.get(i) == '\r') i++;
+        if (i < to && buffer.get(i) != delimiter && buffer.get(i) != '\n')
+            throw new IllegalArgumentException(String.format("Unexpected character after a quoted field in line %d.", lineNumber));
+        return i;
+    }
+
+    private void readHeader(List<String> headerFields, PivotTree pivotTree) {
+        if (new HashSet<>(headerFields).size() != headerFields.size())
+            throw new IllegalArgumentException("The header cannot contain duplicated columns: " + headerFields);
+        if (!headerFields.contains(valueColumn))
+            throw new IllegalArgumentException("The header does not contain the value column '" + valueColumn + "': " + headerFields);
+
+        this.header = headerFields;
+        List<String> levels = getPivotHierarchy();
+        Set<String> seen = new HashSet<>();
+        for (String label : levels) {
+            if (!headerFields.contains(label))
+                throw new IllegalArgumentException("pivotHierarchy '" + label + "' is not consistent with the provided header.");
+            if (valueColumn.equals(label))
+                throw new IllegalArgumentException("pivotHierarchy label '" + label + "' is not valid.");
+            if (!seen.add(label))
+                throw new IllegalArgumentException("pivotHierarchy cannot contain duplicates");
+        }
+
+        this.roles = new int[headerFields.size()];
+        for (int column = 0; column < roles.length; column++) {
+            String name = headerFields.get(column);
+            roles[column] = valueColumn.equals(name) ? VALUE : levels.contains(name) ? levels.indexOf(name) : IGNORED;
+        }
+        this.labelCodes = new LabelCodes[levels.size()];
+        for (int level = 0; level < labelCodes.length; level++)
+            labelCodes[level] = new LabelCodes(pivotTree.getDictionary(level));
+        this.codes = new int[levels.size()];
+    }
+
+    private List<String> getPivotHierarchy() {
+        if (pivotHierarchy != null) return pivotHierarchy;
+
+        List<String> levels = new ArrayList<>(header);
+        levels.remove(valueColumn);
+        return levels;
+    }
+
+    private int encode(int level, MappedByteBuffer buffer, int from, int to) {
+        LabelCodes cache = labelCodes[level];
+        int code = cache.get(buffer, from, to);
+        if (code != LabelDictionary.NOT_FOUND) return code;
+
+        String label = decode(buffer, from, to);
+        if (label.isBlank())
+            throw new IllegalArgumentException(String.format(
+                    "Line %d contains an empty or blank label. Labels must be non-empty strings.", lineNumber));
+
+        code = cache.dictionary.encode(label);
+        cache.put(buffer, from, to, code);
+        return code;
+    }
+
+    private double parseValue(MappedByteBuffer buffer, int from, int to) {
+        boolean quoted = to - from >= 2 && buffer.get(from) == '"';
+        if (!(quoted ? parser.parse(buffer, from + 1, to - 1) : parser.parse(buffer, from, to)))
+            throw new IllegalArgumentException(String.format(
+                    "Invalid numerical value for column '%s' in line %d: '%s'. The value must be a valid Double.",
+                    valueColumn, lineNumber, decode(buffer, from, to)));
+        return parser.value();
+    }
+
+    private static String decode(MappedByteBuffer buffer, int from, int to) {
+        boolean quoted = to - from >= 2 && buffer.get(from) == '"';
+        byte[] bytes = new byte[quoted ? to - from - 2 : to - from];
+        buffer.get(quoted ? from + 1 : from, bytes);
+
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        return quoted ? text.replace("\"\"", "\"") : text;
+    }
+
+    /**
+     * The dictionary codes of the labels of a column, keyed by their raw bytes in the file.
+     * Open addressing with linear probing, as in {@link IntChildMap}.
+     */
+    private static final class LabelCodes {
+
+        private final LabelDictionary dictionary;
+        private byte[][] keys = new byte[16][];
+        private int[] hashes = new int[16];
+        private int[] values = new int[16];
+        private int size;
+
+        LabelCodes(LabelDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        int get(MappedByteBuffer buffer, int from, int to) {
+            int hash = hash(buffer, from, to);
+            int mask = keys.length - 1;
+            for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask)
+                if (hashes[slot] == hash && matches(keys[slot], buffer, from, to)) return values[slot];
+            return LabelDictionary.NOT_FOUND;
+        }
+
+        void put(MappedByteBuffer buffer, int from, int to, int code) {
+            if (2 * (size + 1) > keys.length) grow();
+
+            byte[] key = new byte[to - from];
+            buffer.get(from, key);
+            insert(key, hash(buffer, from, to), code);
+            size++;
+        }
+
+        private void insert(byte[] key, int hash, int code) {
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (keys[slot] != null) slot = (slot + 1) & mask;
+            keys[slot] = key;
+            hashes[slot] = hash;
+            values[slot] = code;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            int[] oldHashes = hashes;
+            int[] oldValues = values;
+            keys = new byte[2 * oldKeys.length][];
+            hashes = new int[keys.length];
+            values = new int[keys.length];
+            for (int slot = 0; slot < oldKeys.length; slot++)
+                if (oldKeys[slot] != null) insert(oldKeys[slot], oldHashes[slot], oldValues[slot]);
+        }
+
+        private static int hash(MappedByteBuffer buffer, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++)
+                hash = 31 * hash + buffer.get(i);
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean matches(byte[] key, MappedByteBuffer buffer, int from, int to) {
+            if (key.length != to - from) return false;
+            for (int i = 0; i < key.length; i++)
+                if (key[i] != buffer.get(from + i)) return false;
+            return true;
+        }
+    }
+}
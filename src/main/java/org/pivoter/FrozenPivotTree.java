@@ -0,0 +1,301 @@
+package org.pivoter;
+
+import org.pivoter.aggregation.Accumulator;
+import org.pivoter.aggregation.Aggregation;
+import org.pivoter.utils.DoubleValues;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A read-only, compact copy of a {@link PivotTree}, built by {@link PivotTree#freeze()}.
+ *
+ * <p>Nodes are numbered in breadth-first order and stored as parallel primitive arrays: the children
+ * of node {@code i} are the contiguous range {@code [childrenFrom[i], childrenTo[i])}, sorted by label
+ * code so that a child is found by binary search, and the aggregates of node {@code i} are read from
+ * {@code results[aggregation][i]}. A query walks a few arrays instead of chasing node, map and
+ * accumulator objects, and the whole tree takes a handful of objects regardless of its size.</p>
+ *
+ * <p>Being immutable, a frozen tree can be queried by any number of threads.</p>
+ */
+public final class FrozenPivotTree {
+
+    private final List<String> measures;
+    private final List<Aggregation> aggregations;
+
+    // per level, the label of each code, and the code of each label
+    private final String[][] levelLabels;
+    private final List<Map<String, Integer>> levelCodes;
+
+    // per node, in breadth-first order
+    private final int[] labelCodes;
+    private final int[] childrenFrom;
+    private final int[] childrenTo;
+    private final long[] rowCounts;
+    private final double[][] results; // per measure and aggregation (measure * #aggregations + aggregation), per node
+
+    // retained raw values, in the depth-first layout of the tree; null when not retained
+    private final double[] values;
+    private final int[] valuesFrom;
+    private final int[] valuesTo;
+
+    FrozenPivotTree(PivotTree pivotTree) {
+        PivotTreeNode root = pivotTree.getRoot();
+        this.measures = pivotTree.getMeasures();
+        this.aggregations = pivotTree.getAggregations();
+
+        LabelDictionaries dictionaries = root.getDictionaries();
+        this.levelLabels = new String[dictionaries.depth()][];
+        this.levelCodes = new ArrayList<>();
+        for (int depth = 0; depth < levelLabels.length; depth++) {
+            LabelDictionary dictionary = dictionaries.get(depth);
+            levelLabels[depth] = new String[dictionary.size()];
+            Map<String, Integer> codes = new HashMap<>();
+            for (int code = 0; code < dictionary.size(); code++) {
+                levelLabels[depth][code] = dictionary.decode(code);
+                codes.put(levelLabels[depth][code], code);
+            }
+            levelCodes.add(codes);
+        }
+
+        // breadth-first numbering, children sorted by code
+        List<PivotTreeNode> nodes = new ArrayList<>();
+        List<Integer> codes = new ArrayList<>();
+        nodes.add(root);
+        codes.add(LabelDictionary.NOT_FOUND);
+        int nodeCount = 1;
+        int[] from = new int[countNodes(root)];
+        int[] to = new int[from.length];
+
+        for (int node = 0; node < nodes.size(); node++) {
+            IntChildMap children = nodes.get(node).getChildMap();
+            int[] sortedSlots = sortedSlots(children);
+
+            from[node] = nodeCount;
+            for (int slot : sortedSlots) {
+                nodes.add(children.nodeAt(slot));
+                codes.add(children.codeAt(slot));
+                nodeCount++;
+            }
+            to[node] = nodeCount;
+        }
+
+        this.labelCodes = codes.stream().mapToInt(Integer::intValue).toArray();
+        this.childrenFrom = from;
+        this.childrenTo = to;
+        this.rowCounts = new long[nodeCount];
+        this.results = new double[measures.size() * aggregations.size()][nodeCount];
+        boolean retainValues = pivotTree.isRetainingValues();
+        this.values = retainValues ? new double[root.getValueCount()] : null;
+        this.valuesFrom = retainValues ? new int[nodeCount] : null;
+        this.valuesTo = retainValues ? new int[nodeCount] : null;
+
+        for (int node = 0; node < nodeCount; node++) {
+            PivotTreeNode pivotTreeNode = nodes.get(node);
+            rowCounts[node] = pivotTreeNode.getRowCount();
+            for (int measure = 0; measure < measures.size(); measure++)
+                for (int aggregation = 0; aggregation < aggregations.size(); aggregation++)
+                    results[measure * aggregations.size() + aggregation][node] =
+                            pivotTreeNode.getAccumulator(measure, aggregations.get(aggregation)).result();
+        }
+        if (retainValues)
+            layOutValues(nodes);
+    }
+
+    // depth-first, children by label as in the tree, whatever the layout of the tree's values is: parents come
+    // first in breadth-first order, so the range of a node is known before its own values and children are placed
+    private void layOutValues(List<PivotTreeNode> nodes) {
+        for (int node = 0; node < nodes.size(); node++) {
+            PivotTreeNode pivotTreeNode = nodes.get(node);
+            DoubleValues ownValues = pivotTreeNode.getOwnValues();
+            for (int i = 0; i < ownValues.size(); i++)
+                values[valuesFrom[node] + i] = ownValues.getDouble(i);
+            valuesTo[node] = valuesFrom[node] + pivotTreeNode.getValueCount();
+
+            Integer[] childrenByLabel = new Integer[childrenTo[node] - childrenFrom[node]];
+            for (int i = 0; i < childrenByLabel.length; i++)
+                childrenByLabel[i] = childrenFrom[node] + i;
+            Arrays.sort(childrenByLabel, Comparator.comparing(child -> nodes.get(child).getLabel()));
+
+            int position = valuesFrom[node] + ownValues.size();
+            for (int child : childrenByLabel) {
+                valuesFrom[child] = position;
+                position += nodes.get(child).getValueCount();
+            }
+        }
+    }
+
+    private static int countNodes(PivotTreeNode node) {
+        int count = 1;
+        IntChildMap children = node.getChildMap();
+        for (int slot = 0; slot < children.capacity(); slot++)
+            if (children.nodeAt(slot) != null) count += countNodes(children.nodeAt(slot));
+        return count;
+    }
+
+    private static int[] sortedSlots(IntChildMap children) {
+        long[] codesAndSlots = new long[children.size()]; // sorting by code, as codes are non-negative
+        int size = 0;
+        for (int slot = 0; slot < children.capacity(); slot++)
+            if (children.nodeAt(slot) != null) codesAndSlots[size++] = (long) children.codeAt(slot) << 32 | slot;
+        Arrays.sort(codesAndSlots);
+
+        int[] slots = new int[size];
+        for (int i = 0; i < size; i++)
+            slots[i] = (int) codesAndSlots[i];
+        return slots;
+    }
+
+    public List<String> getMeasures() {
+        return measures;
+    }
+
+    public List<Aggregation> getAggregations() {
+        return aggregations;
+    }
+
+    public boolean isRetainingValues() {
+        return values != null;
+    }
+
+    public int getNodeCount() {
+        return labelCodes.length;
+    }
+
+    /**
+     * Writes this tree to a file in the binary format of {@link MappedPivotTree}, which can then
+     * be opened through {@link MappedPivotTree#open(Path)} and queried without being loaded.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(Path path) throws IOException {
+        MappedPivotTree.write(this, path);
+    }
+
+    // accessors of the flat representation, for MappedPivotTree
+
+    String[][] levelLabels() {
+        return levelLabels;
+    }
+
+    int[] labelCodes() {
+        return labelCodes;
+    }
+
+    int[] childrenFrom() {
+        return childrenFrom;
+    }
+
+    int[] childrenTo() {
+        return childrenTo;
+    }
+
+    long[] rowCounts() {
+        return rowCounts;
+    }
+
+    double[][] results() {
+        return results;
+    }
+
+    double[] values() {
+        return values;
+    }
+
+    int[] valuesFrom() {
+        return valuesFrom;
+    }
+
+    int[] valuesTo() {
+        return valuesTo;
+    }
+
+    /**
+     * @return the same result as {@link Pivoter#query(List, Aggregation)} on the tree this one was frozen from.
+     */
+    public Double query(List<String> queryLabels, Aggregation aggregation) {
+        if (queryLabels == null)
+            throw new IllegalArgumentException("queryLabels cannot be null.");
+        if (aggregation == null)
+            throw new IllegalArgumentException("aggregation cannot be null.");
+
+        int node = find(queryLabels);
+        if (node < 0) return 0.0;
+
+        int index = aggregations.indexOf(aggregation);
+        if (index >= 0) return results[index][node];
+
+        if (values == null)
+            throw new IllegalArgumentException(String.format(
+                    "Aggregation %s is not maintained by this pivot tree and raw values are not retained.", aggregation));
+
+        Accumulator accumulator = aggregation.newAccumulator();
+        accumulator.addAll(DoubleValues.of(values, valuesFrom[node], valuesTo[node]));
+        return accumulator.result();
+    }
+
+    /**
+     * @return the same result as {@link Pivoter#query(List, String, Aggregation)} on the tree this one was frozen from.
+     */
+    public Double query(List<String> queryLabels, String measure, Aggregation aggregation) {
+        int measureIndex = measures.indexOf(measure);
+        if (measureIndex < 0)
+            throw new IllegalArgumentException(String.format("Unknown measure '%s', expected one of %s.", measure, measures));
+        if (measureIndex == 0)
+            return query(queryLabels, aggregation);
+
+        if (queryLabels == null)
+            throw new IllegalArgumentException("queryLabels cannot be null.");
+        int index = aggregations.indexOf(aggregation);
+        if (index < 0)
+            throw new IllegalArgumentException(String.format("Aggregation %s is not maintained by this pivot tree.", aggregation));
+
+        int node = find(queryLabels);
+        return node < 0 ? 0.0 : results[measureIndex * aggregations.size() + index][node];
+    }
+
+    /**
+     * @return the same result as {@link Pivoter#query(List, Function)} on the tree this one was frozen from.
+     */
+    public Double query(List<String> queryLabels, Function<Collection<Double>, Double> pivotFunction) {
+        if (queryLabels == null)
+            throw new IllegalArgumentException("queryLabels cannot be null.");
+        if (values == null)
+            throw new IllegalStateException("Raw values are not retained by this pivot tree, query it with an Aggregation instead.");
+
+        int node = find(queryLabels);
+        if (node < 0) return 0.0;
+
+        return pivotFunction.apply(DoubleValues.of(values, valuesFrom[node], valuesTo[node]));
+    }
+
+    /**
+     * @return the row count of the node at the end of the path, or 0 if there is no such node.
+     */
+    public long getRowCount(List<String> queryLabels) {
+        if (queryLabels == null)
+            throw new IllegalArgumentException("queryLabels cannot be null.");
+
+        int node = find(queryLabels);
+        return node < 0 ? 0 : rowCounts[node];
+    }
+
+    /**
+     * @return the index of the node at the end of the path of sorted labels, or -1 if there is no such node.
+     */
+    private int find(List<String> sortedQueryLabels) {
+        int node = 0;
+        for (int depth = 0; depth < sortedQueryLabels.size(); depth++) {
+            if (depth >= levelCodes.size()) return -1;
+
+            Integer code = levelCodes.get(depth).get(sortedQueryLabels.get(depth));
+            if (code == null) return -1;
+
+            node = Arrays.binarySearch(labelCodes, childrenFrom[node], childrenTo[node], code);
+            if (node < 0) return -1;
+        }
+        return node;
+    }
+}
@@ -0,0 +1,34 @@
+package org.pivoter;
+
+import java.util.*;
+
+/**
+ * Orders labels by their position in a pivot hierarchy, with the value label '#' last.
+ *
+ * <p>The positions are indexed once at construction, so a comparison is two hash lookups,
+ * allocates nothing and never modifies the hierarchy. Being immutable, a comparator can be
+ * shared by any number of threads.</p>
+ */
+final class HierarchyComparator implements Comparator<String> {
+
+    private final Map<String, Integer> positions;
+
+    HierarchyComparator(List<String> pivotHierarchy) {
+        this.positions = new HashMap<>();
+        for (String label : pivotHierarchy)
+            positions.putIfAbsent(label, positions.size());
+        positions.putIfAbsent("#", positions.size());
+    }
+
+    @Override
+    public int compare(String s1, String s2) {
+        return Integer.compare(position(s1), position(s2));
+    }
+
+    private int position(String label) {
+        Integer position = positions.get(label);
+        if (position == null)
+            throw new IllegalArgumentException("Invalid String: " + label);
+        return position;
+    }
+}
@@ -0,0 +1,123 @@
+package org.pivoter;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from label codes to child nodes, with linear probing.
+ *
+ * <p>Compared to a {@code HashMap<String, PivotTreeNode>}, a lookup hashes an int and compares
+ * ints, and no entry object is allocated per child. Slots can be iterated by index, from 0 to
+ * {@link #capacity()}, skipping those whose {@link #nodeAt(int)} is null.</p>
+ */
+final class IntChildMap {
+
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 4; // power of 2
+
+    private int[] codes;
+    private PivotTreeNode[] nodes;
+    private int size;
+    private int shift; // 32 - log2(capacity)
+
+    IntChildMap() {
+        this.codes = newCodes(INITIAL_CAPACITY);
+        this.nodes = new PivotTreeNode[INITIAL_CAPACITY];
+        this.shift = Integer.numberOfLeadingZeros(INITIAL_CAPACITY) + 1;
+    }
+
+    IntChildMap(IntChildMap source) {
+        this.codes = source.codes.clone();
+        this.nodes = source.nodes.clone();
+        this.size = source.size;
+        this.shift = source.shift;
+    }
+
+    private static int[] newCodes(int capacity) {
+        int[] codes = new int[capacity];
+        Arrays.fill(codes, EMPTY);
+        return codes;
+    }
+
+    private int slot(int code) {
+        return (code * 0x9E3779B9) >>> shift; // Fibonacci hashing, spreads consecutive codes
+    }
+
+    PivotTreeNode get(int code) {
+        for (int slot = slot(code); codes[slot] != EMPTY; slot = (slot + 1) & (codes.length - 1))
+            if (codes[slot] == code) return nodes[slot];
+        return null;
+    }
+
+    /**
+     * Associates the node with the code, replacing the node previously associated with it, if any.
+     */
+    void put(int code, PivotTreeNode node) {
+        int slot = slot(code);
+        while (codes[slot] != EMPTY && codes[slot] != code)
+            slot = (slot + 1) & (codes.length - 1);
+
+        if (codes[slot] == EMPTY) {
+            codes[slot] = code;
+            size++;
+        }
+        nodes[slot] = node;
+
+        if (size * 4 > codes.length * 3) // load factor 0.75
+            resize(codes.length * 2);
+    }
+
+    void remove(int code) {
+        int slot = slot(code);
+        while (codes[slot] != code) {
+            if (codes[slot] == EMPTY) return;
+            slot = (slot + 1) & (codes.length - 1);
+        }
+        codes[slot] = EMPTY;
+        nodes[slot] = null;
+        size--;
+
+        // shift back the following entries of the probe sequence, so that no lookup stops at the hole
+        for (int next = (slot + 1) & (codes.length - 1); codes[next] != EMPTY; next = (next + 1) & (codes.length - 1)) {
+            int home = slot(codes[next]);
+            boolean movable = slot <= next ? (home <= slot || home > next) : (home <= slot && home > next);
+            if (movable) {
+                codes[slot] = codes[next];
+                nodes[slot] = nodes[next];
+                codes[next] = EMPTY;
+                nodes[next] = null;
+                slot = next;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        int[] oldCodes = codes;
+        PivotTreeNode[] oldNodes = nodes;
+        codes = newCodes(capacity);
+        nodes = new PivotTreeNode[capacity];
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        size = 0;
+        for (int slot = 0; slot < oldCodes.length; slot++)
+            if (oldCodes[slot] != EMPTY) put(oldCodes[slot], oldNodes[slot]);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return codes.length;
+    }
+
+    int codeAt(int slot) {
+        return codes[slot];
+    }
+
+    PivotTreeNode nodeAt(int slot) {
+        return nodes[slot];
+    }
+
+    void setNodeAt(int slot, PivotTreeNode node) {
+        nodes[slot] = node;
+    }
+}
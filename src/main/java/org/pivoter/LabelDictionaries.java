@@ -0,0 +1,38 @@
+package org.pivoter;
+
+import java.util.Arrays;
+
+/**
+ * The {@link LabelDictionary} of each hierarchy level of a pivot tree, shared by all its nodes and versions.
+ * Level {@code d} encodes the labels of the children of the nodes at depth {@code d}, the root being at depth 0.
+ */
+final class LabelDictionaries {
+
+    private volatile LabelDictionary[] levels = new LabelDictionary[0];
+
+    /**
+     * @return the dictionary of the level, created if the tree had no such level yet.
+     */
+    LabelDictionary getOrAdd(int depth) {
+        LabelDictionary[] current = levels;
+        if (depth < current.length) return current[depth];
+
+        LabelDictionary[] grown = Arrays.copyOf(current, depth + 1);
+        for (int level = current.length; level <= depth; level++)
+            grown[level] = new LabelDictionary();
+        levels = grown;
+        return grown[depth];
+    }
+
+    /**
+     * @return the dictionary of the level, or null if the tree has no such level.
+     */
+    LabelDictionary get(int depth) {
+        LabelDictionary[] current = levels;
+        return depth < current.length ? current[depth] : null;
+    }
+
+    int depth() {
+        return levels.length;
+    }
+}
@@ -0,0 +1,54 @@
+package org.pivoter;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the label values of one hierarchy level to dense int codes, assigned in order of first appearance.
+ *
+ * <p>Nodes key their children by code, so the string of a label is hashed once per level when a row
+ * is inserted or a query is translated, and a single instance of each label is kept for all rows.
+ * Codes are only ever added: a single writer may encode new labels while other threads look up
+ * or decode the codes they have already seen.</p>
+ */
+final class LabelDictionary {
+
+    static final int NOT_FOUND = -1;
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] labels = new String[8];
+    private volatile int size;
+
+    /**
+     * @return the code of the label, assigning the next one if the label is new.
+     */
+    int encode(String label) {
+        Integer code = codes.get(label);
+        if (code != null) return code;
+
+        if (size == labels.length)
+            labels = Arrays.copyOf(labels, size * 2);
+        labels[size] = label;
+        codes.put(label, size);
+        return size++;
+    }
+
+    /**
+     * @return the code of the label, or {@link #NOT_FOUND} if it has never been encoded.
+     */
+    int lookup(String label) {
+        Integer code = codes.get(label);
+        return code == null ? NOT_FOUND : code;
+    }
+
+    String decode(int code) {
+        if (code < 0 || code >= size)
+            throw new IllegalArgumentException("Unknown label code: " + code);
+        return labels[code];
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,80 @@
+package org.pivoter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe histogram of latencies in nanoseconds, with one bucket per power of two: recording is a
+ * single atomic increment, and percentiles are accurate within a factor of 2, which is enough to tell
+ * a query reading a maintained aggregate from one scanning millions of values.
+ */
+public final class LatencyHistogram {
+
+    private final AtomicLongArray counts = new AtomicLongArray(64); // bucket b: [2^b, 2^(b+1)) ns, b = 0 also counting 0
+    private final LongAdder totalNanos = new LongAdder();
+
+    void record(long nanos) {
+        long latency = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(latency));
+        totalNanos.add(latency);
+    }
+
+    private static int bucket(long nanos) {
+        return nanos == 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int bucket = 0; bucket < counts.length(); bucket++)
+            count += counts.get(bucket);
+        return count;
+    }
+
+    /**
+     * @return the mean latency in nanoseconds, or NaN if nothing has been recorded.
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? Double.NaN : (double) totalNanos.sum() / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100, e.g. 99 for the 99th percentile.
+     * @return an upper bound of the latency in nanoseconds below which the percentile of the latencies
+     * fall, at most twice the exact one, or 0 if nothing has been recorded.
+     * @throws IllegalArgumentException if the percentile is not between 0 and 100.
+     */
+    public long getPercentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100))
+            throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+
+        long[] snapshot = new long[counts.length()];
+        long count = 0;
+        for (int bucket = 0; bucket < snapshot.length; bucket++)
+            count += snapshot[bucket] = counts.get(bucket);
+        if (count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        int bucket = 0;
+        while (seen + snapshot[bucket] < rank)
+            seen += snapshot[bucket++];
+        return bucket == 63 ? Long.MAX_VALUE : (1L << (bucket + 1)) - 1;
+    }
+
+    /**
+     * @return the count of each bucket: index {@code b} counts the latencies in [2^b, 2^(b+1)) nanoseconds.
+     */
+    public long[] getBucketCounts() {
+        long[] snapshot = new long[counts.length()];
+        for (int bucket = 0; bucket < snapshot.length; bucket++)
+            snapshot[bucket] = counts.get(bucket);
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LatencyHistogram{count=%d, mean=%.0fns, p50=%dns, p99=%dns}",
+                getCount(), getMean(), getPercentile(50), getPercentile(99));
+    }
+}
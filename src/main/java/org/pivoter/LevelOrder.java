@@ -0,0 +1,70 @@
+package org.pivoter;
+
+import java.util.*;
+
+/**
+ * The labels of the data rows in the order of the levels of a pivot tree, compiled once from the
+ * labels of a first data row and a hierarchy comparator.
+ *
+ * <p>Converting a data row then reads its values level by level, instead of sorting its labels:
+ * O(m) per row rather than O(m * log(m)), where m = #labels, and with no intermediate list.</p>
+ */
+final class LevelOrder {
+
+    private final String[] levelLabels;
+
+    private LevelOrder(String[] levelLabels) {
+        this.levelLabels = levelLabels;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the comparator rejects some of the labels.
+     */
+    static LevelOrder of(Collection<String> dataRowLabels, Comparator<String> pivotHierarchyComparator) {
+        return of(dataRowLabels, List.of("#"), pivotHierarchyComparator);
+    }
+
+    /**
+     * @param measures the labels of the numerical values, which are not levels.
+     * @throws IllegalArgumentException if the comparator rejects some of the labels.
+     */
+    static LevelOrder of(Collection<String> dataRowLabels, List<String> measures, Comparator<String> pivotHierarchyComparator) {
+        List<String> sortedLabels = new ArrayList<>(dataRowLabels);
+        sortedLabels.removeAll(measures);
+        sortedLabels.sort(pivotHierarchyComparator);
+        return new LevelOrder(sortedLabels.toArray(new String[0]));
+    }
+
+    /**
+     * @return the level of the tree holding the values of the label, or -1 if it is not a level.
+     */
+    int levelOf(String label) {
+        for (int level = 0; level < levelLabels.length; level++)
+            if (levelLabels[level].equals(label)) return level;
+        return -1;
+    }
+
+    int levelCount() {
+        return levelLabels.length;
+    }
+
+    /**
+     * Converts a data row carrying the labels this order was compiled from, whose '#' value has already been parsed.
+     */
+    PivotRow convert(Map<String, String> dataRow, double value) {
+        List<String> labels = new ArrayList<>(levelLabels.length);
+        for (String levelLabel : levelLabels)
+            labels.add(dataRow.get(levelLabel));
+        return new PivotRow(labels, value);
+    }
+
+    /**
+     * Converts a data row of a multi-measure tree, whose measure values have already been parsed.
+     */
+    PivotRow convert(Map<String, String> dataRow, double[] measureValues) {
+        List<String> labels = new ArrayList<>(levelLabels.length);
+        for (String levelLabel : levelLabels)
+            labels.add(dataRow.get(levelLabel));
+        return new PivotRow(labels, measureValues);
+    }
+}
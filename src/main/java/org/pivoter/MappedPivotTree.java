@@ -0,0 +1,339 @@
+package org.pivoter;
+
+import org.pivoter.aggregation.Accumulator;
+import org.pivoter.aggregation.Aggregation;
+import org.pivoter.aggregation.Aggregations;
+import org.pivoter.utils.DoubleValues;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A read-only pivot tree queried directly from a memory-mapped file, written by {@link FrozenPivotTree#write(Path)}.
+ *
+ * <p>Opening a tree maps the file and reads its header, O(#levels + #aggregations): nodes,
+ * dictionaries and aggregates are never deserialized, but read in place by each query, so a
+ * service can restart without rebuilding its pivots, and a tree can be larger than the heap: the file is
+ * mapped in segments of 1GB, addressed by long offsets, so that it can also be larger than 2GB.
+ * Being immutable, a mapped tree can be queried by any number of threads.</p>
+ *
+ * <h2>Format</h2>
+ * All numbers are big-endian; the file is a header followed by sections:
+ * <pre>
+ * header       int magic "PVTR", int format version, int #nodes, int #levels, int #aggregations,
+ *              int #values (-1 if raw values are not retained), then per aggregation its UTF-8 name
+ *              (int length, bytes)
+ * dictionaries per level: int #labels, int #bytes, then per label sorted by UTF-8 bytes
+ *              (int offset, int length, int code), then the UTF-8 bytes of the labels
+ * topology     int[#nodes] label codes, int[#nodes] children from, int[#nodes] children to,
+ *              as in {@link FrozenPivotTree}
+ * aggregates   long[#nodes] row counts, then double[#nodes] results per aggregation
+ * values       double[#values], int[#nodes] values from, int[#nodes] values to, if retained
+ * </pre>
+ * Only the built-in {@link Aggregations} can be persisted, as they are identified by name.
+ */
+public final class MappedPivotTree {
+
+    private static final int MAGIC = 0x50565452; // "PVTR"
+    private static final int FORMAT_VERSION = 1;
+    private static final int DICTIONARY_ENTRY_BYTES = 3 * Integer.BYTES;
+    private static final int VALUES_CHUNK_SIZE = 4096; // values copied to the heap at once by an aggregation scan
+
+    private final MappedSegments file;
+    private final int nodeCount;
+    private final int valuesCount;
+    private final List<Aggregation> aggregations;
+
+    // offsets of the sections in the file
+    private final long[] levelEntriesOffsets;
+    private final int[] levelLabelCounts;
+    private final long[] levelBytesOffsets;
+    private final long labelCodesOffset;
+    private final long childrenFromOffset;
+    private final long childrenToOffset;
+    private final long rowCountsOffset;
+    private final long resultsOffset;
+    private final long valuesOffset;
+    private final long valuesFromOffset;
+    private final long valuesToOffset;
+
+    private MappedPivotTree(MappedSegments file) {
+        this.file = file;
+
+        if (file.size() < 24 || file.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("Not a pivot tree file.");
+        if (file.getInt(4) != FORMAT_VERSION)
+            throw new IllegalArgumentException("Unsupported pivot tree file format version: " + file.getInt(4));
+
+        this.nodeCount = file.getInt(8);
+        int levelCount = file.getInt(12);
+        int aggregationCount = file.getInt(16);
+        this.valuesCount = file.getInt(20);
+
+        long offset = 24;
+        List<Aggregation> names = new ArrayList<>();
+        for (int aggregation = 0; aggregation < aggregationCount; aggregation++) {
+            byte[] name = new byte[file.getInt(offset)];
+            file.get(offset + Integer.BYTES, name);
+            names.add(Aggregations.valueOf(new String(name, StandardCharsets.UTF_8)));
+            offset += Integer.BYTES + name.length;
+        }
+        this.aggregations = List.copyOf(names);
+
+        this.levelEntriesOffsets = new long[levelCount];
+        this.levelLabelCounts = new int[levelCount];
+        this.levelBytesOffsets = new long[levelCount];
+        for (int level = 0; level < levelCount; level++) {
+            levelLabelCounts[level] = file.getInt(offset);
+            int bytes = file.getInt(offset + Integer.BYTES);
+            levelEntriesOffsets[level] = offset + 2 * Integer.BYTES;
+            levelBytesOffsets[level] = levelEntriesOffsets[level] + (long) levelLabelCounts[level] * DICTIONARY_ENTRY_BYTES;
+            offset = levelBytesOffsets[level] + bytes;
+        }
+
+        this.labelCodesOffset = offset;
+        this.childrenFromOffset = labelCodesOffset + (long) nodeCount * Integer.BYTES;
+        this.childrenToOffset = childrenFromOffset + (long) nodeCount * Integer.BYTES;
+        this.rowCountsOffset = childrenToOffset + (long) nodeCount * Integer.BYTES;
+        this.resultsOffset = rowCountsOffset + (long) nodeCount * Long.BYTES;
+        this.valuesOffset = resultsOffset + (long) aggregationCount * nodeCount * Double.BYTES;
+        this.valuesFromOffset = valuesOffset + (long) Math.max(valuesCount, 0) * Double.BYTES;
+        this.valuesToOffset = valuesFromOffset + (long) nodeCount * Integer.BYTES;
+    }
+
+    /**
+     * Maps a pivot tree file in memory, without reading its nodes.
+     *
+     * @throws IOException              if the file cannot be read.
+     * @throws IllegalArgumentException if the file is not a pivot tree file.
+     */
+    public static MappedPivotTree open(Path path) throws IOException {
+        return open(path, MappedSegments.DEFAULT_SEGMENT_SIZE);
+    }
+
+    static MappedPivotTree open(Path path, int segmentSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MappedPivotTree(new MappedSegments(channel, segmentSize)); // the mappings stay valid once the channel is closed
+        }
+    }
+
+    static void write(FrozenPivotTree tree, Path path) throws IOException {
+        if (tree.getMeasures().size() > 1)
+            throw new IllegalArgumentException("Only pivot trees with a single measure can be persisted, found: " + tree.getMeasures());
+        for (Aggregation aggregation : tree.getAggregations())
+            if (!(aggregation instanceof Aggregations))
+                throw new IllegalArgumentException("Only built-in aggregations can be persisted, found: " + aggregation);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            String[][] levelLabels = tree.levelLabels();
+            double[] values = tree.values();
+
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(tree.getNodeCount());
+            out.writeInt(levelLabels.length);
+            out.writeInt(tree.getAggregations().size());
+            out.writeInt(values == null ? -1 : values.length);
+            for (Aggregation aggregation : tree.getAggregations()) {
+                byte[] name = ((Aggregations) aggregation).name().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+            }
+
+            for (String[] labels : levelLabels)
+                writeDictionary(out, labels);
+
+            writeInts(out, tree.labelCodes());
+            writeInts(out, tree.childrenFrom());
+            writeInts(out, tree.childrenTo());
+            for (long rowCount : tree.rowCounts())
+                out.writeLong(rowCount);
+            for (double[] results : tree.results())
+                writeDoubles(out, results);
+
+            if (values != null) {
+                writeDoubles(out, values);
+                writeInts(out, tree.valuesFrom());
+                writeInts(out, tree.valuesTo());
+            }
+        }
+    }
+
+    private static void writeDictionary(DataOutputStream out, String[] labels) throws IOException {
+        byte[][] bytes = new byte[labels.length][];
+        Integer[] sortedCodes = new Integer[labels.length];
+        int totalBytes = 0;
+        for (int code = 0; code < labels.length; code++) {
+            bytes[code] = labels[code].getBytes(StandardCharsets.UTF_8);
+            sortedCodes[code] = code;
+            totalBytes += bytes[code].length;
+        }
+        Arrays.sort(sortedCodes, (code1, code2) -> Arrays.compareUnsigned(bytes[code1], bytes[code2]));
+
+        out.writeInt(labels.length);
+        out.writeInt(totalBytes);
+        int offset = 0;
+        for (int code : sortedCodes) {
+            out.writeInt(offset);
+            out.writeInt(bytes[code].length);
+            out.writeInt(code);
+            offset += bytes[code].length;
+        }
+        for (int code : sortedCodes)
+            out.write(bytes[code]);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+        for (int i : ints)
+            out.writeInt(i);
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] doubles) throws IOException {
+        for (double d : doubles)
+            out.writeDouble(d);
+    }
+
+    public List<Aggregation> getAggregations() {
+        return aggregations;
+    }
+
+    public boolean isRetainingValues() {
+        return valuesCount >= 0;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return the same result as {@link FrozenPivotTree#query(List, Aggregation)} on the written tree.
+     */
+    public Double query(List<String> queryLabels, Aggregation aggregation) {
+        if (queryLabels == null)
+            throw new IllegalArgumentException("queryLabels cannot be null.");
+        if (aggregation == null)
+            throw new IllegalArgumentException("aggregation cannot be null.");
+
+        int node = find(queryLabels);
+        if (node < 0) return 0.0;
+
+        int index = aggregations.indexOf(aggregation);
+        if (index >= 0) return file.getDouble(resultsOffset + ((long) index * nodeCount + node) * Double.BYTES);
+
+        if (!isRetainingValues())
+            throw new IllegalArgumentException(String.format(
+                    "Aggregation %s is not maintained by this pivot tree and raw values are not retained.", aggregation));
+
+        Accumulator accumulator = aggregation.newAccumulator();
+        int from = valuesFrom(node);
+        int to = valuesTo(node);
+        double[] chunk = new double[Math.min(VALUES_CHUNK_SIZE, to - from)];
+        for (int i = from; i < to; i += chunk.length) { // bulk copies, folded with the DoubleKernels of the accumulator
+            int length = Math.min(chunk.length, to - i);
+            file.getDoubles(valuesOffset + (long) i * Double.BYTES, chunk, length);
+            accumulator.addAll(DoubleValues.of(chunk, 0, length));
+        }
+        return accumulator.result();
+    }
+
+    /**
+     * @return the same result as {@link FrozenPivotTree#query(List, Function)} on the written tree.
+     * The values of the queried node are copied to the heap, to be passed to the function.
+     */
+    public Double query(List<String> queryLabels, Function<Collection<Double>, Double> pivotFunction) {
+        if (queryLabels == null)
+            throw new IllegalArgumentException("queryLabels cannot be null.");
+        if (!isRetainingValues())
+            throw new IllegalStateException("Raw values are not retained by this pivot tree, query it with an Aggregation instead.");
+
+        int node = find(queryLabels);
+        if (node < 0) return 0.0;
+
+        double[] values = new double[valuesTo(node) - valuesFrom(node)];
+        file.getDoubles(valuesOffset + (long) valuesFrom(node) * Double.BYTES, values, values.length);
+        return pivotFunction.apply(DoubleValues.of(values, 0, values.length));
+    }
+
+    /**
+     * @return the row count of the node at the end of the path, or 0 if there is no such node.
+     */
+    public long getRowCount(List<String> queryLabels) {
+        if (queryLabels == null)
+            throw new IllegalArgumentException("queryLabels cannot be null.");
+
+        int node = find(queryLabels);
+        return node < 0 ? 0 : file.getLong(rowCountsOffset + (long) node * Long.BYTES);
+    }
+
+    private int valuesFrom(int node) {
+        return file.getInt(valuesFromOffset + (long) node * Integer.BYTES);
+    }
+
+    private int valuesTo(int node) {
+        return file.getInt(valuesToOffset + (long) node * Integer.BYTES);
+    }
+
+    /**
+     * @return the index of the node at the end of the path of sorted labels, or -1 if there is no such node.
+     */
+    private int find(List<String> sortedQueryLabels) {
+        int node = 0;
+        for (int depth = 0; depth < sortedQueryLabels.size(); depth++) {
+            if (depth >= levelLabelCounts.length) return -1;
+
+            int code = lookup(depth, sortedQueryLabels.get(depth).getBytes(StandardCharsets.UTF_8));
+            if (code < 0) return -1;
+
+            node = findChild(node, code);
+            if (node < 0) return -1;
+        }
+        return node;
+    }
+
+    // binary search of the label among the dictionary entries of the level, sorted by UTF-8 bytes
+    private int lookup(int level, byte[] label) {
+        int low = 0;
+        int high = levelLabelCounts[level] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long entry = levelEntriesOffsets[level] + (long) middle * DICTIONARY_ENTRY_BYTES;
+            int comparison = compare(levelBytesOffsets[level] + file.getInt(entry), file.getInt(entry + Integer.BYTES), label);
+
+            if (comparison < 0) low = middle + 1;
+            else if (comparison > 0) high = middle - 1;
+            else return file.getInt(entry + 2 * Integer.BYTES);
+        }
+        return -1;
+    }
+
+    private int compare(long offset, int length, byte[] label) {
+        for (int i = 0; i < Math.min(length, label.length); i++) {
+            int comparison = Byte.compareUnsigned(file.get(offset + i), label[i]);
+            if (comparison != 0) return comparison;
+        }
+        return Integer.compare(length, label.length);
+    }
+
+    // binary search of the code among the children of the node, sorted by code
+    private int findChild(int node, int code) {
+        int low = file.getInt(childrenFromOffset + (long) node * Integer.BYTES);
+        int high = file.getInt(childrenToOffset + (long) node * Integer.BYTES) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleCode = file.getInt(labelCodesOffset + (long) middle * Integer.BYTES);
+
+            if (middleCode < code) low = middle + 1;
+            else if (middleCode > code) high = middle - 1;
+            else return middle;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,95 @@
+package org.pivoter;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only file memory-mapped as consecutive segments, addressed by long offsets, so that a file can
+ * be larger than the 2GB a single {@link MappedByteBuffer} can map, see {@link MappedPivotTree}.
+ *
+ * <p>Each segment maps {@link Long#BYTES} more bytes than its size, overlapping the next one, so that a
+ * number starting in a segment is always read whole from it. Numbers are big-endian.</p>
+ */
+final class MappedSegments {
+
+    static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+    private static final int OVERLAP = Long.BYTES;
+
+    private final MappedByteBuffer[] segments;
+    private final int segmentSize;
+    private final long size;
+
+    /**
+     * Maps the whole file, which can be closed afterward: the mappings stay valid.
+     */
+    MappedSegments(FileChannel channel, int segmentSize) throws IOException {
+        if (segmentSize <= 0)
+            throw new IllegalArgumentException("segmentSize must be positive: " + segmentSize);
+
+        this.segmentSize = segmentSize;
+        this.size = channel.size();
+        this.segments = new MappedByteBuffer[(int) Math.max(1, (size + segmentSize - 1) / segmentSize)];
+        for (int segment = 0; segment < segments.length; segment++) {
+            long position = (long) segment * segmentSize;
+            long length = Math.min(size - position, (long) segmentSize + OVERLAP);
+            segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    byte get(long offset) {
+        return segment(offset).get(position(offset));
+    }
+
+    int getInt(long offset) {
+        return segment(offset).getInt(position(offset));
+    }
+
+    long getLong(long offset) {
+        return segment(offset).getLong(position(offset));
+    }
+
+    double getDouble(long offset) {
+        return segment(offset).getDouble(position(offset));
+    }
+
+    /**
+     * Copies {@code bytes.length} bytes starting at the offset, across segments if needed.
+     */
+    void get(long offset, byte[] bytes) {
+        int copied = 0;
+        while (copied < bytes.length) {
+            long from = offset + copied;
+            int length = Math.min(bytes.length - copied, segmentSize - position(from));
+            segment(from).get(position(from), bytes, copied, length);
+            copied += length;
+        }
+    }
+
+    /**
+     * Copies {@code length} doubles starting at the offset into {@code doubles[0, length)}, across segments if needed.
+     */
+    void getDoubles(long offset, double[] doubles, int length) {
+        int copied = 0;
+        while (copied < length) {
+            long from = offset + (long) copied * Double.BYTES;
+            int position = position(from);
+            // whole doubles left in the segment, including the one its overlap completes
+            int count = Math.min(length - copied, (segmentSize - position + Double.BYTES - 1) / Double.BYTES);
+            segment(from).slice(position, count * Double.BYTES).asDoubleBuffer().get(doubles, copied, count);
+            copied += count;
+        }
+    }
+
+    private MappedByteBuffer segment(long offset) {
+        return segments[(int) (offset / segmentSize)];
+    }
+
+    private int position(long offset) {
+        return (int) (offset % segmentSize);
+    }
+}
@@ -0,0 +1,109 @@
+package org.pivoter;
+
+import java.util.Arrays;
+
+/**
+ * The results computed at query time and memoized on a node, keyed by the aggregation or the function
+ * that computed them, see {@link PivotTreeNode#memoize(Object, Object)}.
+ *
+ * <p>At most {@link #MAX_SIZE} results are kept, the least recently used one being evicted to make room
+ * for a new one, so that functions queried once (e.g. a new lambda per query) cannot take the place of
+ * the ones queried repeatedly for good.</p>
+ *
+ * <p>A memo is immutable but for the last use of its entries: a node replaces its memo as a whole,
+ * so that concurrent queries of a published node never see a partially updated one, at worst losing
+ * a result. Last uses are updated without synchronization, the eviction order being approximate
+ * under concurrent queries.</p>
+ */
+final class NodeMemo {
+
+    static final int MAX_SIZE = 8;
+    static final NodeMemo EMPTY = new NodeMemo(new Entry[0], 0, 0);
+
+    private final Entry[] entries; // at most 8, scanned linearly
+    private final int evictionCount; // by this memo and the ones it replaced
+    private long clock; // stamps the last use of the entries
+
+    private NodeMemo(Entry[] entries, int evictionCount, long clock) {
+        this.entries = entries;
+        this.evictionCount = evictionCount;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the result memoized for the key, or null if there is none.
+     */
+    Object get(Object key) {
+        for (Entry entry : entries) {
+            if (entry.key.equals(key)) {
+                entry.lastUse = ++clock;
+                return entry.result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a memo with the result for the key, replacing the previous one for the same key,
+     * or else the least recently used one if this memo is full.
+     */
+    NodeMemo with(Object key, Object result) {
+        Entry entry = new Entry(key, result, clock + 1);
+        int replaced = entries.length;
+        for (int i = 0; i < entries.length; i++)
+            if (entries[i].key.equals(key)) replaced = i;
+
+        if (replaced == entries.length && entries.length == MAX_SIZE) {
+            replaced = 0;
+            for (int i = 1; i < entries.length; i++)
+                if (entries[i].lastUse < entries[replaced].lastUse) replaced = i;
+
+            Entry[] next = entries.clone();
+            next[replaced] = entry;
+            return new NodeMemo(next, evictionCount + 1, clock + 1);
+        }
+
+        Entry[] next = Arrays.copyOf(entries, Math.max(entries.length, replaced + 1));
+        next[replaced] = entry;
+        return new NodeMemo(next, evictionCount, clock + 1);
+    }
+
+    /**
+     * @return a memo without the result for the key, or this memo if it has none.
+     */
+    NodeMemo without(Object key) {
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].key.equals(key)) {
+                Entry[] next = new Entry[entries.length - 1];
+                System.arraycopy(entries, 0, next, 0, i);
+                System.arraycopy(entries, i + 1, next, i, next.length - i);
+                return new NodeMemo(next, evictionCount, clock);
+            }
+        }
+        return this;
+    }
+
+    int size() {
+        return entries.length;
+    }
+
+    /**
+     * @return the number of results evicted since the rows of the node last changed.
+     */
+    int getEvictionCount() {
+        return evictionCount;
+    }
+
+    private static final class Entry {
+
+        private final Object key;
+        private final Object result;
+        private long lastUse;
+
+        private Entry(Object key, Object result, long lastUse) {
+            this.key = key;
+            this.result = result;
+            this.lastUse = lastUse;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.pivoter;
+
+/**
+ * Receives the events of a {@link Pivoter}, see {@link Pivoter#setListener(PivotListener)}, e.g. to
+ * collect them with {@link PivoterStats} or to forward them to a metrics library or to JFR events.
+ *
+ * <p>Events are reported synchronously by the thread building or querying, so implementations must
+ * be thread-safe and fast. Every method does nothing by default.</p>
+ */
+public interface PivotListener {
+
+    /**
+     * The steps of building or changing a tree, whose times are reported by {@link #onBuildPhase(BuildPhase, long)}.
+     */
+    enum BuildPhase {
+        /**
+         * Validating data rows and converting them into paths of the tree, which are fused in a single pass.
+         */
+        VALIDATE_AND_CONVERT,
+        /**
+         * Inserting converted rows into the tree, or retracting them. A delimited file being tokenized
+         * as its lines are inserted, the whole read of the file is reported as this phase.
+         */
+        INSERT,
+        /**
+         * Laying the retained raw values out depth-first, so that the values of each subtree are contiguous.
+         * After a small append or retraction, it only checks how many values changed, the layout being
+         * deferred until enough of them did.
+         */
+        LAYOUT
+    }
+
+    /**
+     * Called once the rows of a pivot or an append are inserted, before the tree is published.
+     */
+    default void onRowsIngested(long rowCount) {
+    }
+
+    /**
+     * Called once the rows of a retraction are removed, before the tree is published.
+     */
+    default void onRowsRetracted(long rowCount) {
+    }
+
+    /**
+     * Called when a data row is rejected by validation, in which case none of the rows of the
+     * same call is inserted.
+     */
+    default void onRowRejected(IllegalArgumentException cause) {
+    }
+
+    default void onBuildPhase(BuildPhase phase, long nanos) {
+    }
+
+    /**
+     * Called after each query, or each batch of queries, with its latency.
+     */
+    default void onQuery(long nanos) {
+    }
+}
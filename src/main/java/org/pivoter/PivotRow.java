@@ -1,12 +1,14 @@
 package org.pivoter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class PivotRow {
 
     private final List<String> labels;
     private Double value;
+    private double[] measureValues; // one value per measure of a multi-measure tree, null otherwise
 
     public PivotRow() {
         this.labels = new ArrayList<>();
@@ -19,6 +21,12 @@ public class PivotRow {
         this.value = value;
     }
 
+    PivotRow(List<String> labels, double[] measureValues) {
+        this.labels = labels;
+        this.measureValues = measureValues;
+        this.value = measureValues[0];
+    }
+
     public List<String> getLabels() {
         return labels;
     }
@@ -33,10 +41,20 @@ public class PivotRow {
 
     public void setValue(Double value) {
         this.value = value;
+        this.measureValues = null;
+    }
+
+    /**
+     * @return the value of each measure, or null if the row has a single value.
+     */
+    double[] getMeasureValues() {
+        return measureValues;
     }
 
     @Override
     public String toString() {
+        if (measureValues != null)
+            return String.format("Row{labels=%s, values=%s}", labels, Arrays.toString(measureValues));
         return String.format("Row{labels=%s, value=%.2f}", labels, value);
     }
 }
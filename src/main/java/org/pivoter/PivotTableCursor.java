@@ -0,0 +1,153 @@
+package org.pivoter;
+
+import org.pivoter.aggregation.Aggregation;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams the rows of the pivot table of a tree, depth-first and in sorted label order: each
+ * path down to a leaf, the subtotal of every level after its detail rows, and the grand total last.
+ * For the hierarchy Nation, Eyes, Hair, the rows are
+ * <pre>
+ * [France, Blue, Black]     level 3
+ * [France, Blue]            level 2, total
+ * [France, Green, Black]    level 3
+ * [France, Green, Blonde]   level 3
+ * [France, Green]           level 2, total
+ * [France]                  level 1, total
+ * ...
+ * []                        level 0, total
+ * </pre>
+ *
+ * <p>Like a JDBC {@code ResultSet}, the cursor is moved with {@link #next()} and the current row is read
+ * through its getters, so no row is allocated: besides the tree, the cursor only holds the sorted
+ * labels of the children of the nodes along the current path, whatever the size of the table.
+ * A cursor is obtained from {@link Pivoter#cursor(Aggregation)} and is not thread-safe.</p>
+ */
+public final class PivotTableCursor {
+
+    private final PivotTree pivotTree;
+    private final Aggregation aggregation;
+    private final Frame[] frames; // per depth of the current path
+    private final String[] path;
+    private int top; // depth of the deepest frame, -1 once done
+
+    // current row
+    private int level;
+    private boolean total;
+    private PivotTreeNode node;
+
+    // the sorted labels of the children of a node, and the next one to visit
+    private static final class Frame {
+
+        private PivotTreeNode node;
+        private String[] labels = new String[0];
+        private int count;
+        private int next;
+
+        void reset(PivotTreeNode node) {
+            this.node = node;
+            this.count = 0;
+            this.next = 0;
+
+            if (labels.length < node.getChildCount())
+                labels = new String[node.getChildCount()];
+            LabelDictionary dictionary = node.getDictionaries().get(node.getDepth());
+            IntChildMap children = node.getChildMap();
+            for (int slot = 0; slot < children.capacity(); slot++)
+                if (children.nodeAt(slot) != null) labels[count++] = dictionary.decode(children.codeAt(slot));
+            Arrays.sort(labels, 0, count);
+        }
+    }
+
+    PivotTableCursor(PivotTree pivotTree, Aggregation aggregation) {
+        this.pivotTree = pivotTree;
+        this.aggregation = aggregation;
+
+        int depth = pivotTree.getRoot().getDictionaries().depth();
+        this.frames = new Frame[depth + 1];
+        for (int frame = 0; frame < frames.length; frame++)
+            frames[frame] = new Frame();
+        this.path = new String[depth];
+
+        PivotTreeNode root = pivotTree.getRoot();
+        frames[0].reset(root);
+        this.top = root.getRowCount() == 0 ? -1 : 0;
+    }
+
+    /**
+     * Moves to the next row of the table.
+     *
+     * @return false if there are no more rows.
+     */
+    public boolean next() {
+        while (top >= 0) {
+            Frame frame = frames[top];
+            if (frame.next < frame.count) {
+                String label = frame.labels[frame.next++];
+                PivotTreeNode child = frame.node.getChild(label);
+                path[top] = label;
+
+                if (child.getChildCount() == 0) {
+                    setRow(child, top + 1, false);
+                    return true;
+                }
+                frames[++top].reset(child);
+            } else {
+                setRow(frame.node, top--, true);
+                return true;
+            }
+        }
+        node = null;
+        return false;
+    }
+
+    private void setRow(PivotTreeNode node, int level, boolean total) {
+        this.node = node;
+        this.level = level;
+        this.total = total;
+    }
+
+    /**
+     * @return the labels of the current row from the root, as a view valid until the next move.
+     */
+    public List<String> getLabels() {
+        requireRow();
+        return Arrays.asList(path).subList(0, level);
+    }
+
+    /**
+     * @return the number of labels of the current row, 0 for the grand total.
+     */
+    public int getLevel() {
+        requireRow();
+        return level;
+    }
+
+    /**
+     * @return whether the current row is the total of a level rather than a detail row.
+     */
+    public boolean isTotal() {
+        requireRow();
+        return total;
+    }
+
+    public long getRowCount() {
+        requireRow();
+        return node.getRowCount();
+    }
+
+    /**
+     * @return the aggregate of the current row.
+     */
+    public double getValue() {
+        requireRow();
+        return pivotTree.result(node, aggregation);
+    }
+
+    private void requireRow() {
+        if (node == null)
+            throw new IllegalStateException("The cursor is not on a row, call next() first.");
+    }
+}
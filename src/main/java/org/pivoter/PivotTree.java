@@ -1,15 +1,95 @@
 package org.pivoter;
 
-import java.util.Collection;
-import java.util.List;
+import org.pivoter.aggregation.Accumulator;
+import org.pivoter.aggregation.Aggregation;
+import org.pivoter.utils.DoubleArray;
+import org.pivoter.utils.DoubleValues;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.Function;
 
 public class PivotTree {
 
+    // below this number of rows, a parallel build task builds its partial tree sequentially
+    static final int PARALLEL_BUILD_THRESHOLD = 4096;
+
+    // shallow sizes estimated for a 64-bit JVM with compressed references, see getStats()
+    private static final int NODE_BYTES = 96;
+    private static final int ARRAY_BYTES = 16;
+    private static final int CHILD_MAP_BYTES = 24;
+    private static final int LABEL_BYTES = 96; // string, its bytes array, and its dictionary entries
+
     private final PivotTreeNode root;
+    private final List<String> measures;
+    private final List<Aggregation> aggregations;
+    private final boolean retainValues;
+    private final boolean retractable;
+    private SliceIndex sliceIndex; // built on the first slice query, dropped by any change
 
+    /**
+     * Creates a tree that retains every raw value and maintains no accumulators,
+     * so that any custom aggregation function can be applied at query time.
+     */
     public PivotTree() {
-        this.root = new PivotTreeNode("root");
+        this(Collections.emptyList(), true);
+    }
+
+    /**
+     * Creates a tree whose nodes maintain one accumulator per aggregation.
+     *
+     * @param aggregations the decomposable aggregations maintained by every node.
+     * @param retainValues whether raw values are also kept, which is only needed
+     *                     to apply holistic functions (e.g. mode, median) at query time.
+     */
+    public PivotTree(List<Aggregation> aggregations, boolean retainValues) {
+        this(List.of("#"), aggregations, retainValues);
+    }
+
+    /**
+     * Creates a tree whose rows carry one value per measure (e.g. revenue, units and cost), every node
+     * maintaining one accumulator per measure and aggregation, so that a single tree is built for all
+     * of them. Raw values can only be retained with a single measure.
+     *
+     * @param measures     the names of the measures, in the order of the values of the rows.
+     * @param aggregations the decomposable aggregations maintained by every node, for each measure.
+     * @param retainValues whether raw values are also kept, see {@link #PivotTree(List, boolean)}.
+     */
+    public PivotTree(List<String> measures, List<Aggregation> aggregations, boolean retainValues) {
+        if (measures == null || measures.isEmpty())
+            throw new IllegalArgumentException("measures cannot be null or empty.");
+        if (new HashSet<>(measures).size() != measures.size())
+            throw new IllegalArgumentException("measures cannot contain duplicates: " + measures);
+        if (aggregations == null)
+            throw new IllegalArgumentException("aggregations cannot be null.");
+        if (retainValues && measures.size() > 1)
+            throw new IllegalArgumentException("Raw values can only be retained by a pivot tree with a single measure.");
+
+        this.measures = List.copyOf(measures);
+        this.aggregations = List.copyOf(aggregations);
+        this.retainValues = retainValues;
+        this.retractable = this.aggregations.stream().allMatch(aggregation -> aggregation.newAccumulator().isRemovable());
+        this.root = new PivotTreeNode("root", this.measures.size(), this.aggregations, retainValues);
+    }
+
+    private PivotTree(PivotTree previous) {
+        this.measures = previous.measures;
+        this.aggregations = previous.aggregations;
+        this.retainValues = previous.retainValues;
+        this.retractable = previous.retractable;
+        this.root = previous.root.nextVersion();
+    }
+
+    /**
+     * Creates the next version of this tree, sharing all its nodes: the new version copies
+     * a node the first time it modifies it, so that this tree is left unmodified and can keep
+     * being read while the new version is written. Insertions and retractions then copy only
+     * the nodes along their paths, and so does retaining their raw values, until enough of them
+     * changed for a layout to copy every node, see {@link ValueStore}.
+     */
+    PivotTree nextVersion() {
+        return new PivotTree(this);
     }
 
     public PivotTreeNode getRoot() {
@@ -20,96 +100,719 @@ public class PivotTree {
         if (pivotRows == null)
             throw new IllegalArgumentException("pivotRows cannot be null.");
 
-        for (PivotRow pivotRow : pivotRows) {
-            List<String> sortedLabels = pivotRow.getLabels();
-            sortedLabels.add(0, "root"); // make "root" is the starting label
+        for (PivotRow pivotRow : pivotRows)
+            insert(pivotRow);
+        compactValues();
+    }
 
-            PivotTreeNode node = root;
+    /**
+     * Builds the tree in parallel: the rows are split across the tasks of the provided pool,
+     * each building a partial tree, and partial trees are merged pairwise as tasks join.
+     * Produces the same aggregates as {@link #build(List)}, and the same order of retained values,
+     * as they are laid out by label rather than by the order in which the tasks encoded the labels,
+     * so that functions breaking ties by encounter order (e.g. mode) agree too.
+     */
+    void build(List<PivotRow> pivotRows, ForkJoinPool forkJoinPool) {
+        if (pivotRows == null)
+            throw new IllegalArgumentException("pivotRows cannot be null.");
+        if (forkJoinPool == null)
+            throw new IllegalArgumentException("forkJoinPool cannot be null.");
 
-            while (!sortedLabels.isEmpty()) {
-                String currentLabel = sortedLabels.get(0);
-                // if current node does not have label, set it
-                if (node.getLabel() == null)
-                    node.setLabel(currentLabel);
+        if (pivotRows.size() <= PARALLEL_BUILD_THRESHOLD) {
+            build(pivotRows);
+            return;
+        }
+        merge(forkJoinPool.invoke(new PartialBuild(pivotRows, 0, pivotRows.size())));
+    }
 
-                node.addValue(pivotRow.getValue());
+    @SuppressWarnings("serial") // never serialized, as RecursiveTask only is for compatibility
+    private class PartialBuild extends RecursiveTask<PivotTree> {
 
-                if (sortedLabels.size() > 1) { // ensure leaf is not reached
-                    String nextLabel = sortedLabels.get(1);
-                    // set child as current node for next iteration
-                    node = node.getOrAddChild(nextLabel);
-                }
-                // remove first element from sorted labels
-                sortedLabels.remove(0);
+        private final List<PivotRow> pivotRows;
+        private final int from;
+        private final int to;
+
+        PartialBuild(List<PivotRow> pivotRows, int from, int to) {
+            this.pivotRows = pivotRows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected PivotTree compute() {
+            if (to - from <= PARALLEL_BUILD_THRESHOLD) {
+                PivotTree partialTree = new PivotTree(measures, aggregations, retainValues);
+                partialTree.build(pivotRows.subList(from, to));
+                return partialTree;
             }
+
+            int middle = (from + to) >>> 1;
+            PartialBuild right = new PartialBuild(pivotRows, middle, to);
+            right.fork();
+            PivotTree leftTree = new PartialBuild(pivotRows, from, middle).compute();
+            PivotTree rightTree = right.join();
+
+            leftTree.merge(rightTree);
+            return leftTree;
         }
     }
 
-    void buildRecursive(List<PivotRow> pivotRows) {
+    /**
+     * Merges another tree into this one, as if its rows had been inserted in this tree:
+     * accumulators of matching nodes are combined, missing nodes are added and retained
+     * values are copied. O(#nodes + #values) of the other tree, which is left unmodified.
+     * Allows combining trees built by different threads, processes or from different sources.
+     *
+     * @throws IllegalArgumentException if the other tree does not maintain the same aggregations
+     *                                  and value retention as this one.
+     */
+    public void merge(PivotTree other) {
+        if (other == null)
+            throw new IllegalArgumentException("other cannot be null.");
+        if (other == this)
+            throw new IllegalArgumentException("A pivot tree cannot be merged into itself.");
+        if (!measures.equals(other.measures) || !aggregations.equals(other.aggregations) || retainValues != other.retainValues)
+            throw new IllegalArgumentException(String.format(
+                    "Cannot merge a pivot tree with measures %s, aggregations %s and retainValues=%b into one with measures %s, aggregations %s and retainValues=%b.",
+                    other.measures, other.aggregations, other.retainValues, measures, aggregations, retainValues));
+
+        sliceIndex = null;
+        root.merge(other.root);
+        compactValues();
+    }
+
+    /**
+     * Inserts a row along the path of its sorted labels, starting from the root.
+     * O(m) complexity, where m = #labels: the labels are read by index and left unmodified,
+     * and only the nodes that are not in the tree yet are allocated.
+     */
+    void insert(PivotRow pivotRow) {
+        sliceIndex = null;
+        if (measures.size() > 1) {
+            insertMeasures(pivotRow);
+            return;
+        }
+        List<String> sortedLabels = pivotRow.getLabels();
+        double value = pivotRow.getValue();
+
+        PivotTreeNode node = root;
+        node.addValue(value);
+
+        for (int depth = 0; depth < sortedLabels.size(); depth++) {
+            node = node.getOrAddChild(sortedLabels.get(depth));
+            node.addValue(value);
+        }
+        node.retainValue(value);
+    }
+
+    private void insertMeasures(PivotRow pivotRow) {
+        List<String> sortedLabels = pivotRow.getLabels();
+        double[] measureValues = requireMeasureValues(pivotRow);
+
+        PivotTreeNode node = root;
+        node.addValues(measureValues);
+
+        for (int depth = 0; depth < sortedLabels.size(); depth++) {
+            node = node.getOrAddChild(sortedLabels.get(depth));
+            node.addValues(measureValues);
+        }
+    }
+
+    private double[] requireMeasureValues(PivotRow pivotRow) {
+        double[] measureValues = pivotRow.getMeasureValues();
+        if (measureValues == null || measureValues.length != measures.size())
+            throw new IllegalArgumentException(String.format(
+                    "The row %s does not have one value per measure: %s", pivotRow, measures));
+        return measureValues;
+    }
+
+    /**
+     * Inserts a row whose labels are already encoded in the dictionaries of this tree, see {@link #getDictionary(int)}.
+     */
+    void insert(int[] codes, double value) {
+        sliceIndex = null;
+        if (measures.size() > 1)
+            throw new IllegalArgumentException("A single value cannot be inserted into a pivot tree with measures " + measures);
+
+        PivotTreeNode node = root;
+        node.addValue(value);
+
+        for (int code : codes) {
+            node = node.getOrAddChild(code);
+            node.addValue(value);
+        }
+        node.retainValue(value);
+    }
+
+    /**
+     * @return the dictionary encoding the labels of the given level, created if needed.
+     */
+    LabelDictionary getDictionary(int depth) {
+        return root.getDictionaries().getOrAdd(depth);
+    }
+
+    /**
+     * Removes previously inserted rows, updating the aggregates along their paths in place
+     * and pruning the nodes left without rows. O(d * m) complexity, where d = #rows to retract, m = #labels.
+     *
+     * @throws IllegalStateException    if an aggregation of this tree does not support removal.
+     * @throws IllegalArgumentException if the path of a row is not in the tree, or if raw values are retained
+     *                                  and its value is not; the rows before it stay retracted. Without retained
+     *                                  values, a value that was never inserted along an existing path is removed
+     *                                  from the aggregates all the same.
+     */
+    void retract(List<PivotRow> pivotRows) {
         if (pivotRows == null)
             throw new IllegalArgumentException("pivotRows cannot be null.");
+        if (!retractable)
+            throw new IllegalStateException("Rows can only be retracted when all aggregations support removal: " + aggregations);
 
-        for (PivotRow pivotRow : pivotRows) {
-            List<String> sortedLabels = pivotRow.getLabels();
-            sortedLabels.add(0, "root"); // ensure that "root" is the starting label
+        for (PivotRow pivotRow : pivotRows)
+            remove(pivotRow);
+        compactValues();
+    }
+
+    private void remove(PivotRow pivotRow) {
+        sliceIndex = null;
+        List<String> sortedLabels = pivotRow.getLabels();
+        double value = pivotRow.getValue();
+        double[] measureValues = measures.size() > 1 ? requireMeasureValues(pivotRow) : null;
 
-            buildRecursive(root, sortedLabels, pivotRow);
+        // locate the whole path first, so that a row that is not in the tree leaves it untouched
+        PivotTreeNode[] path = new PivotTreeNode[sortedLabels.size() + 1];
+        path[0] = root;
+        for (int depth = 0; depth < sortedLabels.size(); depth++) {
+            path[depth + 1] = path[depth].getOwnedChild(sortedLabels.get(depth));
+            if (path[depth + 1] == null)
+                throw new IllegalArgumentException("Cannot retract a row that is not in the pivot tree: " + pivotRow);
         }
+        if (!path[path.length - 1].releaseRetainedValue(value))
+            throw new IllegalArgumentException("Cannot retract a row that is not in the pivot tree: " + pivotRow);
+
+        for (PivotTreeNode node : path) {
+            if (measureValues == null) node.removeValue(value);
+            else node.removeValues(measureValues);
+        }
+
+        for (int depth = sortedLabels.size(); depth > 0 && path[depth].getRowCount() == 0; depth--)
+            path[depth - 1].removeChild(sortedLabels.get(depth - 1));
     }
 
-    private void buildRecursive(PivotTreeNode node, List<String> sortedLabels, PivotRow pivotRow) {
-        node.addValue(pivotRow.getValue());
+    void buildRecursive(List<PivotRow> pivotRows) {
+        if (pivotRows == null)
+            throw new IllegalArgumentException("pivotRows cannot be null.");
+        if (measures.size() > 1)
+            throw new IllegalStateException("Recursive builds only support a single measure.");
 
-        // // termination condition, leaf is reached
-        if (sortedLabels.size() == 1) return;
+        sliceIndex = null;
+        for (PivotRow pivotRow : pivotRows)
+            buildRecursive(root, pivotRow.getLabels(), 0, pivotRow.getValue());
+        compactValues();
+    }
 
-        String currentLabel = sortedLabels.get(0);
-        if (node.getLabel() == null) node.setLabel(currentLabel);
+    private void buildRecursive(PivotTreeNode node, List<String> sortedLabels, int depth, double value) {
+        node.addValue(value);
 
-        String nextLabel = sortedLabels.get(1);
-        PivotTreeNode child = node.getOrAddChild(nextLabel);
+        // termination condition, leaf is reached
+        if (depth == sortedLabels.size()) {
+            node.retainValue(value);
+            return;
+        }
 
         // recur
-        buildRecursive(child, sortedLabels.subList(1, sortedLabels.size()), pivotRow);
+        buildRecursive(node.getOrAddChild(sortedLabels.get(depth)), sortedLabels, depth + 1, value);
+    }
+
+    /**
+     * Lays out the raw values retained since the last layout once enough of them changed, see {@link ValueStore}.
+     * Reads never mutate the tree, whether they follow a layout or not.
+     */
+    void compactValues() {
+        root.compactValueStore();
+    }
+
+    /**
+     * Compiles this tree into a read-only, flat array representation, which answers the same
+     * queries with fewer cache misses. O(#nodes * log(#children) + #values); later changes
+     * to this tree are not reflected in the frozen one.
+     */
+    public FrozenPivotTree freeze() {
+        return new FrozenPivotTree(this);
+    }
+
+    /**
+     * Describes the structure of this tree: node count per level, fan-out distribution and an estimate
+     * of the retained memory. O(#nodes + #labels), nothing being maintained for it while building.
+     */
+    public PivotTreeStats getStats() {
+        LabelDictionaries dictionaries = root.getDictionaries();
+        NodeCounts counts = new NodeCounts(dictionaries.depth());
+        counts.count(root);
+
+        long nodeCount = Arrays.stream(counts.nodeCounts).sum();
+        long labelCount = 0;
+        long labelBytes = 0;
+        for (int level = 0; level < dictionaries.depth(); level++) {
+            LabelDictionary dictionary = dictionaries.get(level);
+            labelCount += dictionary.size();
+            for (int code = 0; code < dictionary.size(); code++)
+                labelBytes += LABEL_BYTES + dictionary.decode(code).length();
+        }
+        long valueCount = root.getValueCount();
+
+        long estimatedBytes = nodeCount * (NODE_BYTES + ARRAY_BYTES + 4L * measures.size() * aggregations.size())
+                + counts.accumulatorBytes // as estimated by each accumulator, sketches being much larger than sums
+                + nodeCount * (CHILD_MAP_BYTES + 2 * ARRAY_BYTES) + counts.childMapSlots * 8 // a code and a reference per slot
+                + labelBytes
+                + (retainValues ? ARRAY_BYTES + valueCount * 8 : 0);
+        return new PivotTreeStats(root.getRowCount(), counts.nodeCounts,
+                Arrays.copyOf(counts.fanOutCounts, 32 - Integer.numberOfLeadingZeros(counts.maxFanOut)), counts.maxFanOut,
+                labelCount, valueCount, estimatedBytes, counts.memoizedResults, counts.memoEvictions);
+    }
+
+    // what getStats() counts over the nodes of the tree
+    private static final class NodeCounts {
+
+        private final long[] nodeCounts; // per depth
+        private final long[] fanOutCounts = new long[32]; // per power of two of the number of children
+        private int maxFanOut;
+        private long childMapSlots;
+        private long accumulatorBytes;
+        private long memoizedResults;
+        private long memoEvictions;
+
+        NodeCounts(int depth) {
+            this.nodeCounts = new long[depth + 1];
+        }
+
+        void count(PivotTreeNode node) {
+            nodeCounts[node.getDepth()]++;
+            accumulatorBytes += node.getAccumulatorsEstimatedBytes();
+            memoizedResults += node.getMemo().size();
+            memoEvictions += node.getMemo().getEvictionCount();
+            IntChildMap children = node.getChildMap();
+            childMapSlots += children.capacity();
+            int childCount = children.size();
+            if (childCount == 0) return;
+
+            fanOutCounts[31 - Integer.numberOfLeadingZeros(childCount)]++;
+            maxFanOut = Math.max(maxFanOut, childCount);
+            for (int slot = 0; slot < children.capacity(); slot++) {
+                PivotTreeNode child = children.nodeAt(slot);
+                if (child != null) count(child);
+            }
+        }
+    }
+
+    /**
+     * @return the names of the measures of the rows, {@code ["#"]} for single-value rows.
+     */
+    public List<String> getMeasures() {
+        return measures;
+    }
+
+    public List<Aggregation> getAggregations() {
+        return aggregations;
+    }
+
+    public boolean isRetainingValues() {
+        return retainValues;
+    }
+
+    public boolean isRetractable() {
+        return retractable;
     }
 
     Double query(List<String> queryLabels, Function<Collection<Double>, Double> pivotFunction) {
+        return query(queryLabels, pivotFunction, null, false);
+    }
+
+    /**
+     * @param queryCache the cache of the results of the function, or null.
+     * @param memoize    whether the result is memoized on the queried node, see {@link Pivoter#setLazyAggregation(boolean)}.
+     */
+    Double query(List<String> queryLabels, Function<Collection<Double>, Double> pivotFunction,
+                 QueryCache queryCache, boolean memoize) {
         if (queryLabels == null)
             throw new IllegalArgumentException("queryLabels cannot be null.");
+        if (!retainValues)
+            throw new IllegalStateException("Raw values are not retained by this pivot tree, query it with an Aggregation instead.");
+
+        PivotTreeNode node = findRecursive(root, queryLabels);
+        if (node == null) return 0.0;
+        if (memoize) {
+            // a function cannot be combined from the results of the children, unlike an aggregation
+            if (node.getMemoized(pivotFunction) instanceof Double memoized) return memoized;
+            Double result = pivotFunction.apply(node.getValues());
+            node.memoize(pivotFunction, result);
+            return result;
+        }
+        if (queryCache == null) return pivotFunction.apply(node.getValues());
+
+        Double result = queryCache.get(node, 0, pivotFunction);
+        if (result == null) {
+            result = pivotFunction.apply(node.getValues());
+            queryCache.put(node, 0, pivotFunction, result);
+        }
+        return result;
+    }
+
+    Double query(List<String> queryLabels, Aggregation aggregation) {
+        return query(queryLabels, measures.get(0), aggregation);
+    }
 
-        return queryRecursive(root, queryLabels, pivotFunction);
+    Double query(List<String> queryLabels, String measure, Aggregation aggregation) {
+        return query(queryLabels, measure, aggregation, null, false);
     }
 
-    private Double queryRecursive(PivotTreeNode node, List<String> sortedQueryLabels, Function<Collection<Double>, Double> pivotFunction) {
+    /**
+     * @param queryCache the cache of the aggregations computed from retained values, or null.
+     * @param memoize    whether an aggregation computed from retained values is memoized on the nodes of
+     *                   the queried subtree, see {@link Pivoter#setLazyAggregation(boolean)}.
+     */
+    Double query(List<String> queryLabels, String measure, Aggregation aggregation,
+                 QueryCache queryCache, boolean memoize) {
+        if (queryLabels == null)
+            throw new IllegalArgumentException("queryLabels cannot be null.");
+        if (aggregation == null)
+            throw new IllegalArgumentException("aggregation cannot be null.");
+        int measureIndex = measureIndex(measure);
+
+        PivotTreeNode node = findRecursive(root, queryLabels);
         if (node == null) return 0.0;
+        if (node.getAccumulator(measureIndex, aggregation) != null)
+            return query(node, measureIndex, aggregation);
+        if (memoize && retainValues)
+            return memoizedAccumulator(node, aggregation).result();
+        if (queryCache == null)
+            return query(node, measureIndex, aggregation);
+
+        Double result = queryCache.get(node, measureIndex, aggregation);
+        if (result == null) {
+            result = query(node, measureIndex, aggregation);
+            queryCache.put(node, measureIndex, aggregation, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return the aggregate of the first measure of the node, see {@link #query(List, Aggregation)}.
+     */
+    double result(PivotTreeNode node, Aggregation aggregation) {
+        return query(node, 0, aggregation);
+    }
+
+    private double query(PivotTreeNode node, int measureIndex, Aggregation aggregation) {
+        Accumulator accumulator = node.getAccumulator(measureIndex, aggregation);
+        if (accumulator != null) // O(1), pre-aggregated at build time
+            return accumulator.result();
+
+        if (!retainValues)
+            throw new IllegalArgumentException(String.format(
+                    "Aggregation %s is not maintained by this pivot tree and raw values are not retained.", aggregation));
+
+        accumulator = aggregation.newAccumulator();
+        accumulator.addAll(node.getValues());
+        return accumulator.result();
+    }
+
+    /**
+     * Computes an aggregation of the retained values of a subtree from the accumulators of its children,
+     * themselves computed the same way, memoizing the accumulator of each node of the subtree: a later
+     * query of any of them is then O(1), as is a query of an ancestor once its other children are computed.
+     * O(#values + #nodes) of the subtree the first time.
+     */
+    private static Accumulator memoizedAccumulator(PivotTreeNode node, Aggregation aggregation) {
+        if (node.getMemoized(aggregation) instanceof Accumulator memoized) return memoized;
+
+        Accumulator accumulator = aggregation.newAccumulator();
+        accumulator.addAll(node.getOwnValues());
+        IntChildMap children = node.getChildMap();
+        for (int slot = 0; slot < children.capacity(); slot++) {
+            PivotTreeNode child = children.nodeAt(slot);
+            if (child != null) accumulator.merge(memoizedAccumulator(child, aggregation));
+        }
+
+        node.memoize(aggregation, accumulator); // never modified once memoized, as it is only merged into new ones
+        return accumulator;
+    }
+
+    /**
+     * Reads several maintained aggregates of several measures from a single lookup of the queried node.
+     *
+     * @return the result of each aggregation, for each measure: {@code results[measure][aggregation]},
+     * all 0.0 if there is no such node.
+     * @throws IllegalArgumentException if a measure is unknown or an aggregation is not maintained.
+     */
+    double[][] query(List<String> queryLabels, List<String> measures, List<Aggregation> aggregations) {
+        if (queryLabels == null)
+            throw new IllegalArgumentException("queryLabels cannot be null.");
+        if (measures == null || aggregations == null)
+            throw new IllegalArgumentException("measures and aggregations cannot be null.");
+
+        int[] measureIndexes = new int[measures.size()];
+        for (int measure = 0; measure < measureIndexes.length; measure++)
+            measureIndexes[measure] = measureIndex(measures.get(measure));
+        for (Aggregation aggregation : aggregations)
+            if (!this.aggregations.contains(aggregation))
+                throw new IllegalArgumentException(String.format("Aggregation %s is not maintained by this pivot tree.", aggregation));
+
+        double[][] results = new double[measures.size()][aggregations.size()];
+        PivotTreeNode node = findRecursive(root, queryLabels);
+        if (node == null) return results;
+
+        for (int measure = 0; measure < measureIndexes.length; measure++)
+            for (int aggregation = 0; aggregation < aggregations.size(); aggregation++)
+                results[measure][aggregation] = node.getAccumulator(measureIndexes[measure], aggregations.get(aggregation)).result();
+        return results;
+    }
+
+    private int measureIndex(String measure) {
+        int index = measures.indexOf(measure);
+        if (index < 0)
+            throw new IllegalArgumentException(String.format("Unknown measure '%s', expected one of %s.", measure, measures));
+        return index;
+    }
+
+    /**
+     * Ranks the children of a node by an aggregate, e.g. the top 10 nations by sum, or the 5 eyes colors of
+     * Germany with the smallest mean. The children are scanned once, keeping the k best ones so far in a
+     * bounded heap, O(c * log(k)) for c children; nothing is kept across queries, so that a ranking costs
+     * the same whether or not the node changed since the previous one.
+     *
+     * @param queryLabels the sorted labels of the node whose children are ranked, empty for the root.
+     * @param k           the maximum number of children to return.
+     * @param largest     whether the children with the largest aggregates come first, rather than the smallest.
+     * @return the label and aggregate of each of the k first children, in order, equal aggregates being in
+     * ascending order of their labels; empty if there is no such node.
+     * @throws IllegalArgumentException if k is negative, or if the aggregation is neither maintained nor computable
+     *                                  from retained values.
+     */
+    Map<String, Double> queryRanking(List<String> queryLabels, int k, Aggregation aggregation, boolean largest) {
+        if (queryLabels == null)
+            throw new IllegalArgumentException("queryLabels cannot be null.");
+        if (k < 0)
+            throw new IllegalArgumentException("k cannot be negative: " + k);
+        if (aggregation == null)
+            throw new IllegalArgumentException("aggregation cannot be null.");
+        if (!retainValues && !aggregations.contains(aggregation))
+            throw new IllegalArgumentException(String.format(
+                    "Aggregation %s is not maintained by this pivot tree and raw values are not retained.", aggregation));
+
+        Map<String, Double> ranking = new LinkedHashMap<>();
+        PivotTreeNode node = findRecursive(root, queryLabels);
+        if (node == null || k == 0) return ranking;
+
+        Comparator<RankedChild> order = Comparator.comparingDouble(RankedChild::value);
+        order = (largest ? order.reversed() : order).thenComparing(RankedChild::label);
+        PriorityQueue<RankedChild> heap = new PriorityQueue<>(Math.min(k, node.getChildMap().size()) + 1, order.reversed()); // worst on top
+
+        LabelDictionary dictionary = node.getDictionaries().get(node.getDepth());
+        IntChildMap children = node.getChildMap();
+        for (int slot = 0; slot < children.capacity(); slot++) {
+            PivotTreeNode child = children.nodeAt(slot);
+            if (child == null) continue;
+
+            RankedChild candidate = new RankedChild(dictionary.decode(children.codeAt(slot)), query(child, 0, aggregation));
+            if (heap.size() < k) heap.add(candidate);
+            else if (order.compare(candidate, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(candidate);
+            }
+        }
+
+        RankedChild[] ranked = heap.toArray(new RankedChild[0]);
+        Arrays.sort(ranked, order);
+        for (RankedChild child : ranked)
+            ranking.put(child.label(), child.value());
+        return ranking;
+    }
 
-        if (sortedQueryLabels.isEmpty()) // termination condition
-            return pivotFunction.apply(node.getValues());
+    private record RankedChild(String label, double value) {
+    }
+
+    /**
+     * Answers many queries at once: the paths are merged into a trie, which is walked along with the
+     * tree, so that a prefix shared by several paths is looked up once rather than once per path.
+     *
+     * @param queryPaths the sorted labels of each query.
+     * @return the result of each query, in the order of the paths, 0.0 for a path that is not in the tree.
+     * @throws IllegalArgumentException if the aggregation is neither maintained nor computable from retained values.
+     */
+    double[] queryBatch(List<List<String>> queryPaths, Aggregation aggregation) {
+        if (queryPaths == null)
+            throw new IllegalArgumentException("queryPaths cannot be null.");
+        if (aggregation == null)
+            throw new IllegalArgumentException("aggregation cannot be null.");
+        if (!retainValues && !aggregations.contains(aggregation))
+            throw new IllegalArgumentException(String.format(
+                    "Aggregation %s is not maintained by this pivot tree and raw values are not retained.", aggregation));
+
+        QueryTrie trie = new QueryTrie();
+        for (int query = 0; query < queryPaths.size(); query++) {
+            List<String> queryPath = queryPaths.get(query);
+            if (queryPath == null)
+                throw new IllegalArgumentException("queryLabels cannot be null.");
+            trie.add(queryPath, query);
+        }
+
+        double[] results = new double[queryPaths.size()];
+        queryBatch(root, trie, aggregation, results);
+        return results;
+    }
+
+    private void queryBatch(PivotTreeNode node, QueryTrie trie, Aggregation aggregation, double[] results) {
+        if (trie.queryCount > 0) {
+            double result = query(node, 0, aggregation);
+            for (int query = 0; query < trie.queryCount; query++)
+                results[trie.queries[query]] = result;
+        }
+
+        for (Map.Entry<String, QueryTrie> child : trie.children.entrySet()) {
+            PivotTreeNode childNode = node.getChild(child.getKey());
+            if (childNode != null) // otherwise the results below stay 0.0
+                queryBatch(childNode, child.getValue(), aggregation, results);
+        }
+    }
+
+    // the query paths sharing a prefix, with the queries ending there
+    private static final class QueryTrie {
+
+        private final Map<String, QueryTrie> children = new HashMap<>();
+        private int[] queries = new int[0];
+        private int queryCount;
+
+        void add(List<String> queryPath, int query) {
+            QueryTrie trie = this;
+            for (String label : queryPath)
+                trie = trie.children.computeIfAbsent(label, key -> new QueryTrie());
+
+            if (trie.queryCount == trie.queries.length)
+                trie.queries = Arrays.copyOf(trie.queries, Math.max(1, 2 * trie.queryCount));
+            trie.queries[trie.queryCount++] = query;
+        }
+    }
+
+    /**
+     * Opens a cursor over the rows of the pivot table of this tree, with their subtotals.
+     *
+     * @throws IllegalArgumentException if the aggregation is neither maintained nor computable from retained values.
+     */
+    public PivotTableCursor cursor(Aggregation aggregation) {
+        if (aggregation == null)
+            throw new IllegalArgumentException("aggregation cannot be null.");
+        if (!retainValues && !aggregations.contains(aggregation))
+            throw new IllegalArgumentException(String.format(
+                    "Aggregation %s is not maintained by this pivot tree and raw values are not retained.", aggregation));
+
+        return new PivotTableCursor(this, aggregation);
+    }
+
+    /**
+     * Queries the union of the subtrees matching a slice, i.e. constraints on any levels: for example
+     * {@code [null, null, "red"]} aggregates the rows whose third label is "red", whatever their first two.
+     * The matching nodes are found through a {@link SliceIndex}, built on the first slice query
+     * after a change, rather than by walking every branch.
+     *
+     * @param slice the label of each level from the root, or null for any label.
+     * @return the aggregate of the matching rows, or 0.0 if no row matches.
+     * @throws IllegalArgumentException if the aggregation is neither maintained nor computable from retained values.
+     */
+    Double querySlice(List<String> slice, Aggregation aggregation) {
+        if (aggregation == null)
+            throw new IllegalArgumentException("aggregation cannot be null.");
+
+        List<PivotTreeNode> nodes = matchSlice(slice);
+        if (nodes.isEmpty()) return 0.0;
+        if (nodes.size() == 1) return query(nodes.get(0), 0, aggregation);
 
-        return queryRecursive(
+        Accumulator accumulator = aggregation.newAccumulator();
+        if (aggregations.contains(aggregation)) { // O(#matches), the subtrees being disjoint
+            for (PivotTreeNode node : nodes)
+                accumulator.merge(node.getAccumulator(aggregation));
+            return accumulator.result();
+        }
+
+        if (!retainValues)
+            throw new IllegalArgumentException(String.format(
+                    "Aggregation %s is not maintained by this pivot tree and raw values are not retained.", aggregation));
+        for (PivotTreeNode node : nodes)
+            accumulator.addAll(node.getValues());
+        return accumulator.result();
+    }
+
+    /**
+     * Applies the function to the raw values of the union of the subtrees matching a slice.
+     *
+     * @see #querySlice(List, Aggregation)
+     */
+    Double querySlice(List<String> slice, Function<Collection<Double>, Double> pivotFunction) {
+        if (!retainValues)
+            throw new IllegalStateException("Raw values are not retained by this pivot tree, query it with an Aggregation instead.");
+
+        List<PivotTreeNode> nodes = matchSlice(slice);
+        if (nodes.isEmpty()) return 0.0;
+        if (nodes.size() == 1) return pivotFunction.apply(nodes.get(0).getValues());
+
+        DoubleArray values = new DoubleArray();
+        for (PivotTreeNode node : nodes) {
+            DoubleValues nodeValues = node.getValues();
+            for (int i = 0; i < nodeValues.size(); i++)
+                values.add(nodeValues.getDouble(i));
+        }
+        return pivotFunction.apply(DoubleValues.of(values.toArray(), 0, values.size()));
+    }
+
+    private List<PivotTreeNode> matchSlice(List<String> slice) {
+        if (slice == null)
+            throw new IllegalArgumentException("slice cannot be null.");
+
+        LabelDictionaries dictionaries = root.getDictionaries();
+        int[] sliceCodes = new int[slice.size()];
+        for (int level = 0; level < sliceCodes.length; level++) {
+            String label = slice.get(level);
+            if (label == null) {
+                sliceCodes[level] = SliceIndex.ANY;
+                continue;
+            }
+            LabelDictionary dictionary = dictionaries.get(level);
+            sliceCodes[level] = dictionary == null ? LabelDictionary.NOT_FOUND : dictionary.lookup(label);
+            if (sliceCodes[level] == LabelDictionary.NOT_FOUND) return List.of();
+        }
+
+        SliceIndex index = sliceIndex;
+        if (index == null) // a racy but safe publication, as all the fields of an index are final
+            sliceIndex = index = new SliceIndex(root);
+        return index.match(sliceCodes);
+    }
+
+    private PivotTreeNode findRecursive(PivotTreeNode node, List<String> sortedQueryLabels) {
+        if (node == null || sortedQueryLabels.isEmpty()) // termination condition
+            return node;
+
+        return findRecursive(
                 node.getChild(sortedQueryLabels.get(0)),
-                sortedQueryLabels.subList(1, sortedQueryLabels.size()),
-                pivotFunction);
+                sortedQueryLabels.subList(1, sortedQueryLabels.size()));
     }
 
     @Override
     public String toString() {
-        return toStringRecursive(this.root, "");
+        StringBuilder tree = new StringBuilder();
+        toStringRecursive(this.root, 0, tree);
+        return tree.toString();
     }
 
-    private String toStringRecursive(PivotTreeNode node, String indent) {
+    // appends to a single builder, rather than concatenating the strings of the subtrees
+    private void toStringRecursive(PivotTreeNode node, int depth, StringBuilder tree) {
         if (node == null)
-            return "";
+            return;
 
-        StringBuilder tree = new StringBuilder();
         tree.append("\n");
-        tree.append(indent)
+        tree.append("  ".repeat(depth))
                 .append(node.getLabel())
                 .append(node.getValues());
 
         for (PivotTreeNode child : node.getChildren().values())
-            tree.append(toStringRecursive(child, indent + "  "));
-
-        return tree.toString();
+            toStringRecursive(child, depth + 1, tree);
     }
 }
@@ -0,0 +1,96 @@
+package org.pivoter;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Builds a {@link PivotTree} from data rows pushed one at a time.
+ *
+ * <p>Each row is validated against the labels of the first row, converted and inserted
+ * in a single step, so no intermediate list of rows is ever kept. A builder is obtained
+ * from {@link Pivoter#newPivotTreeBuilder()} and is not thread-safe.</p>
+ *
+ * <pre>{@code
+ * PivotTreeBuilder builder = pivoter.newPivotTreeBuilder(List.of("Region", "Product"));
+ * try (Stream<Map<String, String>> dataRows = readDataRows()) {
+ *     dataRows.forEach(builder);
+ * }
+ * builder.build(); // pivoter.query(...) now reads the new tree
+ * }</pre>
+ */
+public final class PivotTreeBuilder implements Consumer<Map<String, String>> {
+
+    private final Pivoter pivoter;
+    private final PivotTree pivotTree;
+    private final Comparator<String> pivotHierarchyComparator;
+    private final List<String> pivotHierarchy; // null for natural order
+
+    private DataRowPipeline pipeline; // compiled from the labels of the first dataRow
+    private long rowCount;
+    private boolean built;
+
+    PivotTreeBuilder(Pivoter pivoter, PivotTree pivotTree,
+                     Comparator<String> pivotHierarchyComparator, List<String> pivotHierarchy) {
+        this.pivoter = pivoter;
+        this.pivotTree = pivotTree;
+        this.pivotHierarchyComparator = pivotHierarchyComparator;
+        this.pivotHierarchy = pivotHierarchy;
+    }
+
+    /**
+     * Validates, converts and inserts a single data row.
+     *
+     * @throws IllegalArgumentException if the data row is invalid.
+     * @throws IllegalStateException    if the tree has already been built.
+     */
+    @Override
+    public void accept(Map<String, String> dataRow) {
+        if (built)
+            throw new IllegalStateException("The pivot tree has already been built.");
+        if (dataRow == null)
+            throw new IllegalArgumentException("dataRow cannot be null.");
+
+        if (pipeline == null) {
+            if (pivotHierarchy != null)
+                Pivoter.validatePivotHierarchy(pivotHierarchy, dataRow, pivotTree.getMeasures());
+            pipeline = new DataRowPipeline(DataRowPipeline.labelsOf(dataRow), pivotTree.getMeasures(),
+                    pivotHierarchyComparator, pivotTree::insert);
+        }
+
+        try {
+            pipeline.accept(dataRow);
+        } catch (IllegalArgumentException e) {
+            PivotListener listener = pivoter.getListener();
+            if (listener != null) listener.onRowRejected(e);
+            throw e;
+        }
+        rowCount++;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Completes the tree and makes it the one queried by the {@link Pivoter} this builder was created from.
+     *
+     * @throws IllegalArgumentException if no data row has been accepted.
+     */
+    public PivotTree build() {
+        if (rowCount == 0)
+            throw new IllegalArgumentException("dataRows cannot be null or empty. Ensure that you provide a valid list of dataRows.");
+
+        if (!built) {
+            PivotListener listener = pivoter.getListener();
+            long start = listener == null ? 0 : System.nanoTime();
+            pivotTree.compactValues();
+            if (listener != null) { // rows are not timed one by one, as they are pushed by the caller
+                listener.onBuildPhase(PivotListener.BuildPhase.LAYOUT, System.nanoTime() - start);
+                listener.onRowsIngested(rowCount);
+            }
+            pivoter.publish(pivotTree, pivotHierarchyComparator, pipeline.getLabels());
+            built = true;
+        }
+        return pivotTree;
+    }
+}
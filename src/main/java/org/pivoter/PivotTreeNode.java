@@ -1,17 +1,122 @@
 package org.pivoter;
 
+import org.pivoter.aggregation.Accumulator;
+import org.pivoter.aggregation.Aggregation;
+import org.pivoter.utils.DoubleArray;
+import org.pivoter.utils.DoubleValues;
+
 import java.util.*;
 
 public class PivotTreeNode {
 
+    private static final Comparator<PivotTreeNode> BY_LABEL = Comparator.comparing(PivotTreeNode::getLabel);
+
     private String label;
-    private final List<Double> values;
-    private final Map<String, PivotTreeNode> children;
+    private final List<Aggregation> aggregations;
+    private final int measureCount;
+    private final Accumulator[] accumulators; // per measure, then per aggregation: measure * #aggregations + aggregation
+    private final IntChildMap children; // keyed by the code of their label in the dictionary of this node's depth
+    private final LabelDictionaries dictionaries;
+    private final int depth;
+    private long rowCount; // number of rows aggregated by this node
+    private final int version; // version of the tree owning this node, see nextVersion()
+    private int modificationCount; // of the rows aggregated by this node, kept by its copies
+    private volatile long cacheId; // shared with its copies, 0 until a result of this node is cached, see QueryCache
+    private NodeMemo memo = NodeMemo.EMPTY; // results computed at query time, see memoize(Object, Object)
+
+    // raw values, see ValueStore: null when raw values are not retained
+    private final ValueStore valueStore;
+    private DoubleArray pendingValues; // own values not yet laid out by the store
+    private boolean valuesChanged; // since the store last laid out this subtree, see ValueStore
+    private int valuesFrom; // start of own values, followed by the values of the children
+    private int ownValuesCount;
+    private int valuesTo;
 
     public PivotTreeNode(String label) {
-        this.children = new HashMap<>();
-        this.values = new ArrayList<>();
+        this(label, Collections.emptyList(), true);
+    }
+
+    public PivotTreeNode(String label, List<Aggregation> aggregations, boolean retainValues) {
+        this(label, 1, aggregations, retainValues);
+    }
+
+    PivotTreeNode(String label, int measureCount, List<Aggregation> aggregations, boolean retainValues) {
         this.label = label;
+        this.aggregations = aggregations;
+        this.measureCount = measureCount;
+        this.accumulators = newAccumulators(measureCount, aggregations);
+        this.children = new IntChildMap();
+        this.dictionaries = new LabelDictionaries();
+        this.depth = 0;
+        this.version = 0;
+        this.valueStore = retainValues ? new ValueStore(this) : null;
+    }
+
+    private PivotTreeNode(String label, PivotTreeNode parent) {
+        this.label = label;
+        this.aggregations = parent.aggregations;
+        this.measureCount = parent.measureCount;
+        this.accumulators = newAccumulators(measureCount, aggregations);
+        this.children = new IntChildMap();
+        this.dictionaries = parent.dictionaries;
+        this.depth = parent.depth + 1;
+        this.version = parent.version;
+        this.valueStore = parent.valueStore;
+    }
+
+    // copy sharing the children of source, which the copy will in turn copy before modifying them;
+    // a copied root (valueStore == null) gets its own store, starting from the layout of the source's
+    private PivotTreeNode(PivotTreeNode source, int version, ValueStore valueStore) {
+        this.label = source.label;
+        this.aggregations = source.aggregations;
+        this.measureCount = source.measureCount;
+        this.accumulators = new Accumulator[source.accumulators.length];
+        for (int i = 0; i < accumulators.length; i++)
+            accumulators[i] = source.accumulators[i].copy();
+        this.children = new IntChildMap(source.children);
+        this.dictionaries = source.dictionaries;
+        this.depth = source.depth;
+        this.rowCount = source.rowCount;
+        this.modificationCount = source.modificationCount;
+        this.cacheId = source.cacheId;
+        this.memo = source.memo;
+        this.version = version;
+        this.valueStore = valueStore != null || source.valueStore == null
+                ? valueStore
+                : new ValueStore(this, source.valueStore);
+        this.pendingValues = source.pendingValues == null ? null : source.pendingValues.copy();
+        this.valuesChanged = source.valuesChanged;
+        this.valuesFrom = source.valuesFrom;
+        this.ownValuesCount = source.ownValuesCount;
+        this.valuesTo = source.valuesTo;
+    }
+
+    /**
+     * Creates the root of the next version of this root's tree. The new root shares all the
+     * descendants of this one, and copies each of them the first time it is about to be modified
+     * through the new version (path copying), so that this version is never modified again
+     * and can keep being read concurrently. O(#children).
+     */
+    PivotTreeNode nextVersion() {
+        return new PivotTreeNode(this, version + 1, null);
+    }
+
+    /**
+     * @return the child with the given label, copied first if it is shared with a previous version.
+     */
+    private PivotTreeNode owned(int code, PivotTreeNode child) {
+        if (child.version == version) return child;
+
+        PivotTreeNode copy = new PivotTreeNode(child, version, valueStore);
+        children.put(code, copy);
+        return copy;
+    }
+
+    private static Accumulator[] newAccumulators(int measureCount, List<Aggregation> aggregations) {
+        Accumulator[] accumulators = new Accumulator[measureCount * aggregations.size()];
+        for (int i = 0; i < accumulators.length; i++)
+            accumulators[i] = aggregations.get(i % aggregations.size()).newAccumulator();
+        return accumulators;
     }
 
     public String getLabel() {
@@ -22,43 +127,416 @@ public class PivotTreeNode {
         this.label = label;
     }
 
-    public List<Double> getValues() {
-        return values;
+    /**
+     * @return a read-only view of the raw values of this node's subtree,
+     * or an empty list if raw values are not retained.
+     */
+    public DoubleValues getValues() {
+        return valueStore == null ? DoubleValues.empty() : valueStore.view(this);
+    }
+
+    /**
+     * @return a read-only view of the raw values of the rows ending in this node, excluding its children's.
+     */
+    DoubleValues getOwnValues() {
+        return valueStore == null ? DoubleValues.empty() : valueStore.ownView(this);
+    }
+
+    /**
+     * Lays out the raw values of this root's tree, if retained, once enough of them changed, see {@link ValueStore#compact()}.
+     */
+    void compactValueStore() {
+        if (valueStore != null) valueStore.compact();
+    }
+
+    public boolean isRetainingValues() {
+        return valueStore != null;
+    }
+
+    /**
+     * @return the number of changes of the rows aggregated by this node: a copy of a node keeps its count,
+     * so that an unchanged copy can be told apart from a changed one.
+     */
+    int getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * @return the result memoized for the function, or null if there is none.
+     */
+    Object getMemoized(Object function) {
+        return memo.get(function);
+    }
+
+    /**
+     * Keeps the result of a function computed at query time, until the rows of this node change.
+     * At most {@link NodeMemo#MAX_SIZE} results are kept, the least recently used one being evicted.
+     * The memo being replaced as a whole, it can be by concurrent queries of a published node,
+     * at worst losing a result.
+     */
+    void memoize(Object function, Object result) {
+        memo = memo.with(function, result);
+    }
+
+    /**
+     * @return the memoized results of this node, see {@link #memoize(Object, Object)}.
+     */
+    NodeMemo getMemo() {
+        return memo;
+    }
+
+    long getCacheId() {
+        return cacheId;
+    }
+
+    void setCacheId(long cacheId) {
+        this.cacheId = cacheId;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Folds the value into the accumulators of this node.
+     */
+    public void addValue(double value) {
+        for (Accumulator accumulator : accumulators)
+            accumulator.add(value);
+        rowCount++;
+        rowsChanged();
+    }
+
+    /**
+     * Folds the value of each measure into its accumulators, see {@link PivotTree#getMeasures()}.
+     */
+    void addValues(double[] measureValues) {
+        int aggregationCount = aggregations.size();
+        for (int measure = 0; measure < measureCount; measure++)
+            for (int aggregation = 0; aggregation < aggregationCount; aggregation++)
+                accumulators[measure * aggregationCount + aggregation].add(measureValues[measure]);
+        rowCount++;
+        rowsChanged();
+    }
+
+    /**
+     * Removes previously added values of each measure from the accumulators of this node.
+     *
+     * @throws UnsupportedOperationException if an accumulator does not support removal.
+     */
+    void removeValues(double[] measureValues) {
+        int aggregationCount = aggregations.size();
+        for (int measure = 0; measure < measureCount; measure++)
+            for (int aggregation = 0; aggregation < aggregationCount; aggregation++)
+                accumulators[measure * aggregationCount + aggregation].remove(measureValues[measure]);
+        rowCount--;
+        rowsChanged();
+    }
+
+    /**
+     * Removes a previously added value from the accumulators of this node.
+     *
+     * @throws UnsupportedOperationException if an accumulator does not support removal.
+     */
+    public void removeValue(double value) {
+        for (Accumulator accumulator : accumulators)
+            accumulator.remove(value);
+        rowCount--;
+        rowsChanged();
+    }
+
+    // the rows of this node changed: its memoized results and the layout of its values are stale
+    private void rowsChanged() {
+        modificationCount++;
+        memo = NodeMemo.EMPTY;
+        valuesChanged = true;
+    }
+
+    /**
+     * Keeps the raw value of a row ending at this node, if raw values are retained.
+     * Ancestors do not need a copy, as their values range covers this node's.
+     */
+    void retainValue(double value) {
+        if (valueStore == null) return;
+
+        if (pendingValues == null)
+            pendingValues = new DoubleArray();
+        pendingValues.add(value);
+        valuesChanged = true;
+        valueStore.valueAdded();
+    }
+
+    /**
+     * Releases one occurrence of a raw value kept by {@link #retainValue(double)}.
+     *
+     * @return false if this node does not keep such a value.
+     */
+    boolean releaseRetainedValue(double value) {
+        if (valueStore == null) return true;
+
+        DoubleValues values = valueStore.ownView(this);
+        int index = 0;
+        while (index < values.size() && Double.compare(values.getDouble(index), value) != 0)
+            index++;
+        if (index == values.size()) return false;
+
+        // move the remaining own values back to pending, to be laid out again by a later layout
+        DoubleArray remaining = new DoubleArray(values.size() - 1);
+        for (int i = 0; i < values.size(); i++)
+            if (i != index) remaining.add(values.getDouble(i));
+        pendingValues = remaining;
+        ownValuesCount = 0;
+        valuesChanged = true;
+        valueStore.valueRemoved();
+        return true;
+    }
+
+    boolean isValuesChanged() {
+        return valuesChanged;
     }
 
-    public void addValue(Double value) {
-        this.values.add(value);
+    int getValuesFrom() {
+        return valuesFrom;
     }
 
+    int getValuesTo() {
+        return valuesTo;
+    }
+
+    int getOwnValuesCount() {
+        return ownValuesCount;
+    }
+
+    DoubleArray getPendingValues() {
+        return pendingValues;
+    }
+
+    /**
+     * @return the number of values of this subtree, only visiting the nodes changed since the last layout.
+     */
+    int getValueCount() {
+        if (valueStore == null) return 0;
+        if (!valuesChanged) return valuesTo - valuesFrom;
+
+        int count = ownValuesCount + (pendingValues == null ? 0 : pendingValues.size());
+        for (int slot = 0; slot < children.capacity(); slot++) {
+            PivotTreeNode child = children.nodeAt(slot);
+            if (child != null) count += child.getValueCount();
+        }
+        return count;
+    }
+
+    /**
+     * Copies this subtree's values depth-first, children by label, into {@code target}, starting at {@code position}, leaving
+     * this subtree unmodified: the range of a node unchanged since the last layout is copied as a whole.
+     *
+     * @return the position following the last copied value.
+     */
+    int copyValues(double[] values, double[] target, int position) {
+        if (!valuesChanged) {
+            System.arraycopy(values, valuesFrom, target, position, valuesTo - valuesFrom);
+            return position + valuesTo - valuesFrom;
+        }
+
+        System.arraycopy(values, valuesFrom, target, position, ownValuesCount);
+        position += ownValuesCount;
+        if (pendingValues != null) {
+            pendingValues.copyTo(target, position);
+            position += pendingValues.size();
+        }
+        for (PivotTreeNode child : childrenByLabel())
+            position = child.copyValues(values, target, position);
+        return position;
+    }
+
+    // the slot order of the children depends on the codes of their labels, hence on how the tree was built
+    // (e.g. split across partial trees): ordering them by label lays values out in the same order however
+    // it was, so that holistic functions breaking ties by encounter order (e.g. mode) agree
+    private PivotTreeNode[] childrenByLabel() {
+        PivotTreeNode[] sorted = new PivotTreeNode[children.size()];
+        int size = 0;
+        for (int slot = 0; slot < children.capacity(); slot++)
+            if (children.nodeAt(slot) != null) sorted[size++] = children.nodeAt(slot);
+        Arrays.sort(sorted, BY_LABEL);
+        return sorted;
+    }
+
+    /**
+     * Lays this subtree's values out depth-first, children by label, into {@code compacted}, starting at {@code position}.
+     *
+     * @return the position following the last copied value.
+     */
+    int compactValues(double[] values, double[] compacted, int position) {
+        int from = position;
+
+        System.arraycopy(values, valuesFrom, compacted, position, ownValuesCount);
+        position += ownValuesCount;
+        if (pendingValues != null) {
+            pendingValues.copyTo(compacted, position);
+            position += pendingValues.size();
+            pendingValues = null;
+        }
+        ownValuesCount = position - from;
+
+        // ranges are rewritten for every node, so that none keeps the previous array alive:
+        // the store only lays values out again once enough of them changed, see ValueStore
+        for (int slot = 0; slot < children.capacity(); slot++) {
+            PivotTreeNode child = children.nodeAt(slot);
+            if (child != null && child.version != version)
+                children.setNodeAt(slot, new PivotTreeNode(child, version, valueStore));
+        }
+        for (PivotTreeNode child : childrenByLabel())
+            position = child.compactValues(values, compacted, position);
+
+        valuesFrom = from;
+        valuesTo = position;
+        if (valuesChanged) {
+            valuesChanged = false;
+            memo = memo.without(ValueStore.VIEW); // the view assembled since the last layout
+        }
+        return position;
+    }
+
+    /**
+     * @return the sum of the {@link Accumulator#getEstimatedBytes()} of the accumulators of this node.
+     */
+    long getAccumulatorsEstimatedBytes() {
+        long bytes = 0;
+        for (Accumulator accumulator : accumulators)
+            bytes += accumulator.getEstimatedBytes();
+        return bytes;
+    }
+
+    /**
+     * @return the accumulator maintained for {@code aggregation}, or null if it is not maintained by this node.
+     */
+    public Accumulator getAccumulator(Aggregation aggregation) {
+        return getAccumulator(0, aggregation);
+    }
+
+    /**
+     * @return the accumulator maintained for {@code aggregation} of the measure at the given index,
+     * or null if it is not maintained by this node.
+     */
+    Accumulator getAccumulator(int measure, Aggregation aggregation) {
+        int index = aggregations.indexOf(aggregation);
+        return index < 0 ? null : accumulators[measure * aggregations.size() + index];
+    }
+
+    /**
+     * @return a read-only snapshot of the children of this node, by label.
+     */
     public Map<String, PivotTreeNode> getChildren() {
-        return children;
+        Map<String, PivotTreeNode> labeledChildren = new LinkedHashMap<>();
+        LabelDictionary dictionary = dictionaries.get(depth);
+
+        for (int slot = 0; slot < children.capacity(); slot++) {
+            PivotTreeNode child = children.nodeAt(slot);
+            if (child != null) labeledChildren.put(dictionary.decode(children.codeAt(slot)), child);
+        }
+        return Collections.unmodifiableMap(labeledChildren);
+    }
+
+    public int getChildCount() {
+        return children.size();
     }
 
     public PivotTreeNode getChild(String label) {
-        return children.getOrDefault(label, null);
+        int code = getChildCode(label);
+        return code == LabelDictionary.NOT_FOUND ? null : children.get(code);
+    }
+
+    /**
+     * @return the child whose label has the given code in the dictionary of this node's depth, or null.
+     */
+    PivotTreeNode getChild(int code) {
+        return children.get(code);
+    }
+
+    /**
+     * @return the code of the label in the dictionary of this node's depth, or {@link LabelDictionary#NOT_FOUND}.
+     */
+    int getChildCode(String label) {
+        LabelDictionary dictionary = dictionaries.get(depth);
+        return dictionary == null ? LabelDictionary.NOT_FOUND : dictionary.lookup(label);
     }
 
     public PivotTreeNode getOrAddChild(String label) {
-        PivotTreeNode child = this.getChild(label);
+        return getOrAddChild(dictionaries.getOrAdd(depth).encode(label));
+    }
+
+    /**
+     * @param code the code of a label in the dictionary of this node's depth, see {@link LabelDictionaries#getOrAdd(int)}.
+     */
+    PivotTreeNode getOrAddChild(int code) {
+        PivotTreeNode child = children.get(code);
 
         if (child == null) {
-            child = new PivotTreeNode(label);
-            this.addChildIfNotPresent(label, child);
+            child = new PivotTreeNode(dictionaries.get(depth).decode(code), this); // share one instance of each label
+            children.put(code, child);
+        }
+        return owned(code, child);
+    }
+
+    /**
+     * @return the child with the given label, ready to be modified by this node's version, or null.
+     */
+    PivotTreeNode getOwnedChild(String label) {
+        int code = getChildCode(label);
+        PivotTreeNode child = code == LabelDictionary.NOT_FOUND ? null : children.get(code);
+        return child == null ? null : owned(code, child);
+    }
+
+    IntChildMap getChildMap() {
+        return children;
+    }
+
+    LabelDictionaries getDictionaries() {
+        return dictionaries;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Merges a node with the same aggregations into this one: accumulators are combined,
+     * retained values are copied and children are merged recursively, creating missing ones.
+     * The source node is left unmodified.
+     */
+    void merge(PivotTreeNode source) {
+        for (int i = 0; i < accumulators.length; i++)
+            accumulators[i].merge(source.accumulators[i]);
+        rowCount += source.rowCount;
+        rowsChanged();
+
+        if (valueStore != null) {
+            DoubleValues sourceValues = source.getOwnValues();
+            for (int i = 0; i < sourceValues.size(); i++)
+                retainValue(sourceValues.getDouble(i));
+        }
+
+        // the source may belong to another tree, with other codes: match children by label
+        LabelDictionary sourceDictionary = source.dictionaries.get(source.depth);
+        for (int slot = 0; slot < source.children.capacity(); slot++) {
+            PivotTreeNode sourceChild = source.children.nodeAt(slot);
+            if (sourceChild != null)
+                getOrAddChild(sourceDictionary.decode(source.children.codeAt(slot))).merge(sourceChild);
         }
-        return child;
     }
 
-    private void addChildIfNotPresent(String label, PivotTreeNode child) {
-        if (children.containsKey(label)) return;
-        children.put(label, child);
+    void removeChild(String label) {
+        int code = getChildCode(label);
+        if (code != LabelDictionary.NOT_FOUND) children.remove(code);
     }
 
     @Override
     public String toString() {
         return "PivotTreeNode{" +
                 "label='" + label + '\'' +
-                ", value=" + values +
-                ", children=" + children +
+                ", value=" + getValues() +
+                ", accumulators=" + Arrays.toString(accumulators) +
+                ", children=" + getChildren() +
                 '}';
     }
 }
@@ -0,0 +1,106 @@
+package org.pivoter;
+
+import java.util.Arrays;
+
+/**
+ * Describes the structure of a pivot tree, see {@link PivotTree#getStats()}: its nodes per level,
+ * how many children they have, an estimate of the memory it retains, and the results memoized on its nodes.
+ */
+public final class PivotTreeStats {
+
+    private final long rowCount;
+    private final long[] nodeCounts; // per depth, the root being at depth 0
+    private final long[] fanOutCounts; // per power of two of the number of children
+    private final int maxFanOut;
+    private final long labelCount;
+    private final long valueCount;
+    private final long estimatedBytes;
+    private final long memoizedResultCount;
+    private final long memoEvictionCount;
+
+    PivotTreeStats(long rowCount, long[] nodeCounts, long[] fanOutCounts, int maxFanOut,
+                   long labelCount, long valueCount, long estimatedBytes,
+                   long memoizedResultCount, long memoEvictionCount) {
+        this.rowCount = rowCount;
+        this.nodeCounts = nodeCounts;
+        this.fanOutCounts = fanOutCounts;
+        this.maxFanOut = maxFanOut;
+        this.labelCount = labelCount;
+        this.valueCount = valueCount;
+        this.estimatedBytes = estimatedBytes;
+        this.memoizedResultCount = memoizedResultCount;
+        this.memoEvictionCount = memoEvictionCount;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getNodeCount() {
+        return Arrays.stream(nodeCounts).sum();
+    }
+
+    /**
+     * @return the number of nodes at each depth, the root being at depth 0.
+     */
+    public long[] getNodeCountsPerLevel() {
+        return nodeCounts.clone();
+    }
+
+    /**
+     * @return the distribution of the number of children of the nodes that have some:
+     * index {@code b} counts the nodes with [2^b, 2^(b+1)) children.
+     */
+    public long[] getFanOutDistribution() {
+        return fanOutCounts.clone();
+    }
+
+    public int getMaxFanOut() {
+        return maxFanOut;
+    }
+
+    /**
+     * @return the number of distinct labels of all the levels, each of them being kept once per level.
+     */
+    public long getLabelCount() {
+        return labelCount;
+    }
+
+    /**
+     * @return the number of retained raw values, 0 if they are not retained.
+     */
+    public long getValueCount() {
+        return valueCount;
+    }
+
+    /**
+     * @return an estimate of the bytes retained by the tree on a 64-bit JVM with compressed references:
+     * nodes, accumulators, child maps, labels and raw values. Values shared with a previous version
+     * of the tree are counted as if they were not.
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * @return the number of results memoized on the nodes, see {@link Pivoter#setLazyAggregation(boolean)}.
+     */
+    public long getMemoizedResultCount() {
+        return memoizedResultCount;
+    }
+
+    /**
+     * @return the number of memoized results evicted from nodes whose memo was full, since the rows
+     * of these nodes last changed.
+     */
+    public long getMemoEvictionCount() {
+        return memoEvictionCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PivotTreeStats{rows=%d, nodesPerLevel=%s, fanOut=%s, maxFanOut=%d, labels=%d, values=%d, estimatedBytes=%d, memoized=%d, memoEvictions=%d}",
+                rowCount, Arrays.toString(nodeCounts), Arrays.toString(fanOutCounts), maxFanOut, labelCount, valueCount, estimatedBytes,
+                memoizedResultCount, memoEvictionCount);
+    }
+}
@@ -1,9 +1,13 @@
 package org.pivoter;
 
-import org.pivoter.annotations.NotForUse;
-import org.pivoter.utils.PivoterUtils;
+import org.pivoter.aggregation.Aggregation;
+import org.pivoter.utils.DoubleParser;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
@@ -47,6 +51,24 @@ import java.util.function.Function;
  * System.out.println("Total value for Region 'North': " + totalValue);
  * }</pre>
  *
+ * <h2>Pre-aggregation</h2>
+ * By default every node retains the raw values of its subtree, so that any custom
+ * aggregation function can be applied at query time. When only decomposable aggregations
+ * are needed, they can be maintained incrementally by each node instead:
+ * <pre>{@code
+ * pivoter.setAggregations(List.of(Aggregations.SUM, Aggregations.MEAN));
+ * pivoter.setRetainValues(false);
+ * pivoter.pivot(dataRows);
+ *
+ * Double totalValue = pivoter.query(List.of("North"), Aggregations.SUM);
+ * }</pre>
+ *
+ * <h2>Thread Safety</h2>
+ * Queries can run concurrently with {@code pivot}, {@code append} and {@code retract}: each write
+ * builds a new version of the tree and publishes it atomically, together with its hierarchy, so a
+ * query always reads one consistent version. Writes are serialized; configuration setters such as
+ * {@link #setAggregations(List)} are not meant to be called concurrently.
+ *
  * <h2>Relationship with {@code PivotTree}</h2>
  * {@code Pivoter} serves as a higher-level API for constructing and interacting with
  * {@link PivotTree}. While {@code Pivoter} focuses on data transformation, validation,
@@ -59,6 +81,8 @@ import java.util.function.Function;
  *       m is the number of labels per row.</li>
  *   <li>Query execution: O(m * log(n)) complexity for traversing the tree and applying
  *       the aggregation functions.</li>
+ *   <li>Query execution with a maintained {@link Aggregation}: O(m), as no raw value is scanned.</li>
+ *   <li>Memory: O(n * m) when raw values are retained, O(#nodes) otherwise.</li>
  * </ul>
  *
  * @see PivotTree
@@ -66,20 +90,144 @@ import java.util.function.Function;
  */
 public class Pivoter {
 
-    private PivotTree pivotTree;
-    private Comparator<String> pivotHierarchyComparator;
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
+    // the queried pivot tree, with the hierarchy and labels it was built with, published as a whole
+    private volatile PivotSnapshot snapshot;
+    private List<String> measures;
+    private List<Aggregation> aggregations;
+    private boolean retainValues;
+    private ForkJoinPool forkJoinPool; // null for sequential builds
+    private QueryCache queryCache; // null when query results are not cached
+    private volatile PivotListener listener; // null when not instrumented
+    private boolean lazyAggregation;
+
+    private record PivotSnapshot(PivotTree pivotTree,
+                                 Comparator<String> pivotHierarchyComparator,
+                                 Set<String> dataRowLabels) { // labels of the pivoted dataRows, null until the first pivot
+    }
 
     public Pivoter() {
-        this.pivotTree = new PivotTree();
-        this.pivotHierarchyComparator = Comparator.naturalOrder();
+        this.snapshot = new PivotSnapshot(new PivotTree(), Comparator.naturalOrder(), null);
+        this.measures = List.of("#");
+        this.aggregations = Collections.emptyList();
+        this.retainValues = true;
     }
 
     public PivotTree getPivotTree() {
-        return pivotTree;
+        return snapshot.pivotTree();
     }
 
-    public void setPivotHierarchyComparator(Comparator<String> pivotHierarchyComparator) {
-        this.pivotHierarchyComparator = pivotHierarchyComparator;
+    /**
+     * @return a read-only, compact copy of the current pivot tree, see {@link PivotTree#freeze()}.
+     * Its queries take their labels in hierarchy order, as they are not sorted.
+     */
+    public FrozenPivotTree freeze() {
+        return snapshot.pivotTree().freeze();
+    }
+
+    public synchronized void setPivotHierarchyComparator(Comparator<String> pivotHierarchyComparator) {
+        PivotSnapshot current = snapshot;
+        this.snapshot = new PivotSnapshot(current.pivotTree(), pivotHierarchyComparator, current.dataRowLabels());
+    }
+
+    /**
+     * Sets the labels of the numerical values of the data rows pivoted afterwards, {@code ["#"]} by default.
+     * With several measures (e.g. revenue, units and cost), a single tree maintains the aggregations of
+     * each of them, queried through {@link #query(List, String, Aggregation)}; raw values cannot be
+     * retained then, see {@link #setRetainValues(boolean)}.
+     */
+    public void setMeasures(List<String> measures) {
+        if (measures == null || measures.isEmpty())
+            throw new IllegalArgumentException("measures cannot be null or empty.");
+        this.measures = List.copyOf(measures);
+    }
+
+    /**
+     * Sets the decomposable aggregations maintained by every node of the trees built afterwards.
+     */
+    public void setAggregations(List<Aggregation> aggregations) {
+        if (aggregations == null)
+            throw new IllegalArgumentException("aggregations cannot be null.");
+        this.aggregations = List.copyOf(aggregations);
+    }
+
+    /**
+     * Sets whether the trees built afterwards retain raw values, which is required
+     * to query them with custom (e.g. holistic) aggregation functions.
+     */
+    public void setRetainValues(boolean retainValues) {
+        this.retainValues = retainValues;
+    }
+
+    /**
+     * Sets the pool used to build the pivot trees of {@link #pivot(List)} in parallel,
+     * or null to build them sequentially, which is the default.
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * Sets the listener notified of the rows ingested or rejected, of the time of each build phase and of
+     * the latency of each query, e.g. a {@link PivoterStats}, or null to disable it, which is the default.
+     * When disabled, nothing is measured: the cost is a single null check per call.
+     */
+    public void setListener(PivotListener listener) {
+        this.listener = listener;
+    }
+
+    PivotListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @return the structure of the current pivot tree, see {@link PivotTree#getStats()}.
+     */
+    public PivotTreeStats getStats() {
+        return snapshot.pivotTree().getStats();
+    }
+
+    /**
+     * Sets whether the aggregates that are not maintained by the tree are computed lazily and memoized
+     * on its nodes, disabled by default. Nothing is computed at build time: the first query of a node
+     * with an {@link Aggregation} computes its accumulator from the memoized accumulators of its children,
+     * recursively, and a later query of the node or of any of its descendants is O(1). A holistic
+     * function (e.g. median or mode) cannot be combined that way, so its result is computed from the
+     * values of the node, then memoized on the node only.
+     *
+     * <p>Memoized results are dropped along with the nodes whose rows change. They are keyed by the
+     * identity of the function, so that a function should be a constant rather than a new lambda per
+     * query; at most eight results are memoized per node, the least recently used one being evicted,
+     * as counted by {@link PivotTreeStats#getMemoEvictionCount()}.</p>
+     */
+    public void setLazyAggregation(boolean lazyAggregation) {
+        this.lazyAggregation = lazyAggregation;
+    }
+
+    /**
+     * Caches the results of the queries scanning raw values, i.e. applying a function or an aggregation
+     * that is not maintained, so that repeated queries of the same node are answered without scanning
+     * it again. A cached result is invalidated as soon as an append or a retraction changes its node,
+     * and all of them are when the tree is rebuilt. Disabled by default.
+     *
+     * @param maximumSize the maximum number of cached results, the least recently used ones being
+     *                    evicted first, or 0 to disable the cache. Entries are counted, not weighed,
+     *                    see {@link QueryCache}.
+     * @throws IllegalArgumentException if the size is negative.
+     */
+    public synchronized void setQueryCacheSize(int maximumSize) {
+        if (maximumSize < 0)
+            throw new IllegalArgumentException("maximumSize cannot be negative: " + maximumSize);
+        this.queryCache = maximumSize == 0 ? null : new QueryCache(maximumSize);
+    }
+
+    /**
+     * @return the query cache with its hit, miss and eviction counts, or null if it is disabled,
+     * see {@link #setQueryCacheSize(int)}.
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
     }
 
     /**
@@ -89,12 +237,13 @@ public class Pivoter {
      * @return the resulting pivot tree.
      * @throws IllegalArgumentException if the input data rows are invalid.
      */
-    public void pivot(List<Map<String, String>> dataRows) {
-        this.pivotTree = new PivotTree();
-        this.pivotHierarchyComparator = Comparator.naturalOrder();
+    public synchronized void pivot(List<Map<String, String>> dataRows) {
+        validateNotEmpty(dataRows);
 
-        validateDataRows(dataRows);
-        pivotTree.build(convert(dataRows)); // O(m * n) complexity, where n = #rows, m = #labels
+        Comparator<String> pivotHierarchyComparator = Comparator.naturalOrder();
+        Set<String> dataRowLabels = DataRowPipeline.labelsOf(dataRows.get(0));
+        PivotTree pivotTree = build(dataRows, dataRowLabels, pivotHierarchyComparator); // O(m * n) complexity, where n = #rows, m = #labels
+        publish(pivotTree, pivotHierarchyComparator, dataRowLabels);
     }
 
     /**
@@ -105,14 +254,301 @@ public class Pivoter {
      * @return the resulting pivot tree.
      * @throws IllegalArgumentException if the input data rows or pivot hierarchy are invalid.
      */
-    public void pivot(List<Map<String, String>> dataRows,
+    public synchronized void pivot(List<Map<String, String>> dataRows,
+                                   List<String> pivotHierarchy) {
+        validateNotEmpty(dataRows);
+        validatePivotHierarchy(pivotHierarchy, dataRows.get(0), measures);
+
+        Comparator<String> pivotHierarchyComparator = getHierarchyComparator(pivotHierarchy);
+        Set<String> dataRowLabels = DataRowPipeline.labelsOf(dataRows.get(0));
+        PivotTree pivotTree = build(dataRows, dataRowLabels, pivotHierarchyComparator); // O(m * n) complexity, where n = #rows, m = #labels
+        publish(pivotTree, pivotHierarchyComparator, dataRowLabels);
+    }
+
+    /**
+     * Inserts new data rows into the current pivot tree, updating the aggregates along their paths
+     * rather than rebuilding the tree. O(m * d) complexity, where d = #new rows, m = #labels.
+     *
+     * <p>The rows are inserted into a new version of the tree, which only copies the nodes along
+     * their paths, and which is then published atomically: concurrent queries keep reading the
+     * previous version until then, and never observe a partially applied append.</p>
+     *
+     * @param dataRows data rows with the same labels as the pivoted ones, possibly empty.
+     * @throws IllegalArgumentException if the input data rows are invalid, in which case none is inserted.
+     * @throws IllegalStateException    if no data rows have been pivoted yet.
+     */
+    public synchronized void append(List<Map<String, String>> dataRows) {
+        PivotSnapshot current = snapshot;
+        validateDeltaDataRows(dataRows, current.dataRowLabels());
+
+        PivotTree previous = current.pivotTree();
+        PivotTree pivotTree = previous.nextVersion(); // discarded if a data row is invalid
+        ingest(dataRows, current.dataRowLabels(), pivotTree.getMeasures(), current.pivotHierarchyComparator(), pivotRow -> {
+            invalidateQueryCache(previous, pivotRow);
+            pivotTree.insert(pivotRow);
+        });
+        compactValues(pivotTree);
+        notifyRows(dataRows.size(), false);
+        publishVersion(pivotTree);
+    }
+
+    /**
+     * Removes previously pivoted data rows from the current pivot tree, updating the aggregates
+     * along their paths. O(m * d) complexity, where d = #removed rows, m = #labels.
+     * Only available when all the maintained aggregations support removal (e.g. not min or max).
+     * Like {@link #append(List)}, the change is published atomically.
+     *
+     * <p>A data row is checked to be in the pivot tree through its path, and through its value only when
+     * raw values are retained, see {@link #setRetainValues(boolean)}: otherwise, retracting a value that was
+     * never pivoted along an existing path is not detected, and corrupts the aggregates of the path.</p>
+     *
+     * @param dataRows data rows with the same labels as the pivoted ones, possibly empty.
+     * @throws IllegalArgumentException if the input data rows are invalid, if the path of a data row is not
+     *                                  in the pivot tree, or if raw values are retained and its value is not,
+     *                                  in which case none is removed.
+     * @throws IllegalStateException    if no data rows have been pivoted yet, or if an aggregation
+     *                                  does not support removal.
+     */
+    public synchronized void retract(List<Map<String, String>> dataRows) {
+        PivotSnapshot current = snapshot;
+        validateDeltaDataRows(dataRows, current.dataRowLabels());
+
+        List<PivotRow> pivotRows = new ArrayList<>(dataRows.size());
+        ingest(dataRows, current.dataRowLabels(), current.pivotTree().getMeasures(), current.pivotHierarchyComparator(), pivotRows::add);
+
+        PivotListener listener = this.listener;
+        long start = listener == null ? 0 : System.nanoTime();
+        PivotTree pivotTree = current.pivotTree().nextVersion();
+        try {
+            pivotTree.retract(pivotRows); // includes the layout of values
+        } catch (IllegalArgumentException e) {
+            if (listener != null) listener.onRowRejected(e);
+            throw e;
+        }
+        if (listener != null)
+            listener.onBuildPhase(PivotListener.BuildPhase.INSERT, System.nanoTime() - start);
+        notifyRows(pivotRows.size(), true);
+        pivotRows.forEach(pivotRow -> invalidateQueryCache(current.pivotTree(), pivotRow));
+        publishVersion(pivotTree);
+    }
+
+    /**
+     * Builds a pivot tree from a delimited (e.g. CSV or TSV) UTF-8 file whose first line is a header,
+     * using the columns of the header other than the value column as the hierarchy, in order.
+     * The file is memory-mapped and tokenized in place, without building a data row per line.
+     *
+     * <p>The value column is read as the single measure of the tree, {@code "#"} by default, see
+     * {@link #setMeasures(List)}. Once pivoted, the rows of the file can be appended to or retracted as
+     * data rows whose value label is that measure, like the ones of {@link #pivot(List)}.</p>
+     *
+     * @param file        the file, where fields may be quoted with '"'.
+     * @param delimiter   the separator of the fields, e.g. ',' or '\t'.
+     * @param valueColumn the column of the numerical values, in place of the measure.
+     * @throws IllegalArgumentException if the file is invalid, or if several measures are set.
+     * @throws IOException              if the file cannot be read.
+     */
+    public void pivot(Path file, char delimiter, String valueColumn) throws IOException {
+        pivot(file, new DelimitedFileReader(delimiter, valueColumn, null, DelimitedFileReader.DEFAULT_WINDOW_SIZE));
+    }
+
+    /**
+     * Builds a pivot tree from a delimited file using the specified hierarchy of columns,
+     * the columns of the header outside the hierarchy being ignored.
+     *
+     * @see #pivot(Path, char, String)
+     */
+    public void pivot(Path file, char delimiter, String valueColumn, List<String> pivotHierarchy) throws IOException {
+        if (pivotHierarchy == null)
+            throw new IllegalArgumentException("pivotHierarchy cannot be null.");
+
+        pivot(file, new DelimitedFileReader(delimiter, valueColumn, List.copyOf(pivotHierarchy), DelimitedFileReader.DEFAULT_WINDOW_SIZE));
+    }
+
+    synchronized void pivot(Path file, DelimitedFileReader reader) throws IOException {
+        if (file == null)
+            throw new IllegalArgumentException("file cannot be null.");
+        if (measures.size() > 1)
+            throw new IllegalArgumentException(String.format(
+                    "A delimited file has a single value column and cannot be pivoted with measures %s, pivot its data rows instead.", measures));
+
+        PivotListener listener = this.listener;
+        long start = listener == null ? 0 : System.nanoTime();
+        PivotTree pivotTree = new PivotTree(measures, aggregations, retainValues);
+        List<String> pivotHierarchy;
+        try {
+            pivotHierarchy = reader.read(file, pivotTree);
+        } catch (IllegalArgumentException e) {
+            if (listener != null) listener.onRowRejected(e);
+            throw e;
+        }
+        if (reader.getRowCount() == 0)
+            throw new IllegalArgumentException("dataRows cannot be null or empty. Ensure that you provide a valid list of dataRows.");
+        if (listener != null)
+            listener.onBuildPhase(PivotListener.BuildPhase.INSERT, System.nanoTime() - start);
+
+        compactValues(pivotTree);
+        notifyRows(reader.getRowCount(), false);
+        Set<String> dataRowLabels = new LinkedHashSet<>(pivotHierarchy);
+        dataRowLabels.addAll(measures);
+        publish(pivotTree, getHierarchyComparator(pivotHierarchy), Collections.unmodifiableSet(dataRowLabels));
+    }
+
+    /**
+     * Builds a pivot tree in a single pass over the provided data rows, using a natural order hierarchy.
+     * Each row is validated, converted and inserted before the next one is read, so the data rows
+     * are never materialized: peak memory is bounded by the size of the tree.
+     *
+     * @param dataRows an iterator over data rows, e.g. {@code stream.iterator()}.
+     * @throws IllegalArgumentException if the input data rows are invalid.
+     */
+    public void pivot(Iterator<Map<String, String>> dataRows) {
+        if (dataRows == null)
+            throw new IllegalArgumentException("dataRows cannot be null or empty. Ensure that you provide a valid list of dataRows.");
+
+        PivotTreeBuilder builder = newPivotTreeBuilder();
+        dataRows.forEachRemaining(builder);
+        builder.build();
+    }
+
+    /**
+     * Builds a pivot tree in a single pass over the provided data rows, using the specified hierarchy.
+     *
+     * @param dataRows       an iterator over data rows, e.g. {@code stream.iterator()}.
+     * @param pivotHierarchy a set of strings to specify the hierarchy of pivot labels.
+     * @throws IllegalArgumentException if the input data rows or pivot hierarchy are invalid.
+     * @see #pivot(Iterator)
+     */
+    public void pivot(Iterator<Map<String, String>> dataRows,
                       List<String> pivotHierarchy) {
-        this.pivotTree = new PivotTree();
+        if (dataRows == null)
+            throw new IllegalArgumentException("dataRows cannot be null or empty. Ensure that you provide a valid list of dataRows.");
+
+        PivotTreeBuilder builder = newPivotTreeBuilder(pivotHierarchy);
+        dataRows.forEachRemaining(builder);
+        builder.build();
+    }
+
+    /**
+     * Creates a push-style builder using a natural order hierarchy: data rows are fed one
+     * at a time through {@link PivotTreeBuilder#accept(Map)}, and {@link PivotTreeBuilder#build()}
+     * makes the resulting tree the one queried by this {@code Pivoter}.
+     */
+    public PivotTreeBuilder newPivotTreeBuilder() {
+        return new PivotTreeBuilder(this, new PivotTree(measures, aggregations, retainValues), Comparator.naturalOrder(), null);
+    }
+
+    /**
+     * Creates a push-style builder using the specified hierarchy.
+     *
+     * @see #newPivotTreeBuilder()
+     */
+    public PivotTreeBuilder newPivotTreeBuilder(List<String> pivotHierarchy) {
+        if (pivotHierarchy == null)
+            throw new IllegalArgumentException("pivotHierarchy cannot be null.");
 
-        validateDataRows(dataRows);
-        validatePivotHierarchy(pivotHierarchy, dataRows.get(0));
-        setPivotHierarchyComparator(getHierarchyComparator(new ArrayList<>(pivotHierarchy)));
-        pivotTree.build(convert(dataRows)); // O(m * n) complexity, where n = #rows, m = #labels
+        return new PivotTreeBuilder(this, new PivotTree(measures, aggregations, retainValues),
+                getHierarchyComparator(pivotHierarchy), pivotHierarchy);
+    }
+
+    /**
+     * Validates, converts and inserts the data rows in a single pass, see {@link DataRowPipeline}.
+     * A parallel build needs all the rows upfront, so they are then collected before being inserted.
+     */
+    private PivotTree build(List<Map<String, String>> dataRows, Set<String> dataRowLabels,
+                            Comparator<String> pivotHierarchyComparator) {
+        PivotTree pivotTree = new PivotTree(measures, aggregations, retainValues);
+
+        if (forkJoinPool == null) {
+            ingest(dataRows, dataRowLabels, measures, pivotHierarchyComparator, pivotTree::insert);
+            compactValues(pivotTree);
+        } else {
+            List<PivotRow> pivotRows = new ArrayList<>(dataRows.size());
+            ingest(dataRows, dataRowLabels, measures, pivotHierarchyComparator, pivotRows::add);
+            PivotListener listener = this.listener;
+            long start = listener == null ? 0 : System.nanoTime();
+            pivotTree.build(pivotRows, forkJoinPool); // includes the layout of values
+            if (listener != null)
+                listener.onBuildPhase(PivotListener.BuildPhase.INSERT, System.nanoTime() - start);
+        }
+        notifyRows(dataRows.size(), false);
+        return pivotTree;
+    }
+
+    /**
+     * Runs the data rows through a {@link DataRowPipeline} into the sink, timing the pipeline and the
+     * sink if a listener is set: the sink is then timed row by row, which costs two clock reads per row.
+     */
+    private void ingest(List<Map<String, String>> dataRows, Set<String> dataRowLabels, List<String> measures,
+                        Comparator<String> pivotHierarchyComparator, Consumer<PivotRow> sink) {
+        PivotListener listener = this.listener;
+        if (listener == null) {
+            dataRows.forEach(new DataRowPipeline(dataRowLabels, measures, pivotHierarchyComparator, sink));
+            return;
+        }
+
+        long[] sinkNanos = new long[1];
+        long start = System.nanoTime();
+        try {
+            dataRows.forEach(new DataRowPipeline(dataRowLabels, measures, pivotHierarchyComparator, pivotRow -> {
+                long sinkStart = System.nanoTime();
+                sink.accept(pivotRow);
+                sinkNanos[0] += System.nanoTime() - sinkStart;
+            }));
+        } catch (IllegalArgumentException e) {
+            listener.onRowRejected(e);
+            throw e;
+        }
+        long nanos = System.nanoTime() - start;
+        listener.onBuildPhase(PivotListener.BuildPhase.VALIDATE_AND_CONVERT, nanos - sinkNanos[0]);
+        listener.onBuildPhase(PivotListener.BuildPhase.INSERT, sinkNanos[0]);
+    }
+
+    private void compactValues(PivotTree pivotTree) {
+        PivotListener listener = this.listener;
+        long start = listener == null ? 0 : System.nanoTime();
+        pivotTree.compactValues();
+        if (listener != null)
+            listener.onBuildPhase(PivotListener.BuildPhase.LAYOUT, System.nanoTime() - start);
+    }
+
+    private void notifyRows(long rowCount, boolean retracted) {
+        PivotListener listener = this.listener;
+        if (listener == null) return;
+
+        if (retracted) listener.onRowsRetracted(rowCount);
+        else listener.onRowsIngested(rowCount);
+    }
+
+    private long startQuery() {
+        return listener == null ? NOT_TIMED : System.nanoTime();
+    }
+
+    private <T> T endQuery(long start, T result) {
+        PivotListener listener = this.listener;
+        if (listener != null && start != NOT_TIMED)
+            listener.onQuery(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Makes a fully built tree the one queried, atomically with the hierarchy and labels it was built with.
+     */
+    synchronized void publish(PivotTree pivotTree, Comparator<String> pivotHierarchyComparator, Set<String> dataRowLabels) {
+        this.snapshot = new PivotSnapshot(pivotTree, pivotHierarchyComparator, dataRowLabels);
+        if (queryCache != null) // a rebuilt tree shares no node with the previous one
+            queryCache.invalidateAll();
+    }
+
+    // publishes the next version of the current tree, whose hierarchy and labels are unchanged
+    private void publishVersion(PivotTree pivotTree) {
+        PivotSnapshot current = snapshot;
+        this.snapshot = new PivotSnapshot(pivotTree, current.pivotHierarchyComparator(), current.dataRowLabels());
+    }
+
+    // drops the cached results of the nodes of the previous version that a row is changing
+    private void invalidateQueryCache(PivotTree previous, PivotRow pivotRow) {
+        if (queryCache != null)
+            queryCache.invalidatePath(previous.getRoot(), pivotRow.getLabels());
     }
 
     /**
@@ -122,65 +558,217 @@ public class Pivoter {
      * @param pivotFunction the aggregation function to apply on the queried data.
      * @return the result of the query.
      * @throws IllegalArgumentException if the input query labels are null.
+     * @throws IllegalStateException    if the pivot tree does not retain raw values.
      */
     public Double query(List<String> queryLabels,
                         Function<Collection<Double>, Double> pivotFunction) {
+        long start = startQuery();
         validateQueryLabels(queryLabels);
+        PivotSnapshot current = snapshot;
         List<String> deepQueryLabels = new ArrayList<>(queryLabels);
-        deepQueryLabels.sort(this.pivotHierarchyComparator);
-        return pivotTree.query(deepQueryLabels, pivotFunction); // O(m * n) complexity, where n = #rows, m = #labels
+        deepQueryLabels.sort(current.pivotHierarchyComparator());
+        return endQuery(start, current.pivotTree().query(deepQueryLabels, pivotFunction, queryCache, lazyAggregation)); // O(m * n) complexity, where n = #rows, m = #labels
     }
 
-    void validateDataRows(List<Map<String, String>> dataRows) {
-        if (dataRows == null || dataRows.isEmpty())
-            throw new IllegalArgumentException("dataRows cannot be null or empty. Ensure that you provide a valid list of dataRows.");
+    /**
+     * Queries the pivot tree with the provided labels and decomposable aggregation.
+     * If the aggregation is maintained by the tree, no raw value is scanned.
+     *
+     * @param queryLabels the labels to query the pivot tree.
+     * @param aggregation the aggregation to read from the queried node.
+     * @return the result of the query.
+     * @throws IllegalArgumentException if the input query labels are null, or if the aggregation
+     *                                  is neither maintained nor computable from retained values.
+     */
+    public Double query(List<String> queryLabels, Aggregation aggregation) {
+        long start = startQuery();
+        validateQueryLabels(queryLabels);
+        PivotSnapshot current = snapshot;
+        List<String> deepQueryLabels = new ArrayList<>(queryLabels);
+        deepQueryLabels.sort(current.pivotHierarchyComparator());
+        PivotTree pivotTree = current.pivotTree();
+        return endQuery(start, pivotTree.query(deepQueryLabels, pivotTree.getMeasures().get(0), aggregation, queryCache, lazyAggregation)); // O(m) complexity, where m = #labels
+    }
 
-        List<String> labels = new ArrayList<>(dataRows.get(0).keySet());
-        int labelsSize = labels.size();
+    /**
+     * Queries one measure of a multi-measure pivot tree, see {@link #setMeasures(List)}.
+     *
+     * @throws IllegalArgumentException if the input query labels are null, if the measure is unknown,
+     *                                  or if the aggregation is neither maintained nor computable from retained values.
+     */
+    public Double query(List<String> queryLabels, String measure, Aggregation aggregation) {
+        long start = startQuery();
+        validateQueryLabels(queryLabels);
+        PivotSnapshot current = snapshot;
+        List<String> deepQueryLabels = new ArrayList<>(queryLabels);
+        deepQueryLabels.sort(current.pivotHierarchyComparator());
+        return endQuery(start, current.pivotTree().query(deepQueryLabels, measure, aggregation, queryCache, lazyAggregation)); // O(m) complexity, where m = #labels
+    }
 
-        for (Map<String, String> dataRow : dataRows) {
-            validateDataRow(dataRow, labelsSize);
+    /**
+     * Queries several maintained aggregations of several measures with a single traversal of the pivot tree.
+     *
+     * @return the result of each aggregation, for each measure: {@code results[measure][aggregation]}.
+     * @throws IllegalArgumentException if the input query labels are null, if a measure is unknown,
+     *                                  or if an aggregation is not maintained.
+     */
+    public double[][] query(List<String> queryLabels, List<String> measures, List<Aggregation> aggregations) {
+        long start = startQuery();
+        validateQueryLabels(queryLabels);
+        PivotSnapshot current = snapshot;
+        List<String> deepQueryLabels = new ArrayList<>(queryLabels);
+        deepQueryLabels.sort(current.pivotHierarchyComparator());
+        return endQuery(start, current.pivotTree().query(deepQueryLabels, measures, aggregations)); // O(m) complexity, where m = #labels
+    }
 
-            for (String label : dataRow.keySet())
-                validateDataRowLabel(label, labels, dataRow);
+    /**
+     * Answers many queries with a single traversal of the pivot tree, e.g. all the cells of a report:
+     * the labels of each query are sorted as by {@link #query(List, Aggregation)}, and the queries are
+     * grouped by their shared prefixes, each of them being walked once.
+     *
+     * @param queryPaths the labels of each query.
+     * @return the result of each query, in the order of the input.
+     * @throws IllegalArgumentException if the input query paths or some of them are null,
+     *                                  or if the aggregation is neither maintained nor computable from retained values.
+     */
+    public double[] queryBatch(List<List<String>> queryPaths, Aggregation aggregation) {
+        long start = startQuery();
+        if (queryPaths == null)
+            throw new IllegalArgumentException("queryPaths cannot be null.");
+
+        PivotSnapshot current = snapshot;
+        List<List<String>> deepQueryPaths = new ArrayList<>(queryPaths.size());
+        for (List<String> queryLabels : queryPaths) {
+            validateQueryLabels(queryLabels);
+            List<String> deepQueryLabels = new ArrayList<>(queryLabels);
+            deepQueryLabels.sort(current.pivotHierarchyComparator());
+            deepQueryPaths.add(deepQueryLabels);
         }
+        return endQuery(start, current.pivotTree().queryBatch(deepQueryPaths, aggregation));
     }
 
-    private void validateDataRow(Map<String, String> dataRow, int labelsSize) { // map prevents duplicated labels
-        if (labelsSize != dataRow.keySet().size())
-            throw new IllegalArgumentException(String.format(
-                    "Inconsistent number of labels in dataRow. Expected %d labels, but found %d: %s",
-                    labelsSize, dataRow.keySet().size(), dataRow));
+    /**
+     * Queries the k children of a node with the largest aggregates, e.g. {@code queryTop(List.of(), 10, SUM)}
+     * for the top 10 values of the first level, or {@code queryTop(List.of("Germany"), 5, SUM)} for the top 5
+     * of the next level within Germany. O(c * log(k)) for c children, the k best ones being kept in a bounded
+     * heap while the children are scanned; equal aggregates are in ascending order of their labels.
+     *
+     * @param queryLabels the labels of the node whose children are ranked, empty for the top level.
+     * @return the label and aggregate of each of the k first children, largest first, or an empty map if there is no such node.
+     * @throws IllegalArgumentException if the input query labels are null, if k is negative,
+     *                                  or if the aggregation is neither maintained nor computable from retained values.
+     */
+    public Map<String, Double> queryTop(List<String> queryLabels, int k, Aggregation aggregation) {
+        return queryRanking(queryLabels, k, aggregation, true);
+    }
+
+    /**
+     * Queries the k children of a node with the smallest aggregates, smallest first.
+     *
+     * @see #queryTop(List, int, Aggregation)
+     */
+    public Map<String, Double> queryBottom(List<String> queryLabels, int k, Aggregation aggregation) {
+        return queryRanking(queryLabels, k, aggregation, false);
+    }
 
-        if (!dataRow.containsKey("#"))
-            throw new IllegalArgumentException("Each dataRow must contain a label '#' for the numerical value.");
+    private Map<String, Double> queryRanking(List<String> queryLabels, int k, Aggregation aggregation, boolean largest) {
+        long start = startQuery();
+        validateQueryLabels(queryLabels);
+        PivotSnapshot current = snapshot;
+        List<String> deepQueryLabels = new ArrayList<>(queryLabels);
+        deepQueryLabels.sort(current.pivotHierarchyComparator());
+        return endQuery(start, current.pivotTree().queryRanking(deepQueryLabels, k, aggregation, largest));
+    }
 
-        if (!PivoterUtils.isDouble(dataRow.get("#")))
-            throw new IllegalArgumentException(String.format(
-                    "Invalid numerical value for label '#': '%s'. The value must be a valid Double.", dataRow.get("#")));
+    /**
+     * Opens a cursor streaming the whole pivot table of the current tree: every detail row, the
+     * subtotal of every level and the grand total, depth-first in sorted label order, see {@link PivotTableCursor}.
+     *
+     * @throws IllegalArgumentException if the aggregation is neither maintained nor computable from retained values.
+     */
+    public PivotTableCursor cursor(Aggregation aggregation) {
+        return snapshot.pivotTree().cursor(aggregation);
     }
 
-    private void validateDataRowLabel(String label, List<String> labels, Map<String, String> dataRow) {
-        if (label.isEmpty() || label.isBlank())
-            throw new IllegalArgumentException(String.format(
-                    "dataRow contains empty or blank labels: %s. Labels must be non-empty strings.", dataRow));
+    /**
+     * Queries a slice of the pivot tree, i.e. the rows having the given value for each given label,
+     * whatever their values for the other labels: for example {@code {"hair": "red"}} aggregates the
+     * red-haired rows across all nations and eyes. Any levels can be constrained, not only a prefix
+     * of the hierarchy, and the matching nodes are found through an inverted index of the tree.
+     *
+     * @param slice the value of each constrained label, e.g. {@code Map.of("hair", "red")}.
+     * @return the aggregate of the matching rows, or 0.0 if no row matches.
+     * @throws IllegalArgumentException if a label of the slice is not a level of the pivot tree, or if the
+     *                                  aggregation is neither maintained nor computable from retained values.
+     * @throws IllegalStateException    if no data rows have been pivoted yet.
+     */
+    public Double querySlice(Map<String, String> slice, Aggregation aggregation) {
+        long start = startQuery();
+        PivotSnapshot current = snapshot;
+        return endQuery(start, current.pivotTree().querySlice(toLevels(slice, current), aggregation));
+    }
 
-        if (dataRow.get(label) == null)
-            throw new IllegalArgumentException(String.format(
-                    "dataRow %s contains a null value for label '%s'. All labels must have non-null values.", dataRow, label));
+    /**
+     * Applies the aggregation function to the raw values of a slice of the pivot tree.
+     *
+     * @throws IllegalStateException if the pivot tree does not retain raw values, or if no data rows have been pivoted yet.
+     * @see #querySlice(Map, Aggregation)
+     */
+    public Double querySlice(Map<String, String> slice, Function<Collection<Double>, Double> pivotFunction) {
+        long start = startQuery();
+        PivotSnapshot current = snapshot;
+        return endQuery(start, current.pivotTree().querySlice(toLevels(slice, current), pivotFunction));
+    }
 
-        if (!"#".equals(label) && !labels.contains(label))
-            throw new IllegalArgumentException(String.format(
-                    "Label '%s' in dataRow %s does not match the consistent set of labels: %s", label, dataRow, labels));
+    // the label of each level of the tree, or null for any label
+    private List<String> toLevels(Map<String, String> slice, PivotSnapshot current) {
+        if (slice == null)
+            throw new IllegalArgumentException("slice cannot be null.");
+        if (current.dataRowLabels() == null)
+            throw new IllegalStateException("No dataRows have been pivoted yet.");
+
+        LevelOrder levelOrder = LevelOrder.of(current.dataRowLabels(), current.pivotTree().getMeasures(),
+                current.pivotHierarchyComparator());
+        List<String> levels = new ArrayList<>(Collections.nCopies(levelOrder.levelCount(), null));
+        for (Map.Entry<String, String> constraint : slice.entrySet()) {
+            int level = levelOrder.levelOf(constraint.getKey());
+            if (level < 0)
+                throw new IllegalArgumentException(String.format(
+                        "Label '%s' of the slice is not a level of the pivot tree: %s", constraint.getKey(), current.dataRowLabels()));
+            levels.set(level, constraint.getValue());
+        }
+        return levels;
+    }
+
+    /**
+     * Validates the data rows without building a tree, see {@link DataRowPipeline}.
+     */
+    void validateDataRows(List<Map<String, String>> dataRows) {
+        validateNotEmpty(dataRows);
+
+        dataRows.forEach(new DataRowPipeline(DataRowPipeline.labelsOf(dataRows.get(0)), measures, Comparator.naturalOrder(), pivotRow -> {
+        }));
+    }
+
+    private void validateNotEmpty(List<Map<String, String>> dataRows) {
+        if (dataRows == null || dataRows.isEmpty())
+            throw new IllegalArgumentException("dataRows cannot be null or empty. Ensure that you provide a valid list of dataRows.");
+    }
+
+    private void validateDeltaDataRows(List<Map<String, String>> dataRows, Set<String> dataRowLabels) {
+        if (dataRows == null)
+            throw new IllegalArgumentException("dataRows cannot be null.");
+        if (dataRowLabels == null)
+            throw new IllegalStateException("No dataRows have been pivoted yet.");
     }
 
-    private void validatePivotHierarchy(List<String> pivotHierarchy, Map<String, String> dataRow) {
+    static void validatePivotHierarchy(List<String> pivotHierarchy, Map<String, String> dataRow, List<String> measures) {
         Set<Object> seen = new HashSet<>();
         for (String label : pivotHierarchy) {
             if (!dataRow.containsKey(label))
                 throw new IllegalArgumentException("pivotHierarchy '" + label + "' is not consistent with the provided dataRow.");
 
-            if ("#".equals(label))
+            if (measures.contains(label))
                 throw new IllegalArgumentException("pivotHierarchy label '" + label + "' is not valid.");
 
             if (!seen.add(label))
@@ -194,72 +782,18 @@ public class Pivoter {
     }
 
     private Comparator<String> getHierarchyComparator(List<String> pivotHierarchy) {
-        return (s1, s2) -> {
-            pivotHierarchy.add("#");
-            // ensure both strings are valid
-            if (!pivotHierarchy.contains(s1))
-                throw new IllegalArgumentException("Invalid String: " + s1);
-
-            if (!pivotHierarchy.contains(s2))
-                throw new IllegalArgumentException("Invalid String: " + s2);
-
-            // compare based on the pivot hierarchy
-            return Integer.compare(pivotHierarchy.indexOf(s1), pivotHierarchy.indexOf(s2));
-        };
+        return new HierarchyComparator(pivotHierarchy);
     }
 
     List<PivotRow> convert(List<Map<String, String>> dataRows) {
-        List<PivotRow> pivotRows = new ArrayList<>();
-
-        for (Map<String, String> dataRow : dataRows) {
-            List<String> sortedLabels = dataRow.keySet().stream().sorted(this.pivotHierarchyComparator).toList();
-
-            PivotRow pivotRow = new PivotRow();
-            for (String label : sortedLabels) {
-                String labelValue = dataRow.get(label);
-
-                if ("#".equals(label)) pivotRow.setValue(Double.parseDouble(labelValue));
-                else pivotRow.addLabel(labelValue);
-            }
-            pivotRows.add(pivotRow);
-        }
-        return pivotRows;
-    }
-
-    /**
-     * Does not adhere to SRP, but is more efficient,
-     * having O(n * log(m) * m) complexity rather than 2 * (O(n * log(m) * m)) complexity,
-     * where n = #rows, m = #labels
-     */
-    @NotForUse(reason = "Does not adhere to Single Responsibility Principle")
-    List<PivotRow> validateAndConvert(List<Map<String, String>> dataRows, List<String> pivotHierarchy) {
-        if (dataRows == null || dataRows.isEmpty())
-            throw new IllegalArgumentException("dataRows cannot be null or empty. Ensure that you provide a valid list of dataRows.");
-
-        List<String> labels = new ArrayList<>(dataRows.get(0).keySet());
-        int labelsSize = labels.size();
-
-        List<PivotRow> pivotRows = new ArrayList<>();
-
-        for (Map<String, String> dataRow : dataRows) {
-            validateDataRow(dataRow, labelsSize);
-            List<String> sortedLabels = dataRow.keySet().stream().sorted(this.pivotHierarchyComparator).toList();
-
-            PivotRow pivotRow = new PivotRow();
-            for (String label : sortedLabels) {
-                validateDataRowLabel(label, labels, dataRow);
-
-                String labelValue = dataRow.get(label);
-                if ("#".equals(label)) pivotRow.setValue(Double.parseDouble(labelValue));
-                else pivotRow.addLabel(labelValue);
-            }
-
-            pivotRows.add(pivotRow);
-        }
-
-        for (String hierarchy : pivotHierarchy)
-            if (!dataRows.get(0).containsKey(hierarchy))
-                throw new IllegalArgumentException("pivotHierarchy " + hierarchy + " is not consistent with the provided dataRows.");
+        List<PivotRow> pivotRows = new ArrayList<>(dataRows.size());
+        if (dataRows.isEmpty()) return pivotRows;
+
+        // dataRows are validated to share the labels of the first one, whose level order is computed once
+        LevelOrder levelOrder = LevelOrder.of(dataRows.get(0).keySet(), snapshot.pivotHierarchyComparator());
+        DoubleParser parser = new DoubleParser();
+        for (Map<String, String> dataRow : dataRows)
+            pivotRows.add(levelOrder.convert(dataRow, DataRowPipeline.parseValue(dataRow, "#", parser)));
 
         return pivotRows;
     }
@@ -0,0 +1,90 @@
+package org.pivoter;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link PivotListener} accumulating the events of a {@link Pivoter}: ingested, retracted and rejected
+ * rows, the total time of each build phase, and the latencies of the queries.
+ * <pre>{@code
+ * PivoterStats stats = new PivoterStats();
+ * pivoter.setListener(stats);
+ * pivoter.pivot(dataRows);
+ * ...
+ * long p99 = stats.getQueryLatencies().getPercentile(99);
+ * }</pre>
+ * The structure of the current tree is described by {@link Pivoter#getStats()} instead.
+ */
+public final class PivoterStats implements PivotListener {
+
+    private final LongAdder ingestedRowCount = new LongAdder();
+    private final LongAdder retractedRowCount = new LongAdder();
+    private final LongAdder rejectedRowCount = new LongAdder();
+    private final Map<BuildPhase, LongAdder> phaseNanos = new EnumMap<>(BuildPhase.class);
+    private final LatencyHistogram queryLatencies = new LatencyHistogram();
+
+    public PivoterStats() {
+        for (BuildPhase phase : BuildPhase.values())
+            phaseNanos.put(phase, new LongAdder());
+    }
+
+    @Override
+    public void onRowsIngested(long rowCount) {
+        ingestedRowCount.add(rowCount);
+    }
+
+    @Override
+    public void onRowsRetracted(long rowCount) {
+        retractedRowCount.add(rowCount);
+    }
+
+    @Override
+    public void onRowRejected(IllegalArgumentException cause) {
+        rejectedRowCount.increment();
+    }
+
+    @Override
+    public void onBuildPhase(BuildPhase phase, long nanos) {
+        phaseNanos.get(phase).add(nanos);
+    }
+
+    @Override
+    public void onQuery(long nanos) {
+        queryLatencies.record(nanos);
+    }
+
+    public long getIngestedRowCount() {
+        return ingestedRowCount.sum();
+    }
+
+    public long getRetractedRowCount() {
+        return retractedRowCount.sum();
+    }
+
+    /**
+     * @return the number of data rows rejected by validation, each of them aborting the rest of its call.
+     */
+    public long getRejectedRowCount() {
+        return rejectedRowCount.sum();
+    }
+
+    /**
+     * @return the total time spent in the phase, in nanoseconds.
+     */
+    public long getPhaseNanos(BuildPhase phase) {
+        return phaseNanos.get(phase).sum();
+    }
+
+    public LatencyHistogram getQueryLatencies() {
+        return queryLatencies;
+    }
+
+    @Override
+    public String toString() {
+        Map<BuildPhase, Long> phaseMillis = new EnumMap<>(BuildPhase.class);
+        phaseNanos.forEach((phase, nanos) -> phaseMillis.put(phase, nanos.sum() / 1_000_000));
+        return String.format("PivoterStats{ingested=%d, retracted=%d, rejected=%d, phaseMillis=%s, queries=%s}",
+                getIngestedRowCount(), getRetractedRowCount(), getRejectedRowCount(), phaseMillis, queryLatencies);
+    }
+}
@@ -0,0 +1,142 @@
+package org.pivoter;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, least recently used cache of query results, keyed by the queried node, the measure and
+ * the aggregation function, see {@link Pivoter#setQueryCacheSize(int)}.
+ *
+ * <p>Only results scanning raw values are cached, maintained aggregations being read in O(1) anyway.
+ * A node is identified by an id shared with its copies in the next versions of the tree, together with
+ * the number of changes of its rows: an unchanged node keeps its results across appends, even when it is
+ * copied to lay out its values again, whereas a cached result can never be read for a node whose rows
+ * have changed since. The results of the changed nodes are still invalidated as their paths are written,
+ * and all the results are when the tree is rebuilt, rather than left to be evicted.</p>
+ *
+ * <p>The cache is bounded by its number of entries only, with no weigher: every result is a single
+ * {@code Double}, so all entries take about the same memory (roughly 150 bytes with their key and
+ * index), whatever the cost of the scan that computed them. The least recently used entry is evicted
+ * first, even when it was more expensive to compute than the more recent ones.</p>
+ *
+ * <p>All methods are thread-safe.</p>
+ */
+public final class QueryCache {
+
+    private static final AtomicLong CACHE_IDS = new AtomicLong();
+
+    private final int maximumSize;
+    private final LinkedHashMap<Key, Double> results = new LinkedHashMap<>(16, 0.75f, true); // in access order
+    private final Map<Long, List<Key>> keysByNode = new HashMap<>(); // by cache id
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long invalidationCount;
+
+    private record Key(long cacheId, int modificationCount, int measureIndex, Object function) {
+    }
+
+    QueryCache(int maximumSize) {
+        if (maximumSize <= 0)
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * @return the cached result, or null if there is none.
+     */
+    synchronized Double get(PivotTreeNode node, int measureIndex, Object function) {
+        Double result = node.getCacheId() == 0 ? null : results.get(key(node, measureIndex, function));
+        if (result == null) missCount++;
+        else hitCount++;
+        return result;
+    }
+
+    synchronized void put(PivotTreeNode node, int measureIndex, Object function, Double result) {
+        if (node.getCacheId() == 0)
+            node.setCacheId(CACHE_IDS.incrementAndGet());
+
+        Key key = key(node, measureIndex, function);
+        if (results.put(key, result) == null)
+            keysByNode.computeIfAbsent(key.cacheId(), id -> new ArrayList<>(2)).add(key);
+
+        if (results.size() > maximumSize) {
+            Iterator<Key> eldest = results.keySet().iterator();
+            Key evicted = eldest.next();
+            eldest.remove();
+            List<Key> keys = keysByNode.get(evicted.cacheId());
+            keys.remove(evicted);
+            if (keys.isEmpty()) keysByNode.remove(evicted.cacheId());
+            evictionCount++;
+        }
+    }
+
+    private static Key key(PivotTreeNode node, int measureIndex, Object function) {
+        return new Key(node.getCacheId(), node.getModificationCount(), measureIndex, function);
+    }
+
+    /**
+     * Invalidates the results of the nodes along a path of a tree, from its root, before it is changed.
+     */
+    synchronized void invalidatePath(PivotTreeNode root, List<String> sortedLabels) {
+        if (results.isEmpty()) return;
+
+        PivotTreeNode node = root;
+        invalidate(node);
+        for (int depth = 0; depth < sortedLabels.size() && node != null; depth++) {
+            node = node.getChild(sortedLabels.get(depth));
+            if (node != null) invalidate(node);
+        }
+    }
+
+    private void invalidate(PivotTreeNode node) {
+        List<Key> keys = node.getCacheId() == 0 ? null : keysByNode.remove(node.getCacheId());
+        if (keys == null) return;
+
+        for (Key key : keys)
+            results.remove(key);
+        invalidationCount += keys.size();
+    }
+
+    synchronized void invalidateAll() {
+        invalidationCount += results.size();
+        results.clear();
+        keysByNode.clear();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of results removed to make room for new ones.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the number of results removed because their node was replaced by a change of the tree.
+     */
+    public synchronized long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("QueryCache{size=%d/%d, hits=%d, misses=%d, evictions=%d, invalidations=%d}",
+                results.size(), maximumSize, hitCount, missCount, evictionCount, invalidationCount);
+    }
+}
@@ -0,0 +1,109 @@
+package org.pivoter;
+
+import java.util.*;
+
+/**
+ * An inverted index from (level, label) to the nodes of a pivot tree, answering slice queries,
+ * i.e. queries constraining any levels rather than a prefix of them, without visiting the whole tree.
+ *
+ * <p>Nodes are numbered depth-first, each one keeping the index of its parent and the code of
+ * its label. The nodes matching a slice are found among the nodes of its deepest constrained level
+ * that have the constrained label, by checking the labels of their ancestors: as they all stand at
+ * the same depth, their subtrees are disjoint, and their aggregates can be combined.</p>
+ *
+ * <p>An index reflects the tree at the time it was built, see {@link PivotTree#querySlice(List, org.pivoter.aggregation.Aggregation)}.
+ * Being immutable, it can be read by any number of threads.</p>
+ */
+final class SliceIndex {
+
+    static final int ANY = -1;
+
+    private final PivotTreeNode[] nodes; // depth-first
+    private final int[] parents;
+    private final int[] codes;
+    private final int[][][] nodesByLevelAndCode; // level (depth - 1), label code, node indexes
+
+    SliceIndex(PivotTreeNode root) {
+        int nodeCount = countNodes(root);
+        this.nodes = new PivotTreeNode[nodeCount];
+        this.parents = new int[nodeCount];
+        this.codes = new int[nodeCount];
+        int[] depths = new int[nodeCount];
+
+        nodes[0] = root;
+        parents[0] = -1;
+        codes[0] = LabelDictionary.NOT_FOUND;
+        number(root, 0, 1, depths);
+
+        LabelDictionaries dictionaries = root.getDictionaries();
+        int[][] counts = new int[dictionaries.depth()][];
+        for (int level = 0; level < counts.length; level++)
+            counts[level] = new int[dictionaries.get(level).size()];
+        for (int node = 1; node < nodeCount; node++)
+            counts[depths[node] - 1][codes[node]]++;
+
+        this.nodesByLevelAndCode = new int[counts.length][][];
+        for (int level = 0; level < counts.length; level++) {
+            nodesByLevelAndCode[level] = new int[counts[level].length][];
+            for (int code = 0; code < counts[level].length; code++)
+                nodesByLevelAndCode[level][code] = new int[counts[level][code]];
+        }
+        for (int node = nodeCount - 1; node > 0; node--) {
+            int level = depths[node] - 1;
+            nodesByLevelAndCode[level][codes[node]][--counts[level][codes[node]]] = node;
+        }
+    }
+
+    private static int countNodes(PivotTreeNode node) {
+        int count = 1;
+        IntChildMap children = node.getChildMap();
+        for (int slot = 0; slot < children.capacity(); slot++)
+            if (children.nodeAt(slot) != null) count += countNodes(children.nodeAt(slot));
+        return count;
+    }
+
+    /**
+     * @return the index following the last node of the subtree of {@code parent}.
+     */
+    private int number(PivotTreeNode parentNode, int parent, int next, int[] depths) {
+        IntChildMap children = parentNode.getChildMap();
+        for (int slot = 0; slot < children.capacity(); slot++) {
+            PivotTreeNode child = children.nodeAt(slot);
+            if (child == null) continue;
+
+            int node = next++;
+            nodes[node] = child;
+            parents[node] = parent;
+            codes[node] = children.codeAt(slot);
+            depths[node] = depths[parent] + 1;
+            next = number(child, node, next, depths);
+        }
+        return next;
+    }
+
+    /**
+     * @param sliceCodes the code of the label of each level from the root, or {@link #ANY}.
+     * @return the roots of the disjoint subtrees matching the slice.
+     */
+    List<PivotTreeNode> match(int[] sliceCodes) {
+        int deepest = sliceCodes.length - 1;
+        while (deepest >= 0 && sliceCodes[deepest] == ANY)
+            deepest--;
+        if (deepest < 0) return List.of(nodes[0]);
+
+        int code = sliceCodes[deepest];
+        if (deepest >= nodesByLevelAndCode.length || code >= nodesByLevelAndCode[deepest].length)
+            return List.of();
+
+        List<PivotTreeNode> matches = new ArrayList<>();
+        for (int candidate : nodesByLevelAndCode[deepest][code])
+            if (ancestorsMatch(candidate, deepest, sliceCodes)) matches.add(nodes[candidate]);
+        return matches;
+    }
+
+    private boolean ancestorsMatch(int node, int level, int[] sliceCodes) {
+        for (int ancestor = parents[node], ancestorLevel = level - 1; ancestorLevel >= 0; ancestor = parents[ancestor], ancestorLevel--)
+            if (sliceCodes[ancestorLevel] != ANY && sliceCodes[ancestorLevel] != codes[ancestor]) return false;
+        return true;
+    }
+}
@@ -0,0 +1,115 @@
+package org.pivoter;
+
+import org.pivoter.utils.DoubleValues;
+
+/**
+ * Columnar storage of the raw values of a pivot tree.
+ *
+ * <p>Each value is kept exactly once, by the node where its row ends. {@link #compact()} lays all
+ * values out depth-first, children by label, in a single array, so that the values of any subtree form the contiguous
+ * range {@code [from, to)} of its root node. Values added afterward are buffered by their node in a
+ * primitive {@link org.pivoter.utils.DoubleArray}, and the nodes along the paths of the changed rows
+ * are marked as changed: the view of such a node is assembled from its own values and the ranges of
+ * its unchanged descendants, then memoized, while unchanged nodes keep viewing their range.</p>
+ *
+ * <p>A layout rewrites the range of every node, copying the ones shared with a previous version, so it
+ * is only done once the values added or removed since the last one reach 1/{@value #LAYOUT_RATIO} of
+ * all values: a small delta then copies only the nodes along its paths, and the O(#nodes + #values)
+ * layout is amortized over the changes that triggered it.</p>
+ */
+final class ValueStore {
+
+    static final int LAYOUT_RATIO = 8;
+    static final Object VIEW = new Object(); // memo key of the views assembled for changed nodes
+
+    private static final double[] EMPTY = new double[0];
+
+    private final PivotTreeNode root;
+    private double[] values;
+    private int size; // number of values, including those not laid out yet
+    private int changeCount; // values added or removed since the last layout
+
+    ValueStore(PivotTreeNode root) {
+        this.root = root;
+        this.values = EMPTY;
+    }
+
+    /**
+     * Creates the store of the next version of a tree, starting from the layout of the previous one.
+     * The values array is shared but never written to: compaction always lays values out in a new one.
+     */
+    ValueStore(PivotTreeNode root, ValueStore previous) {
+        this.root = root;
+        this.values = previous.values;
+        this.size = previous.size;
+        this.changeCount = previous.changeCount;
+    }
+
+    /**
+     * Records that a node buffered one more value, to be laid out by a later {@link #compact()}.
+     */
+    void valueAdded() {
+        size++;
+        changeCount++;
+    }
+
+    /**
+     * Records that a node released one of its values, and re-buffered the others.
+     */
+    void valueRemoved() {
+        size--;
+        changeCount++;
+    }
+
+    boolean isStale() {
+        return changeCount > 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return a view over the values of the subtree rooted in {@code node}, leaving the tree unmodified.
+     * O(1) if the subtree did not change since the last layout, else O(#values of the subtree) the first time.
+     */
+    DoubleValues view(PivotTreeNode node) {
+        if (!node.isValuesChanged())
+            return DoubleValues.of(values, node.getValuesFrom(), node.getValuesTo());
+        if (node.getMemoized(VIEW) instanceof DoubleValues assembled) return assembled;
+
+        double[] assembled = new double[node.getValueCount()];
+        node.copyValues(values, assembled, 0);
+        DoubleValues view = DoubleValues.of(assembled, 0, assembled.length);
+        node.memoize(VIEW, view);
+        return view;
+    }
+
+    /**
+     * @return a view over the values of the rows ending in {@code node}, excluding its children's.
+     */
+    DoubleValues ownView(PivotTreeNode node) {
+        int from = node.getValuesFrom(), ownValuesCount = node.getOwnValuesCount();
+        if (node.getPendingValues() == null)
+            return DoubleValues.of(values, from, from + ownValuesCount);
+
+        double[] own = new double[ownValuesCount + node.getPendingValues().size()];
+        System.arraycopy(values, from, own, 0, ownValuesCount);
+        node.getPendingValues().copyTo(own, ownValuesCount);
+        return DoubleValues.of(own, 0, own.length);
+    }
+
+    /**
+     * Lays out pending values depth-first, assigning each node its contiguous range, once the values
+     * changed since the last layout reach 1/{@value #LAYOUT_RATIO} of all values, see {@link ValueStore}.
+     * O(#values + #nodes) when it does, else O(1).
+     */
+    void compact() {
+        if (changeCount == 0 || (long) changeCount * LAYOUT_RATIO < size) return;
+
+        double[] compacted = new double[size];
+        root.compactValues(values, compacted, 0);
+        values = compacted;
+        changeCount = 0;
+    }
+}
@@ -0,0 +1,71 @@
+package org.pivoter.aggregation;
+
+import org.pivoter.utils.DoubleValues;
+
+/**
+ * A constant-size, mergeable aggregation state.
+ *
+ * <p>Each {@link org.pivoter.PivotTreeNode} holds one {@code Accumulator} per
+ * {@link Aggregation} configured on its tree, so a node never needs the raw values
+ * of its subtree to answer a query for that aggregation.</p>
+ */
+public interface Accumulator {
+
+    /**
+     * Folds a single value into this accumulator.
+     */
+    void add(double value);
+
+    /**
+     * Folds all the values into this accumulator, as {@link #add(double)} would one by one.
+     * Built-in accumulators override it with the {@link org.pivoter.utils.DoubleKernels}.
+     */
+    default void addAll(DoubleValues values) {
+        for (int i = 0; i < values.size(); i++)
+            add(values.getDouble(i));
+    }
+
+    /**
+     * Removes a value previously added to this accumulator, if the aggregation is invertible.
+     *
+     * @throws UnsupportedOperationException if this accumulator does not support removal.
+     * @see #isRemovable()
+     */
+    default void remove(double value) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support removal.");
+    }
+
+    /**
+     * @return true if values can be removed through {@link #remove(double)}, e.g. for sum,
+     * but not for min or max, which cannot be restored without the other values.
+     */
+    default boolean isRemovable() {
+        return false;
+    }
+
+    /**
+     * Folds the state of another accumulator of the same kind into this one.
+     *
+     * @throws IllegalArgumentException if {@code other} is not of the same kind.
+     */
+    void merge(Accumulator other);
+
+    /**
+     * @return the current aggregated value, or {@code NaN} when undefined for an empty accumulator.
+     */
+    double result();
+
+    /**
+     * @return an independent copy of this accumulator.
+     */
+    Accumulator copy();
+
+    /**
+     * @return an estimate of the memory retained by this accumulator, in bytes, for
+     * {@link org.pivoter.PivotTree#getStats()}. The default fits an object with a few primitive fields,
+     * accumulators holding arrays, such as the {@link Sketches}, override it.
+     */
+    default long getEstimatedBytes() {
+        return 32;
+    }
+}
@@ -0,0 +1,13 @@
+package org.pivoter.aggregation;
+
+/**
+ * A decomposable aggregation, described by the {@link Accumulator} that computes it.
+ *
+ * <p>Built-in aggregations are listed in {@link Aggregations}; custom ones only need
+ * to supply a fresh accumulator.</p>
+ */
+@FunctionalInterface
+public interface Aggregation {
+
+    Accumulator newAccumulator();
+}
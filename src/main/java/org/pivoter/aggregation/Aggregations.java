@@ -0,0 +1,63 @@
+package org.pivoter.aggregation;
+
+import java.util.List;
+
+/**
+ * Built-in decomposable aggregations.
+ */
+public enum Aggregations implements Aggregation {
+
+    SUM {
+        @Override
+        public Accumulator newAccumulator() {
+            return new SumAccumulator();
+        }
+    },
+    COUNT {
+        @Override
+        public Accumulator newAccumulator() {
+            return new CountAccumulator();
+        }
+    },
+    MIN {
+        @Override
+        public Accumulator newAccumulator() {
+            return new MinAccumulator();
+        }
+    },
+    MAX {
+        @Override
+        public Accumulator newAccumulator() {
+            return new MaxAccumulator();
+        }
+    },
+    MEAN {
+        @Override
+        public Accumulator newAccumulator() {
+            return new MeanAccumulator();
+        }
+    },
+    /**
+     * Population variance.
+     */
+    VARIANCE {
+        @Override
+        public Accumulator newAccumulator() {
+            return new VarianceAccumulator();
+        }
+    };
+
+    /**
+     * @return all built-in aggregations.
+     */
+    public static List<Aggregation> all() {
+        return List.of(values());
+    }
+
+    static <T extends Accumulator> T requireSameKind(Accumulator accumulator, Class<T> kind) {
+        if (!kind.isInstance(accumulator))
+            throw new IllegalArgumentException(String.format(
+                    "Cannot merge %s into %s.", accumulator, kind.getSimpleName()));
+        return kind.cast(accumulator);
+    }
+}
@@ -0,0 +1,50 @@
+package org.pivoter.aggregation;
+
+import org.pivoter.utils.DoubleValues;
+
+final class CountAccumulator implements Accumulator {
+
+    private long count;
+
+    @Override
+    public void add(double value) {
+        count++;
+    }
+
+    @Override
+    public void addAll(DoubleValues values) {
+        count += values.size();
+    }
+
+    @Override
+    public void remove(double value) {
+        count--;
+    }
+
+    @Override
+    public boolean isRemovable() {
+        return true;
+    }
+
+    @Override
+    public void merge(Accumulator other) {
+        count += Aggregations.requireSameKind(other, CountAccumulator.class).count;
+    }
+
+    @Override
+    public double result() {
+        return count;
+    }
+
+    @Override
+    public Accumulator copy() {
+        CountAccumulator copy = new CountAccumulator();
+        copy.count = count;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "Count{" + count + '}';
+    }
+}
@@ -0,0 +1,135 @@
+package org.pivoter.aggregation;
+
+/**
+ * An approximate number of distinct values, from a HyperLogLog sketch (Flajolet et al., 2007) of
+ * 2^precision one-byte registers, whose relative standard error is 1.04 / sqrt(2^precision), e.g. 1.6%
+ * for the default precision of 12. As long as there are few distinct values, their hashes are kept
+ * instead, in no more memory than the registers, and counted exactly: most nodes of a pivot tree have
+ * few values. Two sketches merge by keeping the maximum of each register.
+ */
+final class DistinctCountAccumulator implements Accumulator {
+
+    private static final long EMPTY = 0; // no hash is 0, see hash(double)
+
+    private final int precision;
+    private long[] hashes = new long[8]; // open addressing, null once the registers are used
+    private int hashCount;
+    private byte[] registers; // null while the hashes are kept
+
+    DistinctCountAccumulator(int precision) {
+        this.precision = precision;
+    }
+
+    // splitmix64's finalizer, so that close values spread over all the registers
+    private static long hash(double value) {
+        long hash = Double.doubleToLongBits(value);
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        hash ^= hash >>> 31;
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    @Override
+    public void add(double value) {
+        addHash(hash(value));
+    }
+
+    private void addHash(long hash) {
+        if (registers != null) {
+            addToRegisters(hash);
+            return;
+        }
+
+        int mask = hashes.length - 1;
+        int slot = (int) hash & mask;
+        while (hashes[slot] != EMPTY) {
+            if (hashes[slot] == hash) return;
+            slot = (slot + 1) & mask;
+        }
+        hashes[slot] = hash;
+        hashCount++;
+
+        // the table stays at most half full, and no larger than the registers
+        if (2 * hashCount > hashes.length) {
+            if (8 * 2L * hashes.length > (1L << precision)) toRegisters();
+            else rehash(2 * hashes.length);
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] previous = hashes;
+        hashes = new long[capacity];
+        hashCount = 0;
+        for (long hash : previous)
+            if (hash != EMPTY) addHash(hash);
+    }
+
+    private void toRegisters() {
+        registers = new byte[1 << precision];
+        for (long hash : hashes)
+            if (hash != EMPTY) addToRegisters(hash);
+        hashes = null;
+        hashCount = 0;
+    }
+
+    private void addToRegisters(long hash) {
+        int register = (int) (hash >>> (64 - precision));
+        long remaining = (hash << precision) | (1L << (precision - 1)); // bounds the number of leading zeros
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[register]) registers[register] = rank;
+    }
+
+    @Override
+    public void merge(Accumulator other) {
+        DistinctCountAccumulator sketch = Aggregations.requireSameKind(other, DistinctCountAccumulator.class);
+        if (sketch.precision != precision)
+            throw new IllegalArgumentException(String.format(
+                    "Cannot merge a distinct count sketch of precision %d into one of precision %d.", sketch.precision, precision));
+
+        if (sketch.registers == null) {
+            for (long hash : sketch.hashes)
+                if (hash != EMPTY) addHash(hash);
+            return;
+        }
+        if (registers == null) toRegisters();
+        for (int register = 0; register < registers.length; register++)
+            if (sketch.registers[register] > registers[register]) registers[register] = sketch.registers[register];
+    }
+
+    @Override
+    public double result() {
+        if (registers == null) return hashCount;
+
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte rank : registers) {
+            sum += Math.scalb(1.0, -rank);
+            if (rank == 0) zeros++;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) // small range correction: linear counting
+            estimate = m * Math.log((double) m / zeros);
+        return Math.rint(estimate);
+    }
+
+    @Override
+    public long getEstimatedBytes() {
+        return 32 + (hashes == null ? 0 : 16 + 8L * hashes.length) + (registers == null ? 0 : 16 + registers.length);
+    }
+
+    @Override
+    public Accumulator copy() {
+        DistinctCountAccumulator copy = new DistinctCountAccumulator(precision);
+        copy.hashes = hashes == null ? null : hashes.clone();
+        copy.hashCount = hashCount;
+        copy.registers = registers == null ? null : registers.clone();
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "DistinctCount{" + result() + '}';
+    }
+}
@@ -0,0 +1,42 @@
+package org.pivoter.aggregation;
+
+import org.pivoter.utils.DoubleValues;
+
+final class MaxAccumulator implements Accumulator {
+
+    private double max = Double.NaN;
+
+    @Override
+    public void add(double value) {
+        if (Double.isNaN(max) || value > max) max = value;
+    }
+
+    @Override
+    public void addAll(DoubleValues values) {
+        double valuesMax = values.max();
+        if (!Double.isNaN(valuesMax)) add(valuesMax);
+    }
+
+    @Override
+    public void merge(Accumulator other) {
+        double otherMax = Aggregations.requireSameKind(other, MaxAccumulator.class).max;
+        if (!Double.isNaN(otherMax)) add(otherMax);
+    }
+
+    @Override
+    public double result() {
+        return max;
+    }
+
+    @Override
+    public Accumulator copy() {
+        MaxAccumulator copy = new MaxAccumulator();
+        copy.max = max;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "Max{" + max + '}';
+    }
+}
@@ -0,0 +1,57 @@
+package org.pivoter.aggregation;
+
+import org.pivoter.utils.DoubleValues;
+
+final class MeanAccumulator implements Accumulator {
+
+    private double sum;
+    private long count;
+
+    @Override
+    public void add(double value) {
+        sum += value;
+        count++;
+    }
+
+    @Override
+    public void addAll(DoubleValues values) {
+        sum += values.sum();
+        count += values.size();
+    }
+
+    @Override
+    public void remove(double value) {
+        sum -= value;
+        count--;
+    }
+
+    @Override
+    public boolean isRemovable() {
+        return true;
+    }
+
+    @Override
+    public void merge(Accumulator other) {
+        MeanAccumulator mean = Aggregations.requireSameKind(other, MeanAccumulator.class);
+        sum += mean.sum;
+        count += mean.count;
+    }
+
+    @Override
+    public double result() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    @Override
+    public Accumulator copy() {
+        MeanAccumulator copy = new MeanAccumulator();
+        copy.sum = sum;
+        copy.count = count;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "Mean{" + result() + '}';
+    }
+}
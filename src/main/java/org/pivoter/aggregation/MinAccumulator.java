@@ -0,0 +1,42 @@
+package org.pivoter.aggregation;
+
+import org.pivoter.utils.DoubleValues;
+
+final class MinAccumulator implements Accumulator {
+
+    private double min = Double.NaN;
+
+    @Override
+    public void add(double value) {
+        if (Double.isNaN(min) || value < min) min = value;
+    }
+
+    @Override
+    public void addAll(DoubleValues values) {
+        double valuesMin = values.min();
+        if (!Double.isNaN(valuesMin)) add(valuesMin);
+    }
+
+    @Override
+    public void merge(Accumulator other) {
+        double otherMin = Aggregations.requireSameKind(other, MinAccumulator.class).min;
+        if (!Double.isNaN(otherMin)) add(otherMin);
+    }
+
+    @Override
+    public double result() {
+        return min;
+    }
+
+    @Override
+    public Accumulator copy() {
+        MinAccumulator copy = new MinAccumulator();
+        copy.min = min;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "Min{" + min + '}';
+    }
+}
@@ -0,0 +1,139 @@
+package org.pivoter.aggregation;
+
+import java.util.Arrays;
+
+/**
+ * An approximate mode, from a Space-Saving heavy hitters sketch (Metwally et al., 2005) of a bounded
+ * number of counters: a value that is not counted yet replaces the one with the smallest count, whose
+ * count it inherits. A counted value is overestimated by at most n / counters for n values, so that any
+ * value occurring more often than that is counted, and the mode is exact when it occurs more than
+ * 2 * n / counters times more often than the next value. Two sketches merge by summing the counts of
+ * each value, a value missing from a full sketch being counted as its smallest count, then keeping the
+ * largest counts (Agarwal et al., 2012).
+ */
+final class ModeAccumulator implements Accumulator {
+
+    private final int capacity;
+    private double[] values;
+    private long[] counts;
+    private int size;
+
+    ModeAccumulator(int capacity) {
+        this.capacity = capacity;
+        this.values = new double[Math.min(capacity, 8)];
+        this.counts = new long[values.length];
+    }
+
+    private int indexOf(double value) {
+        long bits = Double.doubleToLongBits(value);
+        for (int i = 0; i < size; i++)
+            if (Double.doubleToLongBits(values[i]) == bits) return i;
+        return -1;
+    }
+
+    private void append(double value, long count) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, 2 * values.length);
+            counts = Arrays.copyOf(counts, values.length);
+        }
+        values[size] = value;
+        counts[size++] = count;
+    }
+
+    private int indexOfMinCount() {
+        int min = 0;
+        for (int i = 1; i < size; i++)
+            if (counts[i] < counts[min]) min = i;
+        return min;
+    }
+
+    @Override
+    public void add(double value) {
+        int index = indexOf(value);
+        if (index >= 0) {
+            counts[index]++;
+        } else if (size < capacity) {
+            append(value, 1);
+        } else {
+            int min = indexOfMinCount();
+            values[min] = value;
+            counts[min]++;
+        }
+    }
+
+    @Override
+    public void merge(Accumulator other) {
+        ModeAccumulator sketch = Aggregations.requireSameKind(other, ModeAccumulator.class);
+        if (sketch.capacity != capacity)
+            throw new IllegalArgumentException(String.format(
+                    "Cannot merge a mode sketch of %d counters into one of %d counters.", sketch.capacity, capacity));
+
+        long minCount = size == capacity ? counts[indexOfMinCount()] : 0;
+        long otherMinCount = sketch.size == capacity ? sketch.counts[sketch.indexOfMinCount()] : 0;
+
+        int ownSize = size;
+        boolean[] matched = new boolean[ownSize];
+        for (int i = 0; i < sketch.size; i++) {
+            int index = indexOf(sketch.values[i]);
+            if (index >= 0 && index < ownSize) {
+                counts[index] += sketch.counts[i];
+                matched[index] = true;
+            } else {
+                append(sketch.values[i], sketch.counts[i] + minCount);
+            }
+        }
+        for (int i = 0; i < ownSize; i++)
+            if (!matched[i]) counts[i] += otherMinCount;
+
+        if (size > capacity) keepLargestCounts();
+    }
+
+    private void keepLargestCounts() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+
+        double[] keptValues = new double[capacity];
+        long[] keptCounts = new long[capacity];
+        for (int i = 0; i < capacity; i++) {
+            keptValues[i] = values[order[i]];
+            keptCounts[i] = counts[order[i]];
+        }
+        values = keptValues;
+        counts = keptCounts;
+        size = capacity;
+    }
+
+    /**
+     * @return the value with the largest count, the smallest value among equal counts, or NaN if empty.
+     */
+    @Override
+    public double result() {
+        if (size == 0) return Double.NaN;
+
+        int mode = 0;
+        for (int i = 1; i < size; i++)
+            if (counts[i] > counts[mode] || counts[i] == counts[mode] && Double.compare(values[i], values[mode]) < 0)
+                mode = i;
+        return values[mode];
+    }
+
+    @Override
+    public long getEstimatedBytes() {
+        return 32 + 16 + 8L * values.length + 16 + 8L * counts.length;
+    }
+
+    @Override
+    public Accumulator copy() {
+        ModeAccumulator copy = new ModeAccumulator(capacity);
+        copy.values = values.clone();
+        copy.counts = counts.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "Mode{" + result() + '}';
+    }
+}
@@ -0,0 +1,180 @@
+package org.pivoter.aggregation;
+
+import java.util.Arrays;
+
+/**
+ * An approximate quantile, from a KLL sketch (Karnin, Lang and Liberty, 2016): values are kept in
+ * levels of compactors, a value of level h standing for 2^h values. When the sketch is full, the lowest
+ * level over its capacity is sorted and every other value is promoted to the next level, starting at a
+ * random offset. Capacities decrease geometrically from the top level, so the sketch keeps O(k) values,
+ * and the rank of the returned value is within about 1.7 / k of the requested one, with high probability.
+ * Two sketches merge by concatenating their levels, then compacting.
+ */
+final class QuantileAccumulator implements Accumulator {
+
+    private static final double CAPACITY_DECAY = 2.0 / 3;
+
+    private final double quantile;
+    private final int k;
+    private double[][] levels = {new double[8]};
+    private int[] sizes = new int[1];
+    private int size; // number of values kept, at all levels
+    private int maxSize; // total capacity of the levels
+    private long count;
+    private long random = 0x9E3779B97F4A7C15L; // xorshift state, fixed so that results are reproducible
+
+    QuantileAccumulator(double quantile, int k) {
+        this.quantile = quantile;
+        this.k = k;
+        this.maxSize = capacity(0);
+    }
+
+    // the capacity of a level, the top one having k
+    private int capacity(int level) {
+        int depth = levels.length - level - 1;
+        return (int) Math.ceil(Math.pow(CAPACITY_DECAY, depth) * k) + 1;
+    }
+
+    private void addLevel() {
+        levels = Arrays.copyOf(levels, levels.length + 1);
+        levels[levels.length - 1] = new double[8];
+        sizes = Arrays.copyOf(sizes, sizes.length + 1);
+
+        maxSize = 0;
+        for (int level = 0; level < levels.length; level++)
+            maxSize += capacity(level);
+    }
+
+    private void append(int level, double value) {
+        if (sizes[level] == levels[level].length)
+            levels[level] = Arrays.copyOf(levels[level], 2 * levels[level].length);
+        levels[level][sizes[level]++] = value;
+    }
+
+    @Override
+    public void add(double value) {
+        append(0, value);
+        size++;
+        count++;
+        if (size >= maxSize) compress();
+    }
+
+    // compacts the lowest levels over their capacity, until the sketch is within its total capacity
+    private void compress() {
+        for (int level = 0; level < levels.length && size >= maxSize; level++) {
+            if (sizes[level] < capacity(level)) continue;
+            if (level + 1 == levels.length) addLevel();
+            compact(level);
+        }
+    }
+
+    private void compact(int level) {
+        double[] values = levels[level];
+        int levelSize = sizes[level];
+        Arrays.sort(values, 0, levelSize);
+
+        int kept = levelSize % 2; // the smallest value stays when the count is odd
+        int offset = nextBit();
+        for (int i = kept + offset; i < levelSize; i += 2)
+            append(level + 1, values[i]);
+        sizes[level] = kept;
+        size -= levelSize - kept - (levelSize - kept) / 2;
+    }
+
+    private int nextBit() {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (int) (random & 1);
+    }
+
+    @Override
+    public void merge(Accumulator other) {
+        QuantileAccumulator sketch = Aggregations.requireSameKind(other, QuantileAccumulator.class);
+        if (sketch.k != k)
+            throw new IllegalArgumentException(String.format("Cannot merge a quantile sketch of k=%d into one of k=%d.", sketch.k, k));
+
+        while (levels.length < sketch.levels.length) addLevel();
+        for (int level = 0; level < sketch.levels.length; level++)
+            for (int i = 0; i < sketch.sizes[level]; i++)
+                append(level, sketch.levels[level][i]);
+        size += sketch.size;
+        count += sketch.count;
+        while (size >= maxSize) compress();
+    }
+
+    @Override
+    public double result() {
+        if (count == 0) return Double.NaN;
+
+        double[] values = new double[size];
+        long[] weights = new long[size];
+        int n = 0;
+        for (int level = 0; level < levels.length; level++)
+            for (int i = 0; i < sizes[level]; i++) {
+                values[n] = levels[level][i];
+                weights[n++] = 1L << level;
+            }
+        sortByValue(values, weights);
+
+        long totalWeight = 0;
+        for (long weight : weights) totalWeight += weight;
+        double rank = quantile * totalWeight;
+        long cumulativeWeight = 0;
+        for (int i = 0; i < n; i++) {
+            cumulativeWeight += weights[i];
+            if (cumulativeWeight >= rank) return values[i];
+        }
+        return values[n - 1];
+    }
+
+    // sorts both arrays by value, through the indexes sorted by value
+    private static void sortByValue(double[] values, long[] weights) {
+        Integer[] order = new Integer[values.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+        double[] sortedValues = new double[values.length];
+        long[] sortedWeights = new long[weights.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedValues[i] = values[order[i]];
+            sortedWeights[i] = weights[order[i]];
+        }
+        System.arraycopy(sortedValues, 0, values, 0, values.length);
+        System.arraycopy(sortedWeights, 0, weights, 0, weights.length);
+    }
+
+    /**
+     * @return the number of values kept, which is bounded by O(k) whatever the number of added values.
+     */
+    int retainedSize() {
+        return size;
+    }
+
+    @Override
+    public long getEstimatedBytes() {
+        long bytes = 56 + 16 + 4L * levels.length + 16 + 4L * sizes.length;
+        for (double[] level : levels)
+            bytes += 16 + 8L * level.length;
+        return bytes;
+    }
+
+    @Override
+    public Accumulator copy() {
+        QuantileAccumulator copy = new QuantileAccumulator(quantile, k);
+        copy.levels = new double[levels.length][];
+        for (int level = 0; level < levels.length; level++)
+            copy.levels[level] = levels[level].clone();
+        copy.sizes = sizes.clone();
+        copy.size = size;
+        copy.maxSize = maxSize;
+        copy.count = count;
+        copy.random = random;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "Quantile{" + quantile + ": " + result() + '}';
+    }
+}
@@ -0,0 +1,119 @@
+package org.pivoter.aggregation;
+
+/**
+ * Approximate holistic aggregations, maintained by a pivot tree like the {@link Aggregations} through
+ * mergeable sketches of bounded size, so that quantiles, distinct counts and modes can be queried
+ * without retaining raw values:
+ * <pre>{@code
+ * Aggregation p95 = Sketches.quantile(0.95);
+ * pivoter.setAggregations(List.of(Aggregations.SUM, Sketches.median(), p95, Sketches.distinctCount()));
+ * pivoter.setRetainValues(false);
+ * pivoter.pivot(dataRows);
+ *
+ * Double latency = pivoter.query(List.of("North"), p95);
+ * }</pre>
+ * Aggregations with the same parameters are equal, so that a tree can be queried with a new instance.
+ * None of them supports the removal of values, so that a tree maintaining them cannot be retracted from.
+ */
+public final class Sketches {
+
+    /**
+     * The default accuracy of the quantile sketches: a rank error of about 1%, with about 600 values kept.
+     */
+    public static final int DEFAULT_QUANTILE_K = 200;
+
+    /**
+     * The default precision of the distinct count sketches: a relative standard error of 1.6%, with 4 KB of registers.
+     */
+    public static final int DEFAULT_DISTINCT_COUNT_PRECISION = 12;
+
+    /**
+     * The default number of counters of the mode sketches.
+     */
+    public static final int DEFAULT_MODE_COUNTERS = 64;
+
+    private record Quantile(double quantile, int k) implements Aggregation {
+
+        @Override
+        public Accumulator newAccumulator() {
+            return new QuantileAccumulator(quantile, k);
+        }
+    }
+
+    private record DistinctCount(int precision) implements Aggregation {
+
+        @Override
+        public Accumulator newAccumulator() {
+            return new DistinctCountAccumulator(precision);
+        }
+    }
+
+    private record Mode(int counters) implements Aggregation {
+
+        @Override
+        public Accumulator newAccumulator() {
+            return new ModeAccumulator(counters);
+        }
+    }
+
+    private Sketches() {
+    }
+
+    public static Aggregation median() {
+        return quantile(0.5);
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.95 for the 95th percentile.
+     */
+    public static Aggregation quantile(double quantile) {
+        return quantile(quantile, DEFAULT_QUANTILE_K);
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.95 for the 95th percentile.
+     * @param k        the accuracy of the sketch: its rank error is about 1.7 / k, and it keeps about 3 * k values.
+     * @throws IllegalArgumentException if the quantile is not between 0 and 1, or if k is less than 8.
+     */
+    public static Aggregation quantile(double quantile, int k) {
+        if (!(quantile >= 0 && quantile <= 1))
+            throw new IllegalArgumentException("quantile must be between 0 and 1: " + quantile);
+        if (k < 8)
+            throw new IllegalArgumentException("k must be at least 8: " + k);
+        return new Quantile(quantile, k);
+    }
+
+    public static Aggregation distinctCount() {
+        return distinctCount(DEFAULT_DISTINCT_COUNT_PRECISION);
+    }
+
+    /**
+     * @param precision the base 2 logarithm of the number of registers, whose relative standard error is
+     *                  1.04 / sqrt(2^precision).
+     * @throws IllegalArgumentException if the precision is not between 4 and 16.
+     */
+    public static Aggregation distinctCount(int precision) {
+        if (precision < 4 || precision > 16)
+            throw new IllegalArgumentException("precision must be between 4 and 16: " + precision);
+        return new DistinctCount(precision);
+    }
+
+    /**
+     * @return an approximate mode, the most frequent value, which is exact when it is frequent enough, see
+     * {@link #mode(int)}. Unlike {@link org.pivoter.utils.PivoterUtils#mode}, the smallest value wins a tie.
+     */
+    public static Aggregation mode() {
+        return mode(DEFAULT_MODE_COUNTERS);
+    }
+
+    /**
+     * @param counters the number of values counted: any value occurring more than n / counters times out of
+     *                 n is counted, with a count overestimated by at most n / counters.
+     * @throws IllegalArgumentException if there are less than 2 counters.
+     */
+    public static Aggregation mode(int counters) {
+        if (counters < 2)
+            throw new IllegalArgumentException("counters must be at least 2: " + counters);
+        return new Mode(counters);
+    }
+}
@@ -0,0 +1,50 @@
+package org.pivoter.aggregation;
+
+import org.pivoter.utils.DoubleValues;
+
+final class SumAccumulator implements Accumulator {
+
+    private double sum;
+
+    @Override
+    public void add(double value) {
+        sum += value;
+    }
+
+    @Override
+    public void addAll(DoubleValues values) {
+        sum += values.sum();
+    }
+
+    @Override
+    public void remove(double value) {
+        sum -= value;
+    }
+
+    @Override
+    public boolean isRemovable() {
+        return true;
+    }
+
+    @Override
+    public void merge(Accumulator other) {
+        sum += Aggregations.requireSameKind(other, SumAccumulator.class).sum;
+    }
+
+    @Override
+    public double result() {
+        return sum;
+    }
+
+    @Override
+    public Accumulator copy() {
+        SumAccumulator copy = new SumAccumulator();
+        copy.sum = sum;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "Sum{" + sum + '}';
+    }
+}
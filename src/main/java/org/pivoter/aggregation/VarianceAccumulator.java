@@ -0,0 +1,71 @@
+package org.pivoter.aggregation;
+
+/**
+ * Population variance, using Welford's update and Chan's parallel merge
+ * to stay numerically stable without keeping the values.
+ */
+final class VarianceAccumulator implements Accumulator {
+
+    private long count;
+    private double mean;
+    private double m2; // sum of squared deviations from the mean
+
+    @Override
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+    }
+
+    @Override
+    public void remove(double value) {
+        if (count <= 1) {
+            count = 0;
+            mean = 0.0;
+            m2 = 0.0;
+            return;
+        }
+        // inverse of add
+        count--;
+        double delta = value - mean;
+        mean -= delta / count;
+        m2 = Math.max(0.0, m2 - delta * (value - mean));
+    }
+
+    @Override
+    public boolean isRemovable() {
+        return true;
+    }
+
+    @Override
+    public void merge(Accumulator other) {
+        VarianceAccumulator variance = Aggregations.requireSameKind(other, VarianceAccumulator.class);
+        if (variance.count == 0) return;
+
+        long total = count + variance.count;
+        double delta = variance.mean - mean;
+        mean += delta * variance.count / total;
+        m2 += variance.m2 + delta * delta * ((double) count * variance.count / total);
+        count = total;
+    }
+
+    @Override
+    public double result() {
+        return count == 0 ? Double.NaN : m2 / count;
+    }
+
+    @Override
+    public Accumulator copy() {
+        VarianceAccumulator copy = new VarianceAccumulator();
+        copy.count = count;
+        copy.mean = mean;
+        copy.m2 = m2;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "Variance{" + result() + '}';
+    }
+}
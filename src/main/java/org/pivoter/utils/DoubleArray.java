@@ -0,0 +1,67 @@
+package org.pivoter.utils;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of primitive doubles, avoiding the boxing overhead of a {@code List<Double>}.
+ */
+public final class DoubleArray {
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private double[] elements;
+    private int size;
+
+    public DoubleArray() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public DoubleArray(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("initialCapacity cannot be negative.");
+        this.elements = new double[initialCapacity];
+    }
+
+    public void add(double value) {
+        if (size == elements.length)
+            elements = Arrays.copyOf(elements, Math.max(DEFAULT_CAPACITY, size + (size >> 1)));
+        elements[size++] = value;
+    }
+
+    public double get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        return elements[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Copies all elements into {@code destination}, starting at {@code offset}.
+     */
+    public void copyTo(double[] destination, int offset) {
+        System.arraycopy(elements, 0, destination, offset, size);
+    }
+
+    public DoubleArray copy() {
+        DoubleArray copy = new DoubleArray(0);
+        copy.elements = toArray();
+        copy.size = size;
+        return copy;
+    }
+
+    public double[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
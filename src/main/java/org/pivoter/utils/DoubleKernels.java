@@ -0,0 +1,167 @@
+package org.pivoter.utils;
+
+/**
+ * Aggregation kernels over a range {@code [from, to)} of a primitive array, used whenever raw values
+ * are scanned at query time instead of folding them one by one into an accumulator.
+ *
+ * <p>The scalar kernels keep {@value #LANES} independent partial results, so consecutive iterations
+ * do not wait on each other's floating-point latency and the JIT can unroll and pack them. When the
+ * {@value #VECTOR_PROPERTY} system property is {@code true} and the {@code jdk.incubator.vector}
+ * module is resolved (e.g. {@code --add-modules jdk.incubator.vector}), they run on the Vector API
+ * instead, with the same results up to the rounding of the sums. They are compiled apart, in the
+ * {@code vector} source set, and loaded reflectively, so that no other class depends on the module.</p>
+ *
+ * <p>{@link #sum} adds blocks of {@value #BLOCK_SIZE} values pairwise, so its rounding error grows
+ * with {@code O(log n)} rather than {@code O(n)}, and {@link #compensatedSum} is exact up to the final
+ * rounding for most inputs, at about four times the cost. Min and max skip {@code NaN} values, as the
+ * {@link org.pivoter.aggregation.Aggregations} do, and all kernels return {@code NaN} when there is no
+ * value to aggregate, except the sums which return {@code 0}.</p>
+ */
+public final class DoubleKernels {
+
+    public static final String VECTOR_PROPERTY = "pivoter.vectorKernels";
+
+    static final int LANES = 4;
+    static final int BLOCK_SIZE = 256;
+    private static final String VECTOR_KERNELS_CLASS = "org.pivoter.utils.VectorKernels";
+    private static final Vectorized VECTORIZED = Boolean.getBoolean(VECTOR_PROPERTY) ? loadVectorized() : null;
+
+    /**
+     * The kernels implemented on the Vector API, where min and max return their identity rather than
+     * {@code NaN} when there is no value, as {@link #scalarMin} and {@link #scalarMax} do.
+     */
+    interface Vectorized {
+
+        double sum(double[] values, int from, int to);
+
+        double min(double[] values, int from, int to);
+
+        double max(double[] values, int from, int to);
+    }
+
+    private DoubleKernels() {
+    }
+
+    /**
+     * @return whether the kernels run on the Vector API, see {@link #VECTOR_PROPERTY}.
+     */
+    public static boolean isVectorized() {
+        return VECTORIZED != null;
+    }
+
+    /**
+     * @return the Vector API kernels, or null if the module is not resolved or they are not on the class path.
+     */
+    static Vectorized loadVectorized() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+        try {
+            return (Vectorized) Class.forName(VECTOR_KERNELS_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    public static double sum(double[] values, int from, int to) {
+        checkRange(values, from, to);
+        return pairwiseSum(values, from, to);
+    }
+
+    /**
+     * @return the Kahan-Babuska (Neumaier) compensated sum of the values.
+     */
+    public static double compensatedSum(double[] values, int from, int to) {
+        checkRange(values, from, to);
+        double sum = 0.0;
+        double compensation = 0.0;
+        for (int i = from; i < to; i++) {
+            double value = values[i];
+            double t = sum + value;
+            if (Math.abs(sum) >= Math.abs(value)) compensation += (sum - t) + value;
+            else compensation += (value - t) + sum;
+            sum = t;
+        }
+        return sum + compensation;
+    }
+
+    public static double mean(double[] values, int from, int to) {
+        return from == to ? Double.NaN : sum(values, from, to) / (to - from);
+    }
+
+    public static double min(double[] values, int from, int to) {
+        checkRange(values, from, to);
+        double min = VECTORIZED != null ? VECTORIZED.min(values, from, to) : scalarMin(values, from, to);
+        return min == Double.POSITIVE_INFINITY && !containsNumber(values, from, to) ? Double.NaN : min;
+    }
+
+    public static double max(double[] values, int from, int to) {
+        checkRange(values, from, to);
+        double max = VECTORIZED != null ? VECTORIZED.max(values, from, to) : scalarMax(values, from, to);
+        return max == Double.NEGATIVE_INFINITY && !containsNumber(values, from, to) ? Double.NaN : max;
+    }
+
+    private static double pairwiseSum(double[] values, int from, int to) {
+        int length = to - from;
+        if (length <= BLOCK_SIZE)
+            return VECTORIZED != null ? VECTORIZED.sum(values, from, to) : scalarSum(values, from, to);
+
+        int middle = from + (length / BLOCK_SIZE + 1) / 2 * BLOCK_SIZE; // blocks stay aligned
+        return pairwiseSum(values, from, middle) + pairwiseSum(values, middle, to);
+    }
+
+    static double scalarSum(double[] values, int from, int to) {
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        int i = from;
+        for (; i <= to - LANES; i += LANES) {
+            s0 += values[i];
+            s1 += values[i + 1];
+            s2 += values[i + 2];
+            s3 += values[i + 3];
+        }
+        for (; i < to; i++)
+            s0 += values[i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    // +Infinity when there is no value other than NaN, NaN comparing false
+    static double scalarMin(double[] values, int from, int to) {
+        double m0 = Double.POSITIVE_INFINITY, m1 = m0, m2 = m0, m3 = m0;
+        int i = from;
+        for (; i <= to - LANES; i += LANES) {
+            m0 = values[i] < m0 ? values[i] : m0;
+            m1 = values[i + 1] < m1 ? values[i + 1] : m1;
+            m2 = values[i + 2] < m2 ? values[i + 2] : m2;
+            m3 = values[i + 3] < m3 ? values[i + 3] : m3;
+        }
+        for (; i < to; i++)
+            m0 = values[i] < m0 ? values[i] : m0;
+        return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+    }
+
+    // -Infinity when there is no value other than NaN, NaN comparing false
+    static double scalarMax(double[] values, int from, int to) {
+        double m0 = Double.NEGATIVE_INFINITY, m1 = m0, m2 = m0, m3 = m0;
+        int i = from;
+        for (; i <= to - LANES; i += LANES) {
+            m0 = values[i] > m0 ? values[i] : m0;
+            m1 = values[i + 1] > m1 ? values[i + 1] : m1;
+            m2 = values[i + 2] > m2 ? values[i + 2] : m2;
+            m3 = values[i + 3] > m3 ? values[i + 3] : m3;
+        }
+        for (; i < to; i++)
+            m0 = values[i] > m0 ? values[i] : m0;
+        return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+    }
+
+    // only called when min or max hit their identity, to tell infinite values from NaN-only ranges
+    private static boolean containsNumber(double[] values, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (!Double.isNaN(values[i])) return true;
+        return false;
+    }
+
+    private static void checkRange(double[] values, int from, int to) {
+        if (from < 0 || to > values.length || from > to)
+            throw new IndexOutOfBoundsException(String.format(
+                    "Range [%d, %d) out of bounds for length %d", from, to, values.length));
+    }
+}
@@ -0,0 +1,223 @@
+package org.pivoter.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses decimal numbers from characters or ASCII bytes without allocating or throwing.
+ *
+ * <p>Plain decimals such as {@code -12.50} or {@code 3e-4} with up to 18 significant digits are parsed
+ * directly: when the digits fit in 53 bits and the decimal exponent is at most 22 in magnitude, a single
+ * multiplication or division of exact doubles gives the correctly rounded result. Other numbers, and
+ * the exotic formats accepted by {@link Double#parseDouble(String)} (surrounding whitespace, NaN,
+ * Infinity, hexadecimal, type suffixes), fall back to it, so a successful parse always returns the same
+ * value. Anything else, e.g. a dirty value in a feed, is rejected without an exception.</p>
+ *
+ * <p>A parser keeps the last parsed value and is not thread-safe.</p>
+ */
+public final class DoubleParser {
+
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final int MAX_MANTISSA_DIGITS = 18;
+    private static final int MAX_EXACT_EXPONENT = 22;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // outcomes of the plain decimal parse
+    private static final int PARSED = 0;
+    private static final int INEXACT = 1; // valid, but left to Double.parseDouble for correct rounding
+    private static final int INVALID = 2;
+
+    private final AsciiSequence ascii = new AsciiSequence();
+    private double value;
+
+    /**
+     * @return true if the whole sequence is a valid double, then available through {@link #value()}.
+     */
+    public boolean parse(CharSequence chars) {
+        return chars != null && parse(chars, 0, chars.length());
+    }
+
+    /**
+     * @return true if the characters in {@code [from, to)} are a valid double, then available through {@link #value()}.
+     */
+    public boolean parse(CharSequence chars, int from, int to) {
+        if (from >= to) return false;
+
+        return switch (parseDecimal(chars, from, to)) {
+            case PARSED -> true;
+            case INEXACT -> fallback(chars, from, to);
+            default -> mayBeExotic(chars, from, to) && fallback(chars, from, to);
+        };
+    }
+
+    /**
+     * @return true if the ASCII bytes in {@code [from, to)} are a valid double, then available through {@link #value()}.
+     */
+    public boolean parse(byte[] bytes, int from, int to) {
+        ascii.bytes = bytes;
+        try {
+            return parse(ascii, from, to);
+        } finally {
+            ascii.bytes = null;
+        }
+    }
+
+    /**
+     * @return true if the ASCII bytes in {@code [from, to)} of the buffer, read with absolute gets, are a valid
+     * double, then available through {@link #value()}.
+     */
+    public boolean parse(ByteBuffer buffer, int from, int to) {
+        ascii.buffer = buffer;
+        try {
+            return parse(ascii, from, to);
+        } finally {
+            ascii.buffer = null;
+        }
+    }
+
+    /**
+     * @return the value of the last successful parse.
+     */
+    public double value() {
+        return value;
+    }
+
+    // [+-]digits[.digits][(e|E)[+-]digits], with at least one digit in the mantissa
+    private int parseDecimal(CharSequence chars, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        char c = chars.charAt(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0; // significant digits in the mantissa
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean dot = false;
+        for (; i < to; i++) {
+            c = chars.charAt(i);
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                if (mantissa == 0 && c == '0') {
+                    if (dot) exponent--;
+                    continue;
+                }
+                if (++digits > MAX_MANTISSA_DIGITS) return validOrInvalid(chars, i, to, dot);
+                mantissa = 10 * mantissa + (c - '0');
+                if (dot) exponent--;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+        if (!anyDigit) return INVALID;
+
+        if (i < to && (c == 'e' || c == 'E')) {
+            i++;
+            if (i == to) return INVALID;
+            boolean negativeExponent = false;
+            c = chars.charAt(i);
+            if (c == '-' || c == '+') {
+                negativeExponent = c == '-';
+                i++;
+            }
+            if (i == to) return INVALID;
+
+            int explicitExponent = 0;
+            for (; i < to; i++) {
+                c = chars.charAt(i);
+                if (c < '0' || c > '9') return INVALID;
+                if (explicitExponent < 1000) explicitExponent = 10 * explicitExponent + (c - '0'); // saturates far out of range
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        if (i != to) return INVALID;
+
+        if (mantissa == 0) {
+            value = negative ? -0.0 : 0.0;
+            return PARSED;
+        }
+        if (mantissa > MAX_EXACT_MANTISSA || exponent < -MAX_EXACT_EXPONENT || exponent > MAX_EXACT_EXPONENT)
+            return INEXACT;
+
+        double result = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        value = negative ? -result : result;
+        return PARSED;
+    }
+
+    // too many digits for the fast path: only checks the syntax of the rest of the number
+    private static int validOrInvalid(CharSequence chars, int from, int to, boolean dot) {
+        boolean exponent = false;
+        for (int i = from; i < to; i++) {
+            char c = chars.charAt(i);
+            if (c >= '0' && c <= '9') continue;
+
+            if (c == '.' && !dot && !exponent) dot = true;
+            else if ((c == 'e' || c == 'E') && !exponent && i + 1 < to) exponent = true;
+            else if ((c == '-' || c == '+') && exponent && (chars.charAt(i - 1) == 'e' || chars.charAt(i - 1) == 'E') && i + 1 < to) continue;
+            else return INVALID;
+        }
+        return INEXACT;
+    }
+
+    private boolean fallback(CharSequence chars, int from, int to) {
+        try {
+            value = Double.parseDouble(chars.subSequence(from, to).toString());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // whether the text may be one of the formats Double.parseDouble accepts beyond plain decimals
+    private static boolean mayBeExotic(CharSequence chars, int from, int to) {
+        int first = from;
+        int last = to - 1;
+        if (chars.charAt(first) <= ' ' || chars.charAt(last) <= ' ') return true; // surrounding whitespace
+
+        char c = chars.charAt(first);
+        if ((c == '-' || c == '+') && first < last) c = chars.charAt(++first);
+        if (c == 'N' || c == 'I') return true; // NaN, Infinity
+        if (c == '0' && first < last && (chars.charAt(first + 1) == 'x' || chars.charAt(first + 1) == 'X')) return true; // hexadecimal
+
+        c = chars.charAt(last);
+        return c == 'f' || c == 'F' || c == 'd' || c == 'D'; // type suffix
+    }
+
+    // a reusable view of ASCII bytes as characters, from an array or a buffer
+    private static final class AsciiSequence implements CharSequence {
+
+        private byte[] bytes;
+        private ByteBuffer buffer;
+
+        @Override
+        public int length() {
+            return bytes != null ? bytes.length : buffer.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) ((bytes != null ? bytes[index] : buffer.get(index)) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            byte[] range = new byte[end - start];
+            for (int i = start; i < end; i++)
+                range[i - start] = (byte) charAt(i);
+            return new String(range, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+}
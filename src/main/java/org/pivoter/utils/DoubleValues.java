@@ -0,0 +1,109 @@
+package org.pivoter.utils;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.stream.DoubleStream;
+
+/**
+ * A read-only {@code List<Double>} view over a contiguous range of a primitive array.
+ *
+ * <p>Values are only boxed when accessed through the {@link java.util.List} interface;
+ * {@link #getDouble(int)} and {@link #doubleStream()} read them as primitives, and the aggregates
+ * ({@link #sum()}, {@link #min()}...) run the {@link DoubleKernels} on the underlying range.</p>
+ */
+public final class DoubleValues extends AbstractList<Double> implements RandomAccess {
+
+    private static final DoubleValues EMPTY = new DoubleValues(new double[0], 0, 0);
+
+    private final double[] elements;
+    private final int from;
+    private final int to;
+
+    private DoubleValues(double[] elements, int from, int to) {
+        this.elements = elements;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @return a view over {@code elements[from, to)}, which is not copied.
+     */
+    public static DoubleValues of(double[] elements, int from, int to) {
+        if (from < 0 || to > elements.length || from > to)
+            throw new IndexOutOfBoundsException(String.format(
+                    "Range [%d, %d) out of bounds for length %d", from, to, elements.length));
+        return new DoubleValues(elements, from, to);
+    }
+
+    public static DoubleValues empty() {
+        return EMPTY;
+    }
+
+    public double getDouble(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size());
+        return elements[from + index];
+    }
+
+    @Override
+    public Double get(int index) {
+        return getDouble(index);
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    /**
+     * @return a view over a sub-range of this one, which is not copied.
+     */
+    @Override
+    public DoubleValues subList(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException(String.format(
+                    "Range [%d, %d) out of bounds for size %d", fromIndex, toIndex, size()));
+        return new DoubleValues(elements, from + fromIndex, from + toIndex);
+    }
+
+    public double sum() {
+        return DoubleKernels.sum(elements, from, to);
+    }
+
+    /**
+     * @see DoubleKernels#compensatedSum(double[], int, int)
+     */
+    public double compensatedSum() {
+        return DoubleKernels.compensatedSum(elements, from, to);
+    }
+
+    /**
+     * @return the mean of the values, or {@code NaN} if there is none.
+     */
+    public double mean() {
+        return DoubleKernels.mean(elements, from, to);
+    }
+
+    /**
+     * @return the smallest value other than {@code NaN}, or {@code NaN} if there is none.
+     */
+    public double min() {
+        return DoubleKernels.min(elements, from, to);
+    }
+
+    /**
+     * @return the largest value other than {@code NaN}, or {@code NaN} if there is none.
+     */
+    public double max() {
+        return DoubleKernels.max(elements, from, to);
+    }
+
+    public DoubleStream doubleStream() {
+        return Arrays.stream(elements, from, to);
+    }
+
+    public double[] toDoubleArray() {
+        return Arrays.copyOfRange(elements, from, to);
+    }
+}
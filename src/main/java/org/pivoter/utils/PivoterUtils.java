@@ -7,21 +7,27 @@ public class PivoterUtils {
     public PivoterUtils() {
     }
 
+    private static final ThreadLocal<DoubleParser> PARSER = ThreadLocal.withInitial(DoubleParser::new);
+
     public static boolean isDouble(String str) {
+        return isDouble(str, PARSER.get());
+    }
+
+    /**
+     * Same as {@link #isDouble(String)} with the given parser, for callers validating many values in a row.
+     * The parsed value is then available through {@link DoubleParser#value()}.
+     */
+    public static boolean isDouble(String str, DoubleParser parser) {
         if (str == null || str.isEmpty()) {
             return false; // null or empty strings are not valid Doubles
         }
-        try {
-            Double.parseDouble(str);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
-        }
+        return parser.parse(str); // no exception thrown on invalid values
     }
 
     /********** custom aggregation functions **********/
 
     public static double sum(Collection<Double> values) {
+        if (values instanceof DoubleValues doubles) return doubles.sum(); // unboxed, see DoubleKernels
         double res = 0.0;
         for (Double value : values) {
             res += value;
@@ -29,7 +35,21 @@ public class PivoterUtils {
         return res;
     }
 
+    /**
+     * Same as {@link #sum(Collection)}, but with a compensated summation, for values of mixed magnitudes or signs.
+     */
+    public static double compensatedSum(Collection<Double> values) {
+        if (values instanceof DoubleValues doubles) return doubles.compensatedSum();
+        double[] array = new double[values.size()];
+        int i = 0;
+        for (Double value : values) {
+            array[i++] = value;
+        }
+        return DoubleKernels.compensatedSum(array, 0, array.length);
+    }
+
     public static double average(Collection<Double> values) {
+        if (values instanceof DoubleValues doubles) return doubles.mean();
         double sum = 0.0;
         int i = 0;
         for (Double value : values) {
@@ -0,0 +1,53 @@
+package org.pivoter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class DataRowPipelineTest {
+
+    @Test
+    void testAccept_handsOverEachValidRowBeforeReadingTheNextOne() {
+        // given
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("eyes", "brown", "hair", "dark", "#", "10.0"),
+                Map.of("eyes", "blue", "hair", "blonde", "#", "20.0"),
+                Map.of("eyes", "blue", "hair", "dark", "#", "thirty")
+        );
+        List<PivotRow> pivotRows = new ArrayList<>();
+        DataRowPipeline pipeline = new DataRowPipeline(DataRowPipeline.labelsOf(dataRows.get(0)),
+                new HierarchyComparator(List.of("hair", "eyes")), pivotRows::add);
+
+        // when
+        pipeline.accept(dataRows.get(0));
+        pipeline.accept(dataRows.get(1));
+
+        // then
+        assertThat(pivotRows).hasSize(2);
+        assertThat(pivotRows.get(0).getLabels()).containsExactly("dark", "brown");
+        assertThat(pivotRows.get(0).getValue()).isEqualTo(10.0);
+        assertThat(pivotRows.get(1).getLabels()).containsExactly("blonde", "blue");
+        assertThat(pivotRows.get(1).getValue()).isEqualTo(20.0);
+
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pipeline.accept(dataRows.get(2)))
+                .withMessage("Invalid numerical value for label '#': 'thirty'. The value must be a valid Double.");
+        assertThat(pivotRows).hasSize(2);
+    }
+
+    @Test
+    void testAccept_throwsIfLabelsDoNotMatchTheFirstDataRow() {
+        // given
+        DataRowPipeline pipeline = new DataRowPipeline(DataRowPipeline.labelsOf(Map.of("eyes", "brown", "#", "10.0")),
+                Comparator.naturalOrder(), pivotRow -> {
+        });
+
+        // when-then
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pipeline.accept(Map.of("hair", "dark", "#", "10.0")))
+                .withMessageContaining("does not match the consistent set of labels:");
+    }
+}
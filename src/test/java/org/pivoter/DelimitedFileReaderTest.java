@@ -0,0 +1,149 @@
+package org.pivoter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.pivoter.aggregation.Aggregations;
+import org.pivoter.utils.PivoterUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class DelimitedFileReaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testPivotCsv_buildsTheSameTreeAsTheEquivalentDataRows() throws IOException {
+        // given
+        Path file = directory.resolve("people.csv");
+        Files.writeString(file, "\uFEFFnation,eyes,hair,amount\r\n"
+                + "italy,brown,dark,10.0\r\n"
+                + "italy,blue,\"blonde, long\",20\r\n"
+                + "\r\n"
+                + "spain,blue,dark,-30.5", StandardCharsets.UTF_8);
+        Pivoter filePivoter = new Pivoter();
+        Pivoter mapPivoter = new Pivoter();
+
+        // when
+        filePivoter.pivot(file, ',', "amount");
+        mapPivoter.pivot(List.of(
+                Map.of("nation", "italy", "eyes", "brown", "hair", "dark", "#", "10.0"),
+                Map.of("nation", "italy", "eyes", "blue", "hair", "blonde, long", "#", "20"),
+                Map.of("nation", "spain", "eyes", "blue", "hair", "dark", "#", "-30.5")
+        ), List.of("nation", "eyes", "hair"));
+
+        // then
+        assertThat(filePivoter.getPivotTree().toString()).isEqualTo(mapPivoter.getPivotTree().toString());
+        assertThat(filePivoter.query(List.of("italy"), PivoterUtils::sum)).isEqualTo(30.0);
+        assertThat(filePivoter.query(List.of("spain"), PivoterUtils::sum)).isEqualTo(-30.5);
+        assertThat(filePivoter.getPivotTree().getRoot().getChild("italy").getChild("blue").getChild("blonde, long")).isNotNull();
+    }
+
+    @Test
+    void testPivotTsv_usesTheHierarchyAndIgnoresOtherColumns() throws IOException {
+        // given
+        Path file = directory.resolve("people.tsv");
+        Files.writeString(file, "id\tnation\teyes\tvalue\n1\titaly\tbrown\t10\n2\titaly\tblue\t20\n3\tspain\tblue\t30\n");
+        Pivoter pivoter = new Pivoter();
+        pivoter.setAggregations(List.of(Aggregations.SUM));
+
+        // when
+        pivoter.pivot(file, '\t', "value", List.of("eyes", "nation"));
+
+        // then
+        assertThat(pivoter.query(List.of("blue"), Aggregations.SUM)).isEqualTo(50.0);
+        assertThat(pivoter.query(List.of("brown"), Aggregations.SUM)).isEqualTo(10.0);
+        assertThat(pivoter.getPivotTree().getRoot().getChild("blue").getChild("spain")).isNotNull();
+
+        // when
+        pivoter.append(List.of(Map.of("eyes", "blue", "nation", "italy", "#", "5")));
+
+        // then
+        assertThat(pivoter.query(List.of("blue"), Aggregations.SUM)).isEqualTo(55.0);
+    }
+
+    @Test
+    void testPivot_readsTheValueColumnAsTheConfiguredMeasure() throws IOException {
+        // given
+        Path file = directory.resolve("sales.csv");
+        Files.writeString(file, "nation,revenue\nitaly,10\nspain,20\n");
+        Pivoter pivoter = new Pivoter();
+        pivoter.setMeasures(List.of("revenue"));
+        pivoter.setAggregations(List.of(Aggregations.SUM));
+
+        // when
+        pivoter.pivot(file, ',', "revenue");
+        pivoter.append(List.of(Map.of("nation", "italy", "revenue", "5")));
+
+        // then
+        assertThat(pivoter.getPivotTree().getMeasures()).containsExactly("revenue");
+        assertThat(pivoter.query(List.of("italy"), "revenue", Aggregations.SUM)).isEqualTo(15.0);
+
+        // when-then
+        pivoter.setMeasures(List.of("revenue", "units"));
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pivoter.pivot(file, ',', "revenue"))
+                .withMessageContaining("cannot be pivoted with measures [revenue, units]");
+        assertThat(pivoter.query(List.of("spain"), "revenue", Aggregations.SUM)).isEqualTo(20.0);
+    }
+
+    @Test
+    void testRead_handlesLinesAcrossMappedWindows() throws IOException {
+        // given
+        StringBuilder content = new StringBuilder("nation;eyes;#\n");
+        double sum = 0;
+        for (int row = 0; row < 500; row++) {
+            content.append("n").append(row % 7).append(";\"e").append(row % 5).append("\";").append(row).append(row % 2 == 0 ? "\n" : "\r\n");
+            sum += row;
+        }
+        Path file = directory.resolve("rows.csv");
+        Files.writeString(file, content);
+        Pivoter pivoter = new Pivoter();
+
+        // when
+        pivoter.pivot(file, new DelimitedFileReader(';', "#", null, 64));
+
+        // then
+        assertThat(pivoter.query(List.of(), PivoterUtils::sum)).isEqualTo(sum);
+        assertThat(pivoter.getPivotTree().getRoot().getChildCount()).isEqualTo(7);
+        assertThat(pivoter.getPivotTree().getRoot().getChild("n3").getChildCount()).isEqualTo(5);
+    }
+
+    @Test
+    void testPivot_throwsOnInvalidFiles() throws IOException {
+        // given
+        Pivoter pivoter = new Pivoter();
+        Path missingValueColumn = directory.resolve("1.csv");
+        Files.writeString(missingValueColumn, "nation,eyes\nitaly,brown\n");
+        Path invalidValue = directory.resolve("2.csv");
+        Files.writeString(invalidValue, "nation,#\nitaly,10\nspain,N/A\n");
+        Path missingField = directory.resolve("3.csv");
+        Files.writeString(missingField, "nation,eyes,#\nitaly,brown,10\nspain,20\n");
+        Path headerOnly = directory.resolve("4.csv");
+        Files.writeString(headerOnly, "nation,#\n");
+
+        // when-then
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pivoter.pivot(missingValueColumn, ',', "#"))
+                .withMessageContaining("does not contain the value column '#'");
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pivoter.pivot(invalidValue, ',', "#"))
+                .withMessage("Invalid numerical value for column '#' in line 3: 'N/A'. The value must be a valid Double.");
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pivoter.pivot(missingField, ',', "#"))
+                .withMessageContaining("Inconsistent number of fields in line 3.");
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pivoter.pivot(headerOnly, ',', "#"))
+                .withMessageContaining("dataRows cannot be null or empty.");
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pivoter.pivot(headerOnly, ',', "#", List.of("eyes")))
+                .withMessageContaining("is not consistent with the provided header.");
+    }
+}
@@ -0,0 +1,69 @@
+package org.pivoter;
+
+import org.junit.jupiter.api.Test;
+import org.pivoter.aggregation.Aggregations;
+import org.pivoter.utils.PivoterUtils;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class FrozenPivotTreeTest {
+
+    @Test
+    void testFreeze_answersTheSameQueriesAsTheMutableTree() {
+        // given
+        PivotTree pivotTree = new PivotTree(List.of(Aggregations.SUM, Aggregations.MAX), true);
+        List<PivotRow> pivotRows = new ArrayList<>();
+        for (int row = 0; row < 1000; row++)
+            pivotRows.add(new PivotRow(List.of("n" + row % 11, "e" + row % 7, "h" + row % 3), (double) row));
+        pivotTree.build(pivotRows);
+
+        // when
+        FrozenPivotTree frozenTree = pivotTree.freeze();
+
+        // then
+        assertThat(frozenTree.getNodeCount()).isEqualTo(1 + 11 + 77 + 231);
+        for (PivotRow pivotRow : pivotRows) {
+            for (int depth = 0; depth <= 3; depth++) {
+                List<String> queryLabels = pivotRow.getLabels().subList(0, depth);
+                assertThat(frozenTree.query(queryLabels, Aggregations.SUM)).isEqualTo(pivotTree.query(queryLabels, Aggregations.SUM));
+                assertThat(frozenTree.query(queryLabels, Aggregations.MAX)).isEqualTo(pivotTree.query(queryLabels, Aggregations.MAX));
+                assertThat(frozenTree.query(queryLabels, Aggregations.MEAN)).isEqualTo(pivotTree.query(queryLabels, Aggregations.MEAN));
+                assertThat(frozenTree.query(queryLabels, PivoterUtils::sum)).isEqualTo(pivotTree.query(queryLabels, PivoterUtils::sum));
+            }
+        }
+        assertThat(frozenTree.getRowCount(List.of("n3"))).isEqualTo(91L);
+    }
+
+    @Test
+    void testQuery_returnsZeroWhenQueryLabelsDoNotMatchAnyElement() {
+        // given
+        PivotTree pivotTree = new PivotTree(List.of(Aggregations.SUM), false);
+        pivotTree.build(List.of(new PivotRow(List.of("brown", "dark"), 10.0)));
+        FrozenPivotTree frozenTree = pivotTree.freeze();
+
+        // when-then
+        assertThat(frozenTree.query(List.of("blue"), Aggregations.SUM)).isEqualTo(0.0);
+        assertThat(frozenTree.query(List.of("dark"), Aggregations.SUM)).isEqualTo(0.0);
+        assertThat(frozenTree.query(List.of("brown", "dark", "italy"), Aggregations.SUM)).isEqualTo(0.0);
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> frozenTree.query(List.of("brown"), PivoterUtils::sum));
+    }
+
+    @Test
+    void testFreeze_isNotAffectedByLaterChanges() {
+        // given
+        PivotTree pivotTree = new PivotTree();
+        pivotTree.build(List.of(new PivotRow(List.of("brown", "dark"), 10.0)));
+        FrozenPivotTree frozenTree = pivotTree.freeze();
+
+        // when
+        pivotTree.build(List.of(new PivotRow(List.of("brown", "dark"), 20.0)));
+
+        // then
+        assertThat(frozenTree.query(List.of("brown"), PivoterUtils::sum)).isEqualTo(10.0);
+        assertThat(pivotTree.query(List.of("brown"), PivoterUtils::sum)).isEqualTo(30.0);
+    }
+}
@@ -0,0 +1,52 @@
+package org.pivoter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class HierarchyComparatorTest {
+
+    @Test
+    void testCompare_ordersLabelsByHierarchyWithValueLabelLast() {
+        // given
+        List<String> pivotHierarchy = new ArrayList<>(List.of("nation", "hair", "eyes"));
+        HierarchyComparator comparator = new HierarchyComparator(pivotHierarchy);
+        List<String> labels = new ArrayList<>(List.of("#", "eyes", "hair", "nation"));
+
+        // when
+        for (int sort = 0; sort < 1000; sort++)
+            labels.sort(comparator);
+
+        // then
+        assertThat(labels).containsExactly("nation", "hair", "eyes", "#");
+        assertThat(pivotHierarchy).containsExactly("nation", "hair", "eyes");
+    }
+
+    @Test
+    void testCompare_throwsOnLabelsOutsideTheHierarchy() {
+        // given
+        HierarchyComparator comparator = new HierarchyComparator(List.of("nation", "hair"));
+
+        // when-then
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> comparator.compare("nation", "eyes"))
+                .withMessageContaining("Invalid String: eyes");
+    }
+
+    @Test
+    void testLevelOrder_convertsDataRowsInHierarchyOrder() {
+        // given
+        LevelOrder levelOrder = LevelOrder.of(Set.of("eyes", "hair", "nation", "#"),
+                new HierarchyComparator(List.of("nation", "hair", "eyes")));
+
+        // when
+        PivotRow pivotRow = levelOrder.convert(Map.of("eyes", "brown", "hair", "dark", "nation", "italy", "#", "10.0"), 10.0);
+
+        // then
+        assertThat(pivotRow.getLabels()).containsExactly("italy", "dark", "brown");
+        assertThat(pivotRow.getValue()).isEqualTo(10.0);
+    }
+}
@@ -0,0 +1,46 @@
+package org.pivoter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IntChildMapTest {
+
+    @Test
+    void testPutGetRemove_behaveLikeAHashMap() {
+        // given
+        IntChildMap childMap = new IntChildMap();
+        Map<Integer, PivotTreeNode> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        // when
+        for (int operation = 0; operation < 20_000; operation++) {
+            int code = random.nextInt(300);
+            if (random.nextInt(3) == 0) {
+                childMap.remove(code);
+                expected.remove(code);
+            } else {
+                PivotTreeNode node = new PivotTreeNode("node" + code);
+                childMap.put(code, node);
+                expected.put(code, node);
+            }
+        }
+
+        // then
+        assertThat(childMap.size()).isEqualTo(expected.size());
+        for (int code = 0; code < 300; code++)
+            assertThat(childMap.get(code)).isSameAs(expected.get(code));
+
+        int iterated = 0;
+        for (int slot = 0; slot < childMap.capacity(); slot++) {
+            if (childMap.nodeAt(slot) == null) continue;
+            assertThat(childMap.nodeAt(slot)).isSameAs(expected.get(childMap.codeAt(slot)));
+            iterated++;
+        }
+        assertThat(iterated).isEqualTo(expected.size());
+    }
+}
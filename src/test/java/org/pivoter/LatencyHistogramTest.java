@@ -0,0 +1,38 @@
+package org.pivoter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testGetPercentile_boundsTheLatenciesWithinAFactorOfTwo() {
+        // given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // when
+        for (int latency = 1; latency <= 100; latency++)
+            histogram.record(latency * 1000L);
+
+        // then
+        assertThat(histogram.getCount()).isEqualTo(100L);
+        assertThat(histogram.getMean()).isEqualTo(50_500.0);
+        for (double percentile : new double[]{1, 50, 90, 99, 100}) {
+            long exact = (long) Math.ceil(percentile) * 1000L;
+            assertThat(histogram.getPercentile(percentile)).isBetween(exact, 2 * exact);
+        }
+    }
+
+    @Test
+    void testGetPercentile_isZeroWhenEmptyAndRejectsInvalidPercentiles() {
+        // given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // then
+        assertThat(histogram.getPercentile(99)).isEqualTo(0L);
+        assertThat(histogram.getMean()).isNaN();
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> histogram.getPercentile(101));
+    }
+}
@@ -0,0 +1,145 @@
+package org.pivoter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.pivoter.aggregation.Aggregations;
+import org.pivoter.utils.PivoterUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class MappedPivotTreeTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testOpen_answersTheSameQueriesAsTheFrozenTree() throws IOException {
+        // given
+        PivotTree pivotTree = new PivotTree(List.of(Aggregations.SUM, Aggregations.MAX), true);
+        List<PivotRow> pivotRows = new ArrayList<>();
+        for (int row = 0; row < 1000; row++)
+            pivotRows.add(new PivotRow(List.of("n" + row % 11, "è" + row % 7, "h" + row % 3), (double) row));
+        pivotTree.build(pivotRows);
+        FrozenPivotTree frozenTree = pivotTree.freeze();
+        Path path = directory.resolve("tree.pvt");
+
+        // when
+        frozenTree.write(path);
+        MappedPivotTree mappedTree = MappedPivotTree.open(path);
+
+        // then
+        assertThat(mappedTree.getNodeCount()).isEqualTo(frozenTree.getNodeCount());
+        assertThat(mappedTree.getAggregations()).containsExactly(Aggregations.SUM, Aggregations.MAX);
+        assertThat(mappedTree.isRetainingValues()).isTrue();
+        for (PivotRow pivotRow : pivotRows) {
+            for (int depth = 0; depth <= 3; depth++) {
+                List<String> queryLabels = pivotRow.getLabels().subList(0, depth);
+                assertThat(mappedTree.query(queryLabels, Aggregations.SUM)).isEqualTo(frozenTree.query(queryLabels, Aggregations.SUM));
+                assertThat(mappedTree.query(queryLabels, Aggregations.MAX)).isEqualTo(frozenTree.query(queryLabels, Aggregations.MAX));
+                assertThat(mappedTree.query(queryLabels, Aggregations.MEAN)).isEqualTo(frozenTree.query(queryLabels, Aggregations.MEAN));
+                assertThat(mappedTree.query(queryLabels, PivoterUtils::sum)).isEqualTo(frozenTree.query(queryLabels, PivoterUtils::sum));
+                assertThat(mappedTree.getRowCount(queryLabels)).isEqualTo(frozenTree.getRowCount(queryLabels));
+            }
+        }
+    }
+
+    @Test
+    void testOpen_readsFilesMappedInSeveralSegments() throws IOException {
+        // given
+        PivotTree pivotTree = new PivotTree(List.of(Aggregations.SUM, Aggregations.MAX), true);
+        List<PivotRow> pivotRows = new ArrayList<>();
+        for (int row = 0; row < 1000; row++)
+            pivotRows.add(new PivotRow(List.of("nation" + row % 11, "eyes" + row % 7), row / 3.0));
+        pivotTree.build(pivotRows);
+        FrozenPivotTree frozenTree = pivotTree.freeze();
+        Path path = directory.resolve("tree.pvt");
+        frozenTree.write(path);
+
+        for (int segmentSize : new int[]{13, 64, 4096}) {
+            // when, numbers and labels straddling the segments
+            MappedPivotTree mappedTree = MappedPivotTree.open(path, segmentSize);
+
+            // then
+            for (PivotRow pivotRow : pivotRows) {
+                for (int depth = 0; depth <= 2; depth++) {
+                    List<String> queryLabels = pivotRow.getLabels().subList(0, depth);
+                    assertThat(mappedTree.query(queryLabels, Aggregations.SUM)).isEqualTo(frozenTree.query(queryLabels, Aggregations.SUM));
+                    assertThat(mappedTree.query(queryLabels, Aggregations.MIN)).isEqualTo(frozenTree.query(queryLabels, Aggregations.MIN));
+                    assertThat(mappedTree.query(queryLabels, PivoterUtils::sum)).isEqualTo(frozenTree.query(queryLabels, PivoterUtils::sum));
+                    assertThat(mappedTree.getRowCount(queryLabels)).isEqualTo(frozenTree.getRowCount(queryLabels));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testQuery_scansValuesSpanningSeveralChunks() throws IOException {
+        // given
+        PivotTree pivotTree = new PivotTree(List.of(Aggregations.SUM), true);
+        List<PivotRow> pivotRows = new ArrayList<>();
+        for (int row = 0; row < 10_000; row++)
+            pivotRows.add(new PivotRow(List.of("n" + row % 2), (double) row));
+        pivotTree.build(pivotRows);
+        Path path = directory.resolve("tree.pvt");
+        pivotTree.freeze().write(path);
+
+        // when
+        MappedPivotTree mappedTree = MappedPivotTree.open(path);
+
+        // then
+        assertThat(mappedTree.query(List.of(), Aggregations.MEAN)).isEqualTo(4999.5);
+        assertThat(mappedTree.query(List.of(), Aggregations.MIN)).isEqualTo(0.0);
+        assertThat(mappedTree.query(List.of("n1"), Aggregations.MAX)).isEqualTo(9999.0);
+        assertThat(mappedTree.query(List.of("n1"), Aggregations.COUNT)).isEqualTo(5000.0);
+    }
+
+    @Test
+    void testQuery_returnsZeroWhenQueryLabelsDoNotMatchAnyElement() throws IOException {
+        // given
+        PivotTree pivotTree = new PivotTree(List.of(Aggregations.SUM), false);
+        pivotTree.build(List.of(new PivotRow(List.of("brown", "dark"), 10.0)));
+        Path path = directory.resolve("tree.pvt");
+        pivotTree.freeze().write(path);
+        MappedPivotTree mappedTree = MappedPivotTree.open(path);
+
+        // when-then
+        assertThat(mappedTree.query(List.of("brown"), Aggregations.SUM)).isEqualTo(10.0);
+        assertThat(mappedTree.query(List.of("blue"), Aggregations.SUM)).isEqualTo(0.0);
+        assertThat(mappedTree.query(List.of("brow"), Aggregations.SUM)).isEqualTo(0.0);
+        assertThat(mappedTree.query(List.of("dark"), Aggregations.SUM)).isEqualTo(0.0);
+        assertThat(mappedTree.query(List.of("brown", "dark", "italy"), Aggregations.SUM)).isEqualTo(0.0);
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> mappedTree.query(List.of("brown"), PivoterUtils::sum));
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> mappedTree.query(List.of("brown"), Aggregations.MIN));
+    }
+
+    @Test
+    void testWrite_throwsIllegalArgumentExceptionOnCustomAggregations() {
+        // given
+        PivotTree pivotTree = new PivotTree(List.of(Aggregations.SUM::newAccumulator), false);
+        pivotTree.build(List.of(new PivotRow(List.of("brown"), 10.0)));
+        FrozenPivotTree frozenTree = pivotTree.freeze();
+
+        // when-then
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> frozenTree.write(directory.resolve("tree.pvt")));
+    }
+
+    @Test
+    void testOpen_throwsIllegalArgumentExceptionOnOtherFiles() throws IOException {
+        // given
+        Path path = directory.resolve("other.txt");
+        Files.writeString(path, "not a pivot tree");
+
+        // when-then
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> MappedPivotTree.open(path));
+    }
+}
@@ -0,0 +1,43 @@
+package org.pivoter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NodeMemoTest {
+
+    @Test
+    void testWith_evictsTheLeastRecentlyUsedResultOnceFull() {
+        // given
+        NodeMemo memo = NodeMemo.EMPTY;
+        for (int key = 0; key < NodeMemo.MAX_SIZE; key++)
+            memo = memo.with(key, "result" + key);
+
+        // when
+        memo.get(0); // 1 becomes the least recently used
+        NodeMemo next = memo.with(100, "result100");
+
+        // then
+        assertThat(next.size()).isEqualTo(NodeMemo.MAX_SIZE);
+        assertThat(next.getEvictionCount()).isEqualTo(1);
+        assertThat(next.get(0)).isEqualTo("result0");
+        assertThat(next.get(1)).isNull();
+        assertThat(next.get(100)).isEqualTo("result100");
+        assertThat(memo.get(1)).isEqualTo("result1"); // unchanged
+    }
+
+    @Test
+    void testWith_replacesTheResultOfTheSameKey() {
+        // given
+        NodeMemo memo = NodeMemo.EMPTY.with("mean", 1.0).with("sum", 2.0);
+
+        // when
+        NodeMemo next = memo.with("mean", 3.0);
+
+        // then
+        assertThat(next.size()).isEqualTo(2);
+        assertThat(next.getEvictionCount()).isEqualTo(0);
+        assertThat(next.get("mean")).isEqualTo(3.0);
+        assertThat(next.get("sum")).isEqualTo(2.0);
+    }
+}
@@ -1,9 +1,12 @@
 package org.pivoter;
 
 import org.junit.jupiter.api.Test;
+import org.pivoter.aggregation.Aggregation;
+import org.pivoter.aggregation.Aggregations;
 import org.pivoter.utils.PivoterUtils;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -30,14 +33,14 @@ class PivotTreeTest {
         // assert root label, value, children
         assertThat(root).isNotNull();
         assertThat(root.getLabel()).isEqualTo("root");
-        assertThat(root.getValues()).isEqualTo(List.of(valueRow1, valueRow2, valueRow3));
+        assertThat(root.getValues()).containsExactlyInAnyOrder(valueRow1, valueRow2, valueRow3);
         assertThat(root.getChildren()).isNotNull().isNotEmpty().hasSize(1);
         PivotTreeNode brown = root.getChild("brown");
         assertThat(brown).isNotNull();
 
         // assert brown label, value, children
         assertThat(brown.getLabel()).isEqualTo("brown");
-        assertThat(brown.getValues()).isEqualTo(List.of(valueRow1, valueRow2, valueRow3));
+        assertThat(brown.getValues()).containsExactlyInAnyOrder(valueRow1, valueRow2, valueRow3);
         assertThat(brown.getChildren()).isNotNull().isNotEmpty().hasSize(2);
         PivotTreeNode dark = brown.getChild("dark");
         assertThat(dark).isNotNull();
@@ -95,14 +98,14 @@ class PivotTreeTest {
         // assert root label, value, children
         assertThat(root).isNotNull();
         assertThat(root.getLabel()).isEqualTo("root");
-        assertThat(root.getValues()).isEqualTo(List.of(valueRow1, valueRow2, valueRow3));
+        assertThat(root.getValues()).containsExactlyInAnyOrder(valueRow1, valueRow2, valueRow3);
         assertThat(root.getChildren()).isNotNull().isNotEmpty().hasSize(1);
         PivotTreeNode brown = root.getChild("brown");
         assertThat(brown).isNotNull();
 
         // assert brown label, value, children
         assertThat(brown.getLabel()).isEqualTo("brown");
-        assertThat(brown.getValues()).isEqualTo(List.of(valueRow1, valueRow2, valueRow3));
+        assertThat(brown.getValues()).containsExactlyInAnyOrder(valueRow1, valueRow2, valueRow3);
         assertThat(brown.getChildren()).isNotNull().isNotEmpty().hasSize(2);
         PivotTreeNode dark = brown.getChild("dark");
         assertThat(dark).isNotNull();
@@ -336,6 +339,281 @@ class PivotTreeTest {
                 .isEqualTo(valueRow1);
     }
 
+    @Test
+    void testQuery_readsMaintainedAggregationsWithoutRetainingValues() {
+        // given
+        double valueRow1 = 10.0;
+        double valueRow2 = 20.0;
+        double valueRow3 = 30.0;
+
+        List<PivotRow> pivotRows = buildRowsWithNaturalOrderSortedLabels(valueRow1, valueRow2, valueRow3);
+
+        PivotTree preAggregatedTree = new PivotTree(Aggregations.all(), false);
+        preAggregatedTree.build(pivotRows);
+
+        // when-then
+        List<String> queryLabels = List.of("brown", "dark", "italy");
+        assertThat(preAggregatedTree.query(queryLabels, Aggregations.SUM)).isEqualTo(valueRow1 + valueRow3);
+        assertThat(preAggregatedTree.query(queryLabels, Aggregations.COUNT)).isEqualTo(2.0);
+        assertThat(preAggregatedTree.query(queryLabels, Aggregations.MIN)).isEqualTo(valueRow1);
+        assertThat(preAggregatedTree.query(queryLabels, Aggregations.MAX)).isEqualTo(valueRow3);
+        assertThat(preAggregatedTree.query(queryLabels, Aggregations.MEAN)).isEqualTo((valueRow1 + valueRow3) / 2);
+        assertThat(preAggregatedTree.query(queryLabels, Aggregations.VARIANCE)).isEqualTo(100.0);
+        assertThat(preAggregatedTree.query(List.of("blue"), Aggregations.SUM)).isEqualTo(0.0);
+        assertThat(preAggregatedTree.getRoot().getValues()).isEmpty();
+    }
+
+    @Test
+    void testQuery_computesNonMaintainedAggregationFromRetainedValues() {
+        // given
+        double valueRow1 = 10.0;
+        double valueRow2 = 20.0;
+        double valueRow3 = 30.0;
+
+        List<PivotRow> pivotRows = buildRowsWithNaturalOrderSortedLabels(valueRow1, valueRow2, valueRow3);
+
+        pivotTree.build(pivotRows);
+
+        // when
+        Double result = pivotTree.query(List.of("brown"), Aggregations.MAX);
+
+        // then
+        assertThat(result).isEqualTo(valueRow3);
+    }
+
+    @Test
+    void testQuery_throwsWhenValuesAreNotRetained() {
+        // given
+        List<PivotRow> pivotRows = buildRowsWithNaturalOrderSortedLabels(10.0, 20.0, 30.0);
+        PivotTree sumTree = new PivotTree(List.of(Aggregations.SUM), false);
+        sumTree.build(pivotRows);
+
+        Function<Collection<Double>, Double> mode = PivoterUtils::mode;
+        Aggregation max = Aggregations.MAX;
+
+        // when-then
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> sumTree.query(List.of("brown"), mode));
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> sumTree.query(List.of("brown"), max))
+                .withMessageContaining("is not maintained by this pivot tree");
+    }
+
+    @Test
+    void testBuild_keepsEachRawValueOnceInContiguousSubtreeRanges() {
+        // given
+        pivotTree.build(buildRowsWithNaturalOrderSortedLabels(10.0, 20.0, 30.0));
+
+        // when
+        pivotTree.build(buildRowsWithNaturalOrderSortedLabels(40.0, 50.0, 60.0));
+
+        // then
+        PivotTreeNode root = pivotTree.getRoot();
+        PivotTreeNode dark = root.getChild("brown").getChild("dark");
+        PivotTreeNode blonde = root.getChild("brown").getChild("blonde");
+
+        assertThat(root.getValues()).containsExactlyInAnyOrder(10.0, 20.0, 30.0, 40.0, 50.0, 60.0);
+        assertThat(dark.getValues()).containsExactly(10.0, 30.0, 40.0, 60.0);
+        assertThat(blonde.getValues()).containsExactly(20.0, 50.0);
+        assertThat(dark.getValues().doubleStream().sum()).isEqualTo(140.0);
+        assertThat(pivotTree.query(List.of("brown", "dark"), PivoterUtils::sum)).isEqualTo(140.0);
+    }
+
+    @Test
+    void testBuild_doesNotModifyPivotRowLabels() {
+        // given
+        List<PivotRow> pivotRows = buildRowsWithNaturalOrderSortedLabels(10.0, 20.0, 30.0);
+        List<String> labelsRow1 = List.copyOf(pivotRows.get(0).getLabels());
+
+        // when
+        pivotTree.build(pivotRows);
+        pivotTree.build(pivotRows);
+
+        // then
+        assertThat(pivotRows.get(0).getLabels()).isEqualTo(labelsRow1);
+        assertThat(pivotTree.query(List.of("brown", "dark", "italy"), PivoterUtils::sum)).isEqualTo(80.0);
+    }
+
+    @Test
+    void testBuildAndBuildRecursive_produceTheSameWideTree() {
+        // given
+        int depth = 24;
+        List<PivotRow> pivotRows = new ArrayList<>();
+        for (int row = 0; row < 100; row++) {
+            List<String> labels = new ArrayList<>();
+            for (int level = 0; level < depth; level++)
+                labels.add("L" + level + "-" + (row + level) % 3);
+            pivotRows.add(new PivotRow(labels, (double) row));
+        }
+        PivotTree recursiveTree = new PivotTree();
+
+        // when
+        pivotTree.build(pivotRows);
+        recursiveTree.buildRecursive(pivotRows);
+
+        // then
+        for (PivotRow pivotRow : pivotRows) {
+            for (int level = 0; level <= depth; level++) {
+                List<String> queryLabels = pivotRow.getLabels().subList(0, level);
+                assertThat(pivotTree.query(queryLabels, PivoterUtils::sum))
+                        .isEqualTo(recursiveTree.query(queryLabels, PivoterUtils::sum));
+            }
+        }
+        assertThat(pivotTree.query(Collections.emptyList(), PivoterUtils::sum)).isEqualTo(4950.0);
+    }
+
+    @Test
+    void testBuildParallel_producesTheSameAggregatesAsBuild() {
+        // given
+        List<PivotRow> pivotRows = new ArrayList<>();
+        for (int row = 0; row < 5 * PivotTree.PARALLEL_BUILD_THRESHOLD; row++)
+            pivotRows.add(new PivotRow(List.of("n" + row % 7, "e" + row % 5, "h" + row % 3), (double) row));
+
+        PivotTree parallelTree = new PivotTree(Aggregations.all(), true);
+        PivotTree sequentialTree = new PivotTree(Aggregations.all(), true);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+
+        // when
+        try {
+            parallelTree.build(pivotRows, forkJoinPool);
+        } finally {
+            forkJoinPool.shutdown();
+        }
+        sequentialTree.build(pivotRows);
+
+        // then
+        FrozenPivotTree frozenTree = parallelTree.freeze();
+        for (List<String> queryLabels : List.of(List.<String>of(), List.of("n3"), List.of("n3", "e1"), List.of("n3", "e1", "h2"))) {
+            assertThat(parallelTree.query(queryLabels, Aggregations.SUM)).isEqualTo(sequentialTree.query(queryLabels, Aggregations.SUM));
+            assertThat(parallelTree.query(queryLabels, Aggregations.COUNT)).isEqualTo(sequentialTree.query(queryLabels, Aggregations.COUNT));
+            assertThat(parallelTree.query(queryLabels, Aggregations.MIN)).isEqualTo(sequentialTree.query(queryLabels, Aggregations.MIN));
+            assertThat(parallelTree.query(queryLabels, PivoterUtils::mode)).isEqualTo(sequentialTree.query(queryLabels, PivoterUtils::mode));
+            assertThat(frozenTree.query(queryLabels, PivoterUtils::mode)).isEqualTo(sequentialTree.query(queryLabels, PivoterUtils::mode));
+        }
+        assertThat(parallelTree.getRoot().getValues()).hasSize(pivotRows.size());
+    }
+
+    @Test
+    void testMerge_isEquivalentToBuildingBothTreesRows() {
+        // given
+        PivotTree otherTree = new PivotTree();
+        pivotTree.build(buildRowsWithNaturalOrderSortedLabels(10.0, 20.0, 30.0));
+        otherTree.build(List.of(new PivotRow(List.of("blue", "dark", "spain"), 40.0)));
+        otherTree.build(buildRowsWithNaturalOrderSortedLabels(50.0, 60.0, 70.0));
+
+        // when
+        pivotTree.merge(otherTree);
+
+        // then
+        assertThat(pivotTree.query(Collections.emptyList(), PivoterUtils::sum)).isEqualTo(280.0);
+        assertThat(pivotTree.query(List.of("brown", "dark"), PivoterUtils::sum)).isEqualTo(160.0);
+        assertThat(pivotTree.query(List.of("blue", "dark", "spain"), PivoterUtils::sum)).isEqualTo(40.0);
+        assertThat(pivotTree.getRoot().getRowCount()).isEqualTo(7L);
+        assertThat(otherTree.query(Collections.emptyList(), PivoterUtils::sum)).isEqualTo(220.0);
+    }
+
+    @Test
+    void testMerge_throwsIfTreesMaintainDifferentAggregations() {
+        // given
+        PivotTree sumTree = new PivotTree(List.of(Aggregations.SUM), false);
+
+        // when-then
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pivotTree.merge(sumTree))
+                .withMessageContaining("Cannot merge a pivot tree");
+    }
+
+    @Test
+    void testNextVersion_leavesThePreviousVersionUnmodified() {
+        // given
+        pivotTree.build(buildRowsWithNaturalOrderSortedLabels(10.0, 20.0, 30.0));
+        PivotTreeNode blonde = pivotTree.getRoot().getChild("brown").getChild("blonde");
+
+        // when
+        PivotTree nextVersion = pivotTree.nextVersion();
+        nextVersion.build(List.of(new PivotRow(List.of("brown", "dark", "spain"), 40.0)));
+
+        // then
+        assertThat(pivotTree.query(Collections.emptyList(), PivoterUtils::sum)).isEqualTo(60.0);
+        assertThat(pivotTree.getRoot().getValues()).containsExactlyInAnyOrder(10.0, 20.0, 30.0);
+        assertThat(pivotTree.query(List.of("brown", "dark", "spain"), PivoterUtils::sum)).isEqualTo(0.0);
+        assertThat(blonde.getValues()).containsExactly(20.0);
+
+        assertThat(nextVersion.query(Collections.emptyList(), PivoterUtils::sum)).isEqualTo(100.0);
+        assertThat(nextVersion.query(List.of("brown", "dark"), PivoterUtils::sum)).isEqualTo(80.0);
+        assertThat(nextVersion.getRoot().getValues()).containsExactlyInAnyOrder(10.0, 20.0, 30.0, 40.0);
+    }
+
+    @Test
+    void testNextVersion_copiesOnlyThePathsOfASmallDeltaToRetainItsValues() {
+        // given
+        List<PivotRow> pivotRows = new ArrayList<>();
+        for (int i = 0; i < 40; i++)
+            pivotRows.add(new PivotRow(List.of("country" + i % 4, "city" + i), (double) i));
+        pivotTree.build(pivotRows);
+        PivotTreeNode country1 = pivotTree.getRoot().getChild("country1");
+
+        // when
+        PivotTree nextVersion = pivotTree.nextVersion();
+        nextVersion.build(List.of(new PivotRow(List.of("country0", "city0"), 100.0)));
+        nextVersion.retract(List.of(new PivotRow(List.of("country2", "city2"), 2.0)));
+
+        // then
+        assertThat(nextVersion.getRoot().isValuesChanged()).isTrue(); // not laid out again for 2 changes out of 40
+        assertThat(nextVersion.getRoot().getChild("country1")).isSameAs(country1);
+        assertThat(nextVersion.getRoot().getValues()).hasSize(40).contains(100.0).doesNotContain(2.0);
+        assertThat(nextVersion.getRoot().getChild("country0").getChild("city0").getValues()).containsExactly(0.0, 100.0);
+        assertThat(nextVersion.query(List.of("country0"), PivoterUtils::sum)).isEqualTo(280.0);
+        assertThat(nextVersion.query(List.of("country2"), PivoterUtils::sum)).isEqualTo(198.0);
+        assertThat(nextVersion.query(List.of("country1"), PivoterUtils::sum)).isEqualTo(190.0);
+        assertThat(nextVersion.freeze().query(List.of("country0"), PivoterUtils::sum)).isEqualTo(280.0);
+        assertThat(nextVersion.freeze().query(List.of("country2", "city6"), PivoterUtils::sum)).isEqualTo(6.0);
+        assertThat(pivotTree.query(List.of("country0"), PivoterUtils::sum)).isEqualTo(180.0);
+    }
+
+    @Test
+    void testNextVersion_laysValuesOutAgainOnceEnoughOfThemChanged() {
+        // given
+        List<PivotRow> pivotRows = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            pivotRows.add(new PivotRow(List.of("country" + i % 2, "city" + i), (double) i));
+        pivotTree.build(pivotRows);
+
+        // when
+        PivotTree nextVersion = pivotTree.nextVersion();
+        nextVersion.build(List.of(new PivotRow(List.of("country0", "city0"), 100.0)));
+        PivotTree lastVersion = nextVersion.nextVersion();
+        lastVersion.build(List.of(new PivotRow(List.of("country1", "city1"), 200.0)));
+
+        // then
+        assertThat(nextVersion.getRoot().isValuesChanged()).isTrue(); // 1 change out of 9 values
+        assertThat(lastVersion.getRoot().isValuesChanged()).isFalse(); // 2 out of 10, above 1/8
+        assertThat(lastVersion.getRoot().getChild("country0")).isNotSameAs(nextVersion.getRoot().getChild("country0"));
+        assertThat(lastVersion.getRoot().getValues()).hasSize(10).contains(100.0, 200.0);
+        assertThat(lastVersion.query(List.of("country1", "city1"), PivoterUtils::sum)).isEqualTo(201.0);
+        assertThat(nextVersion.query(List.of("country1", "city1"), PivoterUtils::sum)).isEqualTo(1.0);
+    }
+
+    @Test
+    void testBuild_sharesOneInstanceOfEachLabelPerLevel() {
+        // given
+        List<PivotRow> pivotRows = List.of(
+                new PivotRow(List.of(new String("brown"), new String("dark")), 10.0),
+                new PivotRow(List.of(new String("brown"), new String("blonde")), 20.0),
+                new PivotRow(List.of(new String("blue"), new String("dark")), 30.0)
+        );
+
+        // when
+        pivotTree.build(pivotRows);
+
+        // then
+        PivotTreeNode brownDark = pivotTree.getRoot().getChild("brown").getChild("dark");
+        PivotTreeNode blueDark = pivotTree.getRoot().getChild("blue").getChild("dark");
+        assertThat(brownDark.getLabel()).isSameAs(blueDark.getLabel());
+        assertThat(pivotTree.getRoot().getChild("brown").getChildren()).containsOnlyKeys("dark", "blonde");
+        assertThat(pivotTree.getRoot().getChild("blue").getChild("blonde")).isNull();
+    }
+
     private List<PivotRow> buildRowsWithNaturalOrderSortedLabels(double valueRow1, double valueRow2, double valueRow3) {
         List<List<String>> labelsRow1 = Arrays.asList(
                 List.of("eyes", "brown"),
@@ -369,4 +647,165 @@ class PivotTreeTest {
 
         return new PivotRow(labels, value);
     }
+
+    @Test
+    void testMultipleMeasures_areMergedAndRetractedTogether() {
+        // given
+        List<String> measures = List.of("revenue", "units");
+        PivotTree pivotTree = new PivotTree(measures, List.of(Aggregations.SUM, Aggregations.COUNT), false);
+        PivotTree other = new PivotTree(measures, List.of(Aggregations.SUM, Aggregations.COUNT), false);
+        PivotRow row1 = new PivotRow(List.of("italy", "wine"), new double[]{250.0, 5.0});
+        PivotRow row2 = new PivotRow(List.of("italy", "pasta"), new double[]{100.0, 10.0});
+        PivotRow row3 = new PivotRow(List.of("spain", "wine"), new double[]{120.0, 3.0});
+        pivotTree.build(List.of(row1, row2));
+        other.build(List.of(row3));
+
+        // when
+        pivotTree.merge(other);
+        pivotTree.retract(List.of(row2));
+
+        // then
+        double[][] results = pivotTree.query(List.of(), measures, List.of(Aggregations.SUM, Aggregations.COUNT));
+        assertThat(results[0][0]).isEqualTo(370.0);
+        assertThat(results[0][1]).isEqualTo(2.0);
+        assertThat(results[1][0]).isEqualTo(8.0);
+        assertThat(pivotTree.query(List.of("italy", "wine"), "units", Aggregations.SUM)).isEqualTo(5.0);
+        assertThat(pivotTree.getRoot().getChild("italy").getChild("pasta")).isNull();
+        assertThat(pivotTree.freeze().query(List.of("spain"), "units", Aggregations.SUM)).isEqualTo(3.0);
+    }
+
+    @Test
+    void testMultipleMeasures_throwsIfRawValuesAreRetained() {
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> new PivotTree(List.of("revenue", "units"), List.of(Aggregations.SUM), true))
+                .withMessageContaining("single measure");
+    }
+
+    @Test
+    void testQuerySlice_aggregatesAllTheSubtreesMatchingAnyLevels() {
+        // given
+        PivotTree pivotTree = new PivotTree(List.of(Aggregations.SUM, Aggregations.MAX), true);
+        List<PivotRow> pivotRows = new ArrayList<>();
+        for (int row = 0; row < 1000; row++)
+            pivotRows.add(new PivotRow(List.of("n" + row % 11, "e" + row % 7, "h" + row % 3), (double) row));
+        pivotTree.build(pivotRows);
+
+        List<List<String>> slices = List.of(
+                Arrays.asList(null, null, "h1"),
+                Arrays.asList("n4", null, "h2"),
+                Arrays.asList(null, "e3"),
+                Arrays.asList(null, "e3", "h0"),
+                Arrays.asList("n4", "e3", null),
+                Arrays.asList(null, null, null),
+                Arrays.asList(null, null, "h9"));
+
+        for (List<String> slice : slices) {
+            // when
+            Double sum = pivotTree.querySlice(slice, Aggregations.SUM);
+            Double max = pivotTree.querySlice(slice, Aggregations.MAX);
+            Double count = pivotTree.querySlice(slice, Aggregations.COUNT); // not maintained
+            Double total = pivotTree.querySlice(slice, PivoterUtils::sum);
+
+            // then
+            List<Double> expected = new ArrayList<>();
+            for (PivotRow pivotRow : pivotRows) {
+                boolean matches = true;
+                for (int level = 0; level < slice.size(); level++)
+                    matches &= slice.get(level) == null || slice.get(level).equals(pivotRow.getLabels().get(level));
+                if (matches) expected.add(pivotRow.getValue());
+            }
+            assertThat(sum).isEqualTo(expected.isEmpty() ? 0.0 : PivoterUtils.sum(expected));
+            assertThat(total).isEqualTo(expected.isEmpty() ? 0.0 : PivoterUtils.sum(expected));
+            assertThat(count).isEqualTo(expected.isEmpty() ? 0.0 : (double) expected.size());
+            if (!expected.isEmpty())
+                assertThat(max).isEqualTo(Collections.max(expected));
+        }
+    }
+
+    @Test
+    void testQuerySlice_reflectsLaterInsertions() {
+        // given
+        PivotTree pivotTree = new PivotTree(List.of(Aggregations.SUM), false);
+        pivotTree.build(List.of(new PivotRow(List.of("italy", "red"), 10.0)));
+        assertThat(pivotTree.querySlice(Arrays.asList(null, "red"), Aggregations.SUM)).isEqualTo(10.0);
+
+        // when
+        pivotTree.build(List.of(new PivotRow(List.of("spain", "red"), 5.0)));
+
+        // then
+        assertThat(pivotTree.querySlice(Arrays.asList(null, "red"), Aggregations.SUM)).isEqualTo(15.0);
+    }
+
+    @Test
+    void testQueryBatch_answersEachPathAsASingleQuery() {
+        // given
+        PivotTree pivotTree = new PivotTree(List.of(Aggregations.SUM), true);
+        List<PivotRow> pivotRows = new ArrayList<>();
+        for (int row = 0; row < 500; row++)
+            pivotRows.add(new PivotRow(List.of("n" + row % 5, "e" + row % 4, "h" + row % 3), (double) row));
+        pivotTree.build(pivotRows);
+
+        List<List<String>> queryPaths = new ArrayList<>();
+        for (PivotRow pivotRow : pivotRows.subList(0, 60))
+            for (int depth = 0; depth <= 3; depth++)
+                queryPaths.add(pivotRow.getLabels().subList(0, depth));
+        queryPaths.add(List.of("n9"));
+        queryPaths.add(List.of("n1", "e9", "h0"));
+
+        // when
+        double[] sums = pivotTree.queryBatch(queryPaths, Aggregations.SUM);
+        double[] means = pivotTree.queryBatch(queryPaths, Aggregations.MEAN); // computed from raw values
+
+        // then
+        assertThat(sums.length).isEqualTo(queryPaths.size());
+        for (int query = 0; query < queryPaths.size(); query++) {
+            assertThat(sums[query]).isEqualTo(pivotTree.query(queryPaths.get(query), Aggregations.SUM));
+            assertThat(means[query]).isEqualTo(pivotTree.query(queryPaths.get(query), Aggregations.MEAN));
+        }
+    }
+
+    @Test
+    void testCursor_streamsDetailRowsThenSubtotalsInSortedLabelOrder() {
+        // given
+        PivotTree pivotTree = new PivotTree(List.of(Aggregations.SUM), false);
+        pivotTree.build(List.of(
+                new PivotRow(List.of("France", "Green", "Blonde"), 3.0),
+                new PivotRow(List.of("France", "Blue", "Black"), 1.0),
+                new PivotRow(List.of("Belgium", "Blue", "Black"), 5.0),
+                new PivotRow(List.of("France", "Green", "Black"), 2.0)));
+
+        // when
+        PivotTableCursor cursor = pivotTree.cursor(Aggregations.SUM);
+        List<String> rows = new ArrayList<>();
+        while (cursor.next())
+            rows.add(cursor.getLabels() + (cursor.isTotal() ? " Total " : " ") + cursor.getLevel() + " " + cursor.getValue());
+
+        // then
+        assertThat(rows).containsExactly(
+                "[Belgium, Blue, Black] 3 5.0",
+                "[Belgium, Blue] Total 2 5.0",
+                "[Belgium] Total 1 5.0",
+                "[France, Blue, Black] 3 1.0",
+                "[France, Blue] Total 2 1.0",
+                "[France, Green, Black] 3 2.0",
+                "[France, Green, Blonde] 3 3.0",
+                "[France, Green] Total 2 5.0",
+                "[France] Total 1 6.0",
+                "[] Total 0 11.0");
+        assertThat(cursor.next()).isFalse();
+    }
+
+    @Test
+    void testCursor_isEmptyForAnEmptyTreeAndRejectsUnavailableAggregations() {
+        // given
+        PivotTree pivotTree = new PivotTree(List.of(Aggregations.SUM), false);
+
+        // when
+        PivotTableCursor cursor = pivotTree.cursor(Aggregations.SUM);
+
+        // then
+        assertThat(cursor.next()).isFalse();
+        assertThatExceptionOfType(IllegalStateException.class).isThrownBy(cursor::getValue);
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> pivotTree.cursor(Aggregations.MEAN));
+    }
 }
@@ -1,9 +1,14 @@
 package org.pivoter;
 
 import org.junit.jupiter.api.Test;
+import org.pivoter.aggregation.Aggregations;
 import org.pivoter.utils.PivoterUtils;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
@@ -458,4 +463,628 @@ class PivoterTest {
         // then
         assertThat(result2).isNotNull().isEqualTo((dataRowValue2 + dataRowValue3) / 2);
     }
+
+    @Test
+    void testPivotAndQuery_preAggregatedWithCustomHierarchy() {
+        // given
+        Double dataRowValue1 = 10.0;
+        Double dataRowValue2 = 20.0;
+        Double dataRowValue3 = 30.0;
+
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("eyes", "brown", "hair", "dark", "nation", "italy", "#", dataRowValue1.toString()),
+                Map.of("eyes", "blue", "hair", "blonde", "nation", "italy", "#", dataRowValue2.toString()),
+                Map.of("eyes", "blue", "hair", "dark", "nation", "italy", "#", dataRowValue3.toString())
+        );
+
+        List<String> pivotHierarchy = List.of("hair", "eyes", "nation");
+
+        pivoter.setAggregations(List.of(Aggregations.SUM, Aggregations.MEAN));
+        pivoter.setRetainValues(false);
+
+        // when
+        pivoter.pivot(dataRows, pivotHierarchy);
+
+        Double sum = pivoter.query(List.of("dark"), Aggregations.SUM);
+        Double mean = pivoter.query(List.of("dark"), Aggregations.MEAN);
+
+        // then
+        assertThat(sum).isNotNull().isEqualTo(dataRowValue1 + dataRowValue3);
+        assertThat(mean).isNotNull().isEqualTo((dataRowValue1 + dataRowValue3) / 2);
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> pivoter.query(List.of("dark"), PivoterUtils::sum));
+    }
+
+    @Test
+    void testPivotIteratorAndQuery_sumWithCustomHierarchy() {
+        // given
+        Double dataRowValue1 = 10.0;
+        Double dataRowValue2 = 20.0;
+        Double dataRowValue3 = 30.0;
+
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("eyes", "brown", "hair", "dark", "nation", "italy", "#", dataRowValue1.toString()),
+                Map.of("eyes", "blue", "hair", "blonde", "nation", "italy", "#", dataRowValue2.toString()),
+                Map.of("eyes", "blue", "hair", "dark", "nation", "italy", "#", dataRowValue3.toString())
+        );
+
+        List<String> pivotHierarchy = List.of("hair", "eyes", "nation");
+
+        // when
+        pivoter.pivot(dataRows.stream().iterator(), pivotHierarchy);
+
+        Double result = pivoter.query(List.of("dark"), PivoterUtils::sum);
+
+        // then
+        assertThat(result).isNotNull().isEqualTo(dataRowValue1 + dataRowValue3);
+    }
+
+    @Test
+    void testPivotTreeBuilder_validatesEachAcceptedRow() {
+        // given
+        Double dataRowValue1 = 10.0;
+
+        PivotTreeBuilder builder = pivoter.newPivotTreeBuilder();
+        builder.accept(Map.of("eyes", "brown", "hair", "dark", "nation", "italy", "#", dataRowValue1.toString()));
+
+        // when-then
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> builder.accept(Map.of("eyes", "brown", "hair", "dark", "#", "20.0")))
+                .withMessageContaining("Inconsistent number of labels in dataRow. Expected 4 labels, but found 3:");
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> builder.accept(Map.of("eyes", "brown", "hair", "dark", "nation", "italy", "#", "M")))
+                .withMessage("Invalid numerical value for label '#': 'M'. The value must be a valid Double.");
+
+        // when
+        builder.build();
+
+        // then
+        assertThat(builder.getRowCount()).isEqualTo(1L);
+        assertThat(pivoter.query(List.of("brown"), PivoterUtils::sum)).isEqualTo(dataRowValue1);
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> builder.accept(Map.of("eyes", "brown", "hair", "dark", "nation", "italy", "#", "1")));
+    }
+
+    @Test
+    void testPivotIterator_throwsIfDataRowsAreEmpty() {
+        // given-when-then
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pivoter.pivot(Collections.<Map<String, String>>emptyIterator()))
+                .withMessage("dataRows cannot be null or empty. Ensure that you provide a valid list of dataRows.");
+    }
+
+    @Test
+    void testAppendAndRetract_publishNewVersionsOfThePivotTree() {
+        // given
+        Double dataRowValue1 = 10.0;
+        Double dataRowValue2 = 20.0;
+        Double dataRowValue3 = 30.0;
+
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("eyes", "brown", "hair", "dark", "nation", "italy", "#", dataRowValue1.toString()),
+                Map.of("eyes", "blue", "hair", "blonde", "nation", "italy", "#", dataRowValue2.toString())
+        );
+        List<Map<String, String>> delta = List.of(
+                Map.of("eyes", "blue", "hair", "dark", "nation", "italy", "#", dataRowValue3.toString())
+        );
+
+        pivoter.setAggregations(List.of(Aggregations.SUM, Aggregations.COUNT));
+        pivoter.pivot(dataRows, List.of("hair", "eyes", "nation"));
+        PivotTree pivotTree = pivoter.getPivotTree();
+
+        // when
+        pivoter.append(delta);
+
+        // then
+        assertThat(pivoter.getPivotTree()).isNotSameAs(pivotTree);
+        assertThat(pivotTree.query(List.of("dark"), Aggregations.SUM)).isEqualTo(dataRowValue1);
+        assertThat(pivoter.query(List.of("dark"), Aggregations.SUM)).isEqualTo(dataRowValue1 + dataRowValue3);
+        assertThat(pivoter.query(List.of("dark"), PivoterUtils::average)).isEqualTo((dataRowValue1 + dataRowValue3) / 2);
+
+        // when
+        pivoter.retract(List.of(dataRows.get(0)));
+
+        // then
+        assertThat(pivoter.query(List.of("dark"), Aggregations.SUM)).isEqualTo(dataRowValue3);
+        assertThat(pivoter.query(List.of("dark"), PivoterUtils::sum)).isEqualTo(dataRowValue3);
+        assertThat(pivoter.query(Collections.emptyList(), Aggregations.COUNT)).isEqualTo(2.0);
+        assertThat(pivoter.getPivotTree().getRoot().getChild("dark").getChild("brown")).isNull();
+
+        // when-then
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pivoter.retract(List.of(dataRows.get(0))))
+                .withMessageContaining("Cannot retract a row that is not in the pivot tree");
+    }
+
+    @Test
+    void testRetract_checksTheValuesOfTheRowsOnlyWhenRawValuesAreRetained() {
+        // given
+        List<Map<String, String>> dataRows = List.of(
+                Map.of("eyes", "brown", "hair", "dark", "#", "10.0"),
+                Map.of("eyes", "blue", "hair", "dark", "#", "20.0")
+        );
+        List<Map<String, String>> neverPivoted = List.of(Map.of("eyes", "brown", "hair", "dark", "#", "99.0"));
+        List<Map<String, String>> unknownPath = List.of(Map.of("eyes", "green", "hair", "dark", "#", "10.0"));
+        pivoter.setAggregations(List.of(Aggregations.SUM, Aggregations.COUNT));
+        pivoter.pivot(dataRows);
+        Pivoter aggregatingPivoter = new Pivoter();
+        aggregatingPivoter.setAggregations(List.of(Aggregations.SUM, Aggregations.COUNT));
+        aggregatingPivoter.setRetainValues(false);
+        aggregatingPivoter.pivot(dataRows);
+
+        // when-then
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pivoter.retract(neverPivoted))
+                .withMessageContaining("Cannot retract a row that is not in the pivot tree");
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> aggregatingPivoter.retract(unknownPath))
+                .withMessageContaining("Cannot retract a row that is not in the pivot tree");
+        assertThat(pivoter.query(List.of("brown"), Aggregations.SUM)).isEqualTo(10.0);
+
+        // when, the value cannot be checked without retained values
+        aggregatingPivoter.retract(neverPivoted);
+
+        // then
+        assertThat(aggregatingPivoter.query(Collections.emptyList(), Aggregations.SUM)).isEqualTo(-69.0);
+        assertThat(aggregatingPivoter.query(Collections.emptyList(), Aggregations.COUNT)).isEqualTo(1.0);
+        assertThat(aggregatingPivoter.getPivotTree().getRoot().getChild("brown")).isNull(); // pruned, its row being retracted
+    }
+
+    @Test
+    void testRetract_throwsIfAnAggregationDoesNotSupportRemoval() {
+        // given
+        List<Map<String, String>> dataRows = List.of(
+                Map.of("eyes", "brown", "hair", "dark", "nation", "italy", "#", "10.0")
+        );
+        pivoter.setAggregations(List.of(Aggregations.SUM, Aggregations.MAX));
+        pivoter.pivot(dataRows);
+
+        // when-then
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> pivoter.retract(dataRows))
+                .withMessageContaining("support removal");
+    }
+
+    @Test
+    void testAppend_throwsIfNothingHasBeenPivoted() {
+        // given-when-then
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> pivoter.append(List.of(Map.of("eyes", "brown", "#", "10.0"))))
+                .withMessage("No dataRows have been pivoted yet.");
+    }
+
+    @Test
+    void testConcurrentQueriesDuringAppends_readConsistentSnapshots() throws Exception {
+        // given
+        int batchSize = 50;
+        int batches = 200;
+        int readers = 4;
+        List<String> nations = List.of("italy", "spain", "france");
+
+        pivoter.setAggregations(List.of(Aggregations.SUM, Aggregations.COUNT));
+        pivoter.setRetainValues(false);
+        pivoter.pivot(List.of(Map.of("eyes", "blue", "nation", "italy", "#", "1")), List.of("nation", "eyes"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(readers);
+        AtomicReference<String> inconsistency = new AtomicReference<>();
+        CountDownLatch writerDone = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // when
+        for (int reader = 0; reader < readers; reader++) {
+            futures.add(executor.submit(() -> {
+                double previousTotal = 0.0;
+                while (writerDone.getCount() > 0 && inconsistency.get() == null) {
+                    PivotTree snapshot = pivoter.getPivotTree();
+                    double total = snapshot.query(Collections.emptyList(), Aggregations.SUM);
+                    double count = snapshot.query(Collections.emptyList(), Aggregations.COUNT);
+                    double childrenTotal = 0.0;
+                    for (String nation : nations)
+                        childrenTotal += snapshot.query(List.of(nation), Aggregations.SUM);
+
+                    if (total != count || total != childrenTotal || (total - 1) % batchSize != 0 || total < previousTotal)
+                        inconsistency.set(String.format("total=%s count=%s childrenTotal=%s previousTotal=%s",
+                                total, count, childrenTotal, previousTotal));
+                    previousTotal = total;
+                }
+            }));
+        }
+
+        for (int batch = 0; batch < batches; batch++) {
+            List<Map<String, String>> delta = new ArrayList<>();
+            for (int row = 0; row < batchSize; row++)
+                delta.add(Map.of("eyes", row % 2 == 0 ? "blue" : "green", "nation", nations.get(row % 3), "#", "1"));
+            pivoter.append(delta);
+        }
+        writerDone.countDown();
+
+        for (Future<?> future : futures)
+            future.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // then
+        assertThat(inconsistency.get()).isNull();
+        assertThat(pivoter.query(Collections.emptyList(), Aggregations.SUM)).isEqualTo(1.0 + batchSize * batches);
+    }
+
+    @Test
+    void testPivotAndQuery_multipleMeasuresWithASingleTree() {
+        // given
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("nation", "italy", "product", "pasta", "revenue", "100.0", "units", "10", "cost", "60.0"),
+                Map.of("nation", "italy", "product", "wine", "revenue", "250.0", "units", "5", "cost", "90.0"),
+                Map.of("nation", "spain", "product", "wine", "revenue", "120.0", "units", "3", "cost", "40.0")
+        );
+        pivoter.setMeasures(List.of("revenue", "units", "cost"));
+        pivoter.setAggregations(List.of(Aggregations.SUM, Aggregations.MAX));
+        pivoter.setRetainValues(false);
+
+        // when
+        pivoter.pivot(dataRows, List.of("nation", "product"));
+        double[][] results = pivoter.query(List.of("italy"), List.of("revenue", "cost"), List.of(Aggregations.SUM, Aggregations.MAX));
+
+        // then
+        assertThat(pivoter.getPivotTree().getMeasures()).containsExactly("revenue", "units", "cost");
+        assertThat(results[0][0]).isEqualTo(350.0);
+        assertThat(results[0][1]).isEqualTo(250.0);
+        assertThat(results[1][0]).isEqualTo(150.0);
+        assertThat(results[1][1]).isEqualTo(90.0);
+        assertThat(pivoter.query(List.of(), "units", Aggregations.SUM)).isEqualTo(18.0);
+        assertThat(pivoter.query(List.of("spain"), Aggregations.SUM)).isEqualTo(120.0); // first measure
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pivoter.query(List.of("italy"), "margin", Aggregations.SUM))
+                .withMessageContaining("Unknown measure 'margin'");
+    }
+
+    @Test
+    void testPivot_throwsIfAMeasureIsMissingOrInvalid() {
+        // given
+        pivoter.setMeasures(List.of("revenue", "units"));
+        pivoter.setRetainValues(false);
+        List<Map<String, String>> missingMeasure = List.of(Map.of("nation", "italy", "revenue", "100.0"));
+        List<Map<String, String>> invalidMeasure = List.of(Map.of("nation", "italy", "revenue", "100.0", "units", "ten"));
+
+        // when-then
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pivoter.pivot(missingMeasure))
+                .withMessage("Each dataRow must contain a label 'units' for the numerical value.");
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pivoter.pivot(invalidMeasure))
+                .withMessage("Invalid numerical value for label 'units': 'ten'. The value must be a valid Double.");
+    }
+
+    @Test
+    void testQuerySlice_totalForALabelAcrossAllOtherLevels() {
+        // given
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("nation", "germany", "eyes", "green", "hair", "red", "#", "536"),
+                Map.of("nation", "germany", "eyes", "brown", "hair", "red", "#", "753"),
+                Map.of("nation", "spain", "eyes", "brown", "hair", "red", "#", "778"),
+                Map.of("nation", "spain", "eyes", "dark", "hair", "black", "#", "907")
+        );
+        pivoter.setAggregations(List.of(Aggregations.SUM));
+        pivoter.pivot(dataRows, List.of("nation", "eyes", "hair"));
+
+        // when
+        Double red = pivoter.querySlice(Map.of("hair", "red"), Aggregations.SUM);
+        Double brownRed = pivoter.querySlice(Map.of("eyes", "brown", "hair", "red"), PivoterUtils::sum);
+
+        // then
+        assertThat(red).isEqualTo(536.0 + 753.0 + 778.0);
+        assertThat(brownRed).isEqualTo(753.0 + 778.0);
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pivoter.querySlice(Map.of("height", "tall"), Aggregations.SUM))
+                .withMessageContaining("is not a level of the pivot tree");
+    }
+
+    @Test
+    void testQueryBatch_sortsTheLabelsOfEachQuery() {
+        // given
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("eyes", "brown", "hair", "dark", "#", "10.0"),
+                Map.of("eyes", "blue", "hair", "dark", "#", "20.0"),
+                Map.of("eyes", "blue", "hair", "blonde", "#", "30.0")
+        );
+        pivoter.setAggregations(List.of(Aggregations.SUM));
+        pivoter.pivot(dataRows);
+
+        // when
+        double[] results = pivoter.queryBatch(List.of(
+                List.of("blue"), List.of("dark", "blue"), List.of(), List.of("brown", "dark"), List.of("green")), Aggregations.SUM);
+
+        // then
+        assertThat(results[0]).isEqualTo(50.0);
+        assertThat(results[1]).isEqualTo(20.0);
+        assertThat(results[2]).isEqualTo(60.0);
+        assertThat(results[3]).isEqualTo(10.0);
+        assertThat(results[4]).isEqualTo(0.0);
+    }
+
+    @Test
+    void testCursor_streamsThePivotTableOfTheCurrentTree() {
+        // given
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("eyes", "brown", "hair", "dark", "#", "10.0"),
+                Map.of("eyes", "blue", "hair", "dark", "#", "20.0")
+        );
+        pivoter.setAggregations(List.of(Aggregations.SUM));
+        pivoter.pivot(dataRows, List.of("eyes", "hair"));
+
+        // when
+        PivotTableCursor cursor = pivoter.cursor(Aggregations.SUM);
+        List<String> rows = new ArrayList<>();
+        while (cursor.next())
+            rows.add(cursor.getLabels() + " " + cursor.getValue());
+
+        // then
+        assertThat(rows).containsExactly(
+                "[blue, dark] 20.0", "[blue] 20.0", "[brown, dark] 10.0", "[brown] 10.0", "[] 30.0");
+    }
+
+    @Test
+    void testQueryCache_answersRepeatedQueriesWithoutScanningValuesAgain() {
+        // given
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("eyes", "brown", "hair", "dark", "#", "10.0"),
+                Map.of("eyes", "blue", "hair", "dark", "#", "20.0")
+        );
+        pivoter.setQueryCacheSize(10);
+        pivoter.pivot(dataRows, List.of("eyes", "hair"));
+        AtomicInteger scans = new AtomicInteger();
+        Function<Collection<Double>, Double> sum = values -> {
+            scans.incrementAndGet();
+            return values.stream().mapToDouble(Double::doubleValue).sum();
+        };
+
+        // when
+        Double first = pivoter.query(List.of("blue"), sum);
+        Double second = pivoter.query(List.of("blue"), sum);
+        Double mean = pivoter.query(List.of("blue"), Aggregations.MEAN);
+        pivoter.query(List.of("blue"), Aggregations.MEAN);
+
+        // then
+        assertThat(first).isEqualTo(20.0);
+        assertThat(second).isEqualTo(20.0);
+        assertThat(mean).isEqualTo(20.0);
+        assertThat(scans.get()).isEqualTo(1);
+        QueryCache queryCache = pivoter.getQueryCache();
+        assertThat(queryCache.getHitCount()).isEqualTo(2L);
+        assertThat(queryCache.getMissCount()).isEqualTo(2L);
+        assertThat(queryCache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void testQueryCache_invalidatesOnlyTheNodesChangedByAnAppend() {
+        // given
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("eyes", "brown", "hair", "dark", "#", "10.0"),
+                Map.of("eyes", "blue", "hair", "dark", "#", "20.0")
+        );
+        pivoter.setQueryCacheSize(10);
+        pivoter.pivot(dataRows, List.of("eyes", "hair"));
+        pivoter.query(List.of("blue"), Aggregations.MEAN);
+        pivoter.query(List.of("brown"), Aggregations.MEAN);
+        pivoter.query(List.of(), Aggregations.MEAN);
+
+        // when
+        pivoter.append(List.of(Map.of("eyes", "blue", "hair", "blonde", "#", "40.0")));
+
+        // then
+        QueryCache queryCache = pivoter.getQueryCache();
+        assertThat(queryCache.getInvalidationCount()).isEqualTo(2L); // root and blue
+        assertThat(pivoter.query(List.of("blue"), Aggregations.MEAN)).isEqualTo(30.0);
+        assertThat(pivoter.query(List.of(), Aggregations.MEAN)).isEqualTo(70.0 / 3);
+        long hits = queryCache.getHitCount();
+        assertThat(pivoter.query(List.of("brown"), Aggregations.MEAN)).isEqualTo(10.0);
+        assertThat(queryCache.getHitCount()).isEqualTo(hits + 1); // kept although its node was copied
+    }
+
+    @Test
+    void testQueryCache_evictsTheLeastRecentlyUsedResultsAndIsClearedByARebuild() {
+        // given
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("eyes", "brown", "hair", "dark", "#", "10.0"),
+                Map.of("eyes", "blue", "hair", "dark", "#", "20.0")
+        );
+        pivoter.setQueryCacheSize(2);
+        pivoter.pivot(dataRows, List.of("eyes", "hair"));
+
+        // when
+        pivoter.query(List.of("blue"), Aggregations.MEAN);
+        pivoter.query(List.of("brown"), Aggregations.MEAN);
+        pivoter.query(List.of("blue"), Aggregations.MEAN);
+        pivoter.query(List.of(), Aggregations.MEAN); // evicts brown
+
+        // then
+        QueryCache queryCache = pivoter.getQueryCache();
+        assertThat(queryCache.getEvictionCount()).isEqualTo(1L);
+        long misses = queryCache.getMissCount();
+        pivoter.query(List.of("blue"), Aggregations.MEAN);
+        pivoter.query(List.of("brown"), Aggregations.MEAN);
+        assertThat(queryCache.getMissCount()).isEqualTo(misses + 1);
+
+        pivoter.pivot(dataRows, List.of("eyes", "hair"));
+        assertThat(queryCache.size()).isEqualTo(0);
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> pivoter.setQueryCacheSize(-1));
+    }
+
+    @Test
+    void testLazyAggregation_memoizesResultsUntilTheRowsOfTheirNodesChange() {
+        // given
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("eyes", "brown", "hair", "dark", "#", "10.0"),
+                Map.of("eyes", "blue", "hair", "dark", "#", "20.0"),
+                Map.of("eyes", "blue", "hair", "blonde", "#", "30.0")
+        );
+        pivoter.setLazyAggregation(true);
+        pivoter.pivot(dataRows);
+        AtomicInteger scans = new AtomicInteger();
+        Function<Collection<Double>, Double> mode = values -> {
+            scans.incrementAndGet();
+            return PivoterUtils.mode(values);
+        };
+
+        // when
+        Double rootMean = pivoter.query(List.of(), Aggregations.MEAN); // memoizes the whole tree
+        Double blueMean = pivoter.query(List.of("blue"), Aggregations.MEAN);
+        pivoter.query(List.of("brown"), mode);
+        pivoter.query(List.of("brown"), mode);
+        pivoter.append(List.of(Map.of("eyes", "blue", "hair", "dark", "#", "70.0")));
+
+        // then
+        assertThat(rootMean).isEqualTo(20.0);
+        assertThat(blueMean).isEqualTo(25.0);
+        assertThat(scans.get()).isEqualTo(1);
+        assertThat(pivoter.query(List.of("blue"), Aggregations.MEAN)).isEqualTo(40.0);
+        assertThat(pivoter.query(List.of("blue", "dark"), Aggregations.MEAN)).isEqualTo(45.0);
+        assertThat(pivoter.query(List.of(), Aggregations.MEAN)).isEqualTo(32.5);
+        assertThat(pivoter.query(List.of("brown"), mode)).isEqualTo(10.0);
+        assertThat(scans.get()).isEqualTo(1); // unchanged by the append
+    }
+
+    @Test
+    void testLazyAggregation_evictsTheLeastRecentlyUsedResultsOfANode() {
+        // given
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("eyes", "brown", "hair", "dark", "#", "10.0"),
+                Map.of("eyes", "blue", "hair", "dark", "#", "20.0")
+        );
+        pivoter.setLazyAggregation(true);
+        pivoter.pivot(dataRows);
+        AtomicInteger scans = new AtomicInteger();
+        Function<Collection<Double>, Double> sum = values -> {
+            scans.incrementAndGet();
+            return PivoterUtils.sum(values);
+        };
+
+        // when
+        for (int query = 0; query < 20; query++) {
+            pivoter.query(List.of(), sum);
+            double offset = query;
+            pivoter.query(List.of(), values -> PivoterUtils.sum(values) + offset); // a new lambda per query
+        }
+
+        // then
+        assertThat(scans.get()).isEqualTo(1);
+        assertThat(pivoter.getStats().getMemoizedResultCount()).isEqualTo(8L);
+        assertThat(pivoter.getStats().getMemoEvictionCount()).isEqualTo(13L);
+    }
+
+    @Test
+    void testListener_collectsRowsPhasesAndQueryLatencies() {
+        // given
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("eyes", "brown", "hair", "dark", "#", "10.0"),
+                Map.of("eyes", "blue", "hair", "dark", "#", "20.0")
+        );
+        PivoterStats stats = new PivoterStats();
+        pivoter.setListener(stats);
+
+        // when
+        pivoter.pivot(dataRows);
+        pivoter.append(List.of(Map.of("eyes", "blue", "hair", "blonde", "#", "30.0")));
+        pivoter.retract(List.of(Map.of("eyes", "brown", "hair", "dark", "#", "10.0")));
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> pivoter.append(List.of(Map.of("eyes", "blue", "hair", "dark", "#", "x"))));
+        pivoter.query(List.of("blue"), Aggregations.SUM);
+        pivoter.queryBatch(List.of(List.of("blue"), List.of()), Aggregations.SUM);
+
+        // then
+        assertThat(stats.getIngestedRowCount()).isEqualTo(3L);
+        assertThat(stats.getRetractedRowCount()).isEqualTo(1L);
+        assertThat(stats.getRejectedRowCount()).isEqualTo(1L);
+        assertThat(stats.getPhaseNanos(PivotListener.BuildPhase.VALIDATE_AND_CONVERT)).isGreaterThan(0L);
+        assertThat(stats.getQueryLatencies().getCount()).isEqualTo(2L);
+        assertThat(stats.getQueryLatencies().getPercentile(100)).isGreaterThan(0L);
+    }
+
+    @Test
+    void testGetStats_describesTheCurrentTree() {
+        // given
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("eyes", "brown", "hair", "dark", "#", "10.0"),
+                Map.of("eyes", "blue", "hair", "dark", "#", "20.0"),
+                Map.of("eyes", "blue", "hair", "blonde", "#", "30.0")
+        );
+        pivoter.pivot(dataRows);
+
+        // when
+        PivotTreeStats stats = pivoter.getStats();
+
+        // then
+        assertThat(stats.getRowCount()).isEqualTo(3L);
+        assertThat(stats.getNodeCountsPerLevel()).containsExactly(1L, 2L, 3L);
+        assertThat(stats.getNodeCount()).isEqualTo(6L);
+        assertThat(stats.getFanOutDistribution()).containsExactly(1L, 2L); // brown: 1 child; root and blue: 2
+        assertThat(stats.getMaxFanOut()).isEqualTo(2);
+        assertThat(stats.getLabelCount()).isEqualTo(4L);
+        assertThat(stats.getValueCount()).isEqualTo(3L);
+        assertThat(stats.getEstimatedBytes()).isGreaterThan(0L);
+    }
+
+    @Test
+    void testQueryTopAndBottom_rankTheChildrenOfANodeByAggregate() {
+        // given
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("eyes", "brown", "hair", "dark", "#", "10.0"),
+                Map.of("eyes", "blue", "hair", "dark", "#", "20.0"),
+                Map.of("eyes", "blue", "hair", "blonde", "#", "30.0"),
+                Map.of("eyes", "green", "hair", "red", "#", "40.0")
+        );
+        pivoter.setAggregations(List.of(Aggregations.SUM));
+        pivoter.setRetainValues(false);
+        pivoter.pivot(dataRows);
+
+        // when
+        Map<String, Double> top = pivoter.queryTop(List.of(), 2, Aggregations.SUM);
+        Map<String, Double> bottom = pivoter.queryBottom(List.of(), 5, Aggregations.SUM);
+        Map<String, Double> topOfBlue = pivoter.queryTop(List.of("blue"), 1, Aggregations.SUM);
+
+        // then
+        assertThat(new ArrayList<>(top.entrySet())).containsExactly(Map.entry("blue", 50.0), Map.entry("green", 40.0));
+        assertThat(new ArrayList<>(bottom.keySet())).containsExactly("brown", "green", "blue");
+        assertThat(topOfBlue).isEqualTo(Map.of("blonde", 30.0));
+        assertThat(pivoter.queryTop(List.of("purple"), 3, Aggregations.SUM)).isEqualTo(Map.of());
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> pivoter.queryTop(List.of(), -1, Aggregations.SUM));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> pivoter.queryTop(List.of(), 1, Aggregations.MEAN));
+    }
+
+    @Test
+    void testQueryTopAndBottom_orderEqualAggregatesByLabel() {
+        // given
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("eyes", "green", "hair", "dark", "#", "10.0"),
+                Map.of("eyes", "blue", "hair", "dark", "#", "10.0"),
+                Map.of("eyes", "brown", "hair", "dark", "#", "10.0"),
+                Map.of("eyes", "grey", "hair", "dark", "#", "5.0")
+        );
+        pivoter.setAggregations(List.of(Aggregations.SUM));
+        pivoter.pivot(dataRows);
+
+        // when
+        Map<String, Double> top = pivoter.queryTop(List.of(), 2, Aggregations.SUM);
+        Map<String, Double> bottom = pivoter.queryBottom(List.of(), 3, Aggregations.SUM);
+
+        // then
+        assertThat(new ArrayList<>(top.keySet())).containsExactly("blue", "brown");
+        assertThat(new ArrayList<>(bottom.keySet())).containsExactly("grey", "blue", "brown");
+        assertThat(pivoter.queryTop(List.of(), 0, Aggregations.SUM)).isEqualTo(Map.of());
+    }
+
+    @Test
+    void testQueryTop_reflectsAppendedRows() {
+        // given
+        List<Map<String, String>> dataRows = Arrays.asList(
+                Map.of("eyes", "brown", "hair", "dark", "#", "10.0"),
+                Map.of("eyes", "blue", "hair", "dark", "#", "20.0")
+        );
+        pivoter.pivot(dataRows);
+        assertThat(new ArrayList<>(pivoter.queryTop(List.of(), 1, Aggregations.MEAN).keySet())).containsExactly("blue");
+
+        // when
+        pivoter.append(List.of(Map.of("eyes", "brown", "hair", "blonde", "#", "50.0")));
+
+        // then
+        assertThat(pivoter.queryTop(List.of(), 1, Aggregations.MEAN)).isEqualTo(Map.of("brown", 30.0));
+    }
 }
@@ -0,0 +1,131 @@
+package org.pivoter.aggregation;
+
+import org.junit.jupiter.api.Test;
+import org.pivoter.utils.DoubleValues;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.within;
+
+class AggregationsTest {
+
+    private final List<Double> values = List.of(4.0, 8.0, 15.0, 16.0, 23.0, 42.0);
+
+    @Test
+    void testBuiltInAggregations() {
+        // given-when-then
+        assertThat(accumulate(Aggregations.SUM, values).result()).isEqualTo(108.0);
+        assertThat(accumulate(Aggregations.COUNT, values).result()).isEqualTo(6.0);
+        assertThat(accumulate(Aggregations.MIN, values).result()).isEqualTo(4.0);
+        assertThat(accumulate(Aggregations.MAX, values).result()).isEqualTo(42.0);
+        assertThat(accumulate(Aggregations.MEAN, values).result()).isEqualTo(18.0);
+        assertThat(accumulate(Aggregations.VARIANCE, values).result()).isCloseTo(910.0 / 6, within(1e-9));
+    }
+
+    @Test
+    void testEmptyAccumulators() {
+        // given-when-then
+        assertThat(Aggregations.SUM.newAccumulator().result()).isEqualTo(0.0);
+        assertThat(Aggregations.COUNT.newAccumulator().result()).isEqualTo(0.0);
+        assertThat(Aggregations.MIN.newAccumulator().result()).isNaN();
+        assertThat(Aggregations.MAX.newAccumulator().result()).isNaN();
+        assertThat(Aggregations.MEAN.newAccumulator().result()).isNaN();
+        assertThat(Aggregations.VARIANCE.newAccumulator().result()).isNaN();
+    }
+
+    @Test
+    void testMerge_isEquivalentToAccumulatingAllValues() {
+        for (Aggregation aggregation : Aggregations.all()) {
+            // given
+            Accumulator left = accumulate(aggregation, values.subList(0, 2));
+            Accumulator right = accumulate(aggregation, values.subList(2, values.size()));
+
+            // when
+            left.merge(right);
+
+            // then
+            assertThat(left.result()).isCloseTo(accumulate(aggregation, values).result(), within(1e-9));
+        }
+    }
+
+    @Test
+    void testAddAll_isEquivalentToAddingEachValue() {
+        // given
+        double[] array = {4.0, 8.0, 15.0, 16.0, 23.0, 42.0, -7.0, 108.0, 0.5};
+        DoubleValues doubles = DoubleValues.of(array, 0, array.length);
+
+        for (Aggregation aggregation : Aggregations.all()) {
+            // when
+            Accumulator accumulator = accumulate(aggregation, List.of(1.0));
+            accumulator.addAll(doubles);
+
+            // then
+            Accumulator expected = accumulate(aggregation, List.of(1.0));
+            for (double value : array)
+                expected.add(value);
+            assertThat(accumulator.result()).isEqualTo(expected.result());
+        }
+    }
+
+    @Test
+    void testMerge_throwsIfAccumulatorsAreOfDifferentKind() {
+        // given
+        Accumulator sum = Aggregations.SUM.newAccumulator();
+        Accumulator count = Aggregations.COUNT.newAccumulator();
+
+        // when-then
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> sum.merge(count))
+                .withMessageContaining("Cannot merge");
+    }
+
+    @Test
+    void testCopy_isIndependent() {
+        // given
+        Accumulator sum = accumulate(Aggregations.SUM, values);
+
+        // when
+        Accumulator copy = sum.copy();
+        copy.add(100.0);
+
+        // then
+        assertThat(sum.result()).isEqualTo(108.0);
+        assertThat(copy.result()).isEqualTo(208.0);
+    }
+
+    @Test
+    void testRemove_isTheInverseOfAddForRemovableAggregations() {
+        for (Aggregation aggregation : List.of(Aggregations.SUM, Aggregations.COUNT, Aggregations.MEAN, Aggregations.VARIANCE)) {
+            // given
+            Accumulator accumulator = accumulate(aggregation, values);
+
+            // when
+            accumulator.remove(42.0);
+            accumulator.remove(4.0);
+
+            // then
+            assertThat(accumulator.isRemovable()).isTrue();
+            assertThat(accumulator.result()).isCloseTo(accumulate(aggregation, values.subList(1, 5)).result(), within(1e-9));
+        }
+    }
+
+    @Test
+    void testRemove_throwsForMinAndMax() {
+        // given
+        Accumulator min = accumulate(Aggregations.MIN, values);
+
+        // when-then
+        assertThat(min.isRemovable()).isFalse();
+        assertThatExceptionOfType(UnsupportedOperationException.class)
+                .isThrownBy(() -> min.remove(4.0));
+    }
+
+    private Accumulator accumulate(Aggregation aggregation, List<Double> values) {
+        Accumulator accumulator = aggregation.newAccumulator();
+        for (Double value : values)
+            accumulator.add(value);
+        return accumulator;
+    }
+}
@@ -0,0 +1,138 @@
+package org.pivoter.aggregation;
+
+import org.junit.jupiter.api.Test;
+import org.pivoter.Pivoter;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.within;
+
+class SketchesTest {
+
+    @Test
+    void testQuantile_isWithinItsRankErrorWhenMergedFromPartialSketches() {
+        // given
+        List<Double> values = shuffledRange(100_000);
+        Aggregation median = Sketches.median();
+        Aggregation p95 = Sketches.quantile(0.95);
+
+        // when
+        Accumulator medianSketch = mergeOfPartials(median, values, 10);
+        Accumulator p95Sketch = mergeOfPartials(p95, values, 10);
+
+        // then, values being their own ranks
+        assertThat(Math.abs(medianSketch.result() - 50_000) / 100_000).isLessThan(0.02);
+        assertThat(Math.abs(p95Sketch.result() - 95_000) / 100_000).isLessThan(0.02);
+        assertThat(((QuantileAccumulator) p95Sketch).retainedSize()).isLessThan(4 * Sketches.DEFAULT_QUANTILE_K);
+        assertThat(accumulate(Sketches.quantile(1), values).result()).isGreaterThan(98_000.0);
+        assertThat(accumulate(Sketches.quantile(0), values).result()).isLessThan(2_000.0);
+    }
+
+    @Test
+    void testDistinctCount_isExactForFewValuesAndWithinItsErrorForMany() {
+        // given
+        List<Double> fewValues = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            fewValues.add((double) (i % 100));
+        List<Double> manyValues = shuffledRange(200_000);
+
+        // when
+        Accumulator few = accumulate(Sketches.distinctCount(), fewValues);
+        Accumulator many = mergeOfPartials(Sketches.distinctCount(), manyValues, 8);
+
+        // then
+        assertThat(few.result()).isEqualTo(100.0);
+        assertThat(Math.abs(many.result() - 200_000) / 200_000).isLessThan(0.05); // 3 standard errors
+    }
+
+    @Test
+    void testEstimatedBytes_accountsForTheArraysOfTheSketches() {
+        // given
+        List<Double> values = shuffledRange(100_000);
+
+        // when
+        Accumulator sum = accumulate(Aggregations.SUM, values);
+        Accumulator quantile = accumulate(Sketches.median(), values);
+        Accumulator distinctCount = accumulate(Sketches.distinctCount(), values);
+        Accumulator mode = accumulate(Sketches.mode(), values);
+
+        // then
+        assertThat(sum.getEstimatedBytes()).isEqualTo(32L);
+        assertThat(quantile.getEstimatedBytes()).isGreaterThan(8L * ((QuantileAccumulator) quantile).retainedSize());
+        assertThat(distinctCount.getEstimatedBytes()).isGreaterThan(1L << Sketches.DEFAULT_DISTINCT_COUNT_PRECISION);
+        assertThat(mode.getEstimatedBytes()).isGreaterThan(16L * Sketches.DEFAULT_MODE_COUNTERS);
+    }
+
+    @Test
+    void testMode_findsAFrequentValueAmongManyRareOnes() {
+        // given
+        List<Double> values = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++)
+            values.add(i % 10 == 0 ? 7.5 : (double) (i % 5000));
+        Collections.shuffle(values, new Random(42));
+
+        // when
+        Accumulator mode = mergeOfPartials(Sketches.mode(), values, 5);
+
+        // then
+        assertThat(mode.result()).isEqualTo(7.5);
+        assertThat(accumulate(Sketches.mode(), List.of(3.0, 1.0, 3.0, 1.0)).result()).isEqualTo(1.0);
+        assertThat(Sketches.mode().newAccumulator().result()).isNaN();
+    }
+
+    @Test
+    void testSketches_areMaintainedByATreeThatDoesNotRetainValues() {
+        // given
+        List<Map<String, String>> dataRows = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++)
+            dataRows.add(Map.of("eyes", i % 2 == 0 ? "blue" : "brown", "#", i % 4 == 1 ? "1" : Integer.toString(i)));
+        Pivoter pivoter = new Pivoter();
+        pivoter.setAggregations(List.of(Sketches.median(), Sketches.distinctCount(), Sketches.mode()));
+        pivoter.setRetainValues(false);
+
+        // when
+        pivoter.pivot(dataRows);
+
+        // then, parameterized aggregations being equal to the maintained ones
+        assertThat(pivoter.query(List.of("blue"), Sketches.median())).isCloseTo(500.0, within(20.0));
+        assertThat(pivoter.query(List.of("blue"), Sketches.distinctCount())).isCloseTo(500.0, within(25.0));
+        assertThat(pivoter.query(List.of("brown"), Sketches.mode())).isEqualTo(1.0);
+    }
+
+    @Test
+    void testSketches_rejectInvalidParametersAndMismatchedMerges() {
+        // given-when-then
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> Sketches.quantile(1.5));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> Sketches.distinctCount(20));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> Sketches.mode(1));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                Sketches.quantile(0.5, 100).newAccumulator().merge(Sketches.quantile(0.5, 200).newAccumulator()));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+                Sketches.distinctCount().newAccumulator().merge(Sketches.mode().newAccumulator()));
+    }
+
+    private static List<Double> shuffledRange(int size) {
+        List<Double> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            values.add((double) i);
+        Collections.shuffle(values, new Random(42));
+        return values;
+    }
+
+    private static Accumulator accumulate(Aggregation aggregation, List<Double> values) {
+        Accumulator accumulator = aggregation.newAccumulator();
+        values.forEach(accumulator::add);
+        return accumulator;
+    }
+
+    // accumulates the values in partial sketches, as the subtrees of a node, and merges them
+    private static Accumulator mergeOfPartials(Aggregation aggregation, List<Double> values, int partials) {
+        Accumulator merged = aggregation.newAccumulator();
+        int partialSize = values.size() / partials;
+        for (int partial = 0; partial < partials; partial++)
+            merged.merge(accumulate(aggregation, values.subList(partial * partialSize, (partial + 1) * partialSize)));
+        return merged;
+    }
+}
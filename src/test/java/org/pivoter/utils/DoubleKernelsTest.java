@@ -0,0 +1,143 @@
+package org.pivoter.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.within;
+
+class DoubleKernelsTest {
+
+    private final double[] values = randomValues(10_000);
+
+    @Test
+    void testKernels_matchSequentialLoopsOnAnyRange() {
+        for (int[] range : List.of(new int[]{3, 4}, new int[]{1, 7}, new int[]{5, 300}, new int[]{0, values.length})) {
+            // given
+            int from = range[0], to = range[1];
+            double sum = 0.0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                sum += values[i];
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
+            }
+
+            // when-then
+            assertThat(DoubleKernels.sum(values, from, to)).isCloseTo(sum, within(1e-6));
+            assertThat(DoubleKernels.compensatedSum(values, from, to)).isCloseTo(sum, within(1e-6));
+            assertThat(DoubleKernels.mean(values, from, to)).isCloseTo(sum / (to - from), within(1e-6));
+            assertThat(DoubleKernels.min(values, from, to)).isEqualTo(min);
+            assertThat(DoubleKernels.max(values, from, to)).isEqualTo(max);
+        }
+    }
+
+    @Test
+    void testKernels_onAnEmptyRange() {
+        // when-then
+        assertThat(DoubleKernels.sum(values, 5, 5)).isEqualTo(0.0);
+        assertThat(DoubleKernels.compensatedSum(values, 5, 5)).isEqualTo(0.0);
+        assertThat(DoubleKernels.mean(values, 5, 5)).isNaN();
+        assertThat(DoubleKernels.min(values, 5, 5)).isNaN();
+        assertThat(DoubleKernels.max(values, 5, 5)).isNaN();
+    }
+
+    @Test
+    void testSum_isMoreAccurateThanSequentialSummation() {
+        // given
+        double[] tenths = new double[1_000_000];
+        Arrays.fill(tenths, 0.1);
+        double sequential = 0.0;
+        for (double value : tenths)
+            sequential += value;
+
+        // when
+        double pairwise = DoubleKernels.sum(tenths, 0, tenths.length);
+        double compensated = DoubleKernels.compensatedSum(tenths, 0, tenths.length);
+
+        // then
+        assertThat(Math.abs(pairwise - 100_000)).isLessThan(Math.abs(sequential - 100_000));
+        assertThat(compensated).isEqualTo(100_000.0);
+    }
+
+    @Test
+    void testCompensatedSum_recoversValuesLostToCancellation() {
+        // given
+        double[] values = {1e16, 1.0, -1e16};
+
+        // when-then
+        assertThat(DoubleKernels.sum(values, 0, values.length)).isEqualTo(0.0);
+        assertThat(DoubleKernels.compensatedSum(values, 0, values.length)).isEqualTo(1.0);
+    }
+
+    @Test
+    void testMinAndMax_skipNaN() {
+        // given
+        double[] values = {Double.NaN, 3.0, Double.NaN, -2.0, Double.NaN, 7.0};
+        double[] infinities = {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN, Double.NaN};
+        double[] nans = {Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN};
+
+        // when-then
+        assertThat(DoubleKernels.min(values, 0, values.length)).isEqualTo(-2.0);
+        assertThat(DoubleKernels.max(values, 0, values.length)).isEqualTo(7.0);
+        assertThat(DoubleKernels.min(infinities, 1, 2)).isEqualTo(Double.POSITIVE_INFINITY);
+        assertThat(DoubleKernels.max(infinities, 2, 5)).isEqualTo(Double.NEGATIVE_INFINITY);
+        assertThat(DoubleKernels.min(nans, 0, nans.length)).isNaN();
+        assertThat(DoubleKernels.max(nans, 0, nans.length)).isNaN();
+    }
+
+    @Test
+    void testVectorKernels_matchScalarKernels() {
+        DoubleKernels.Vectorized vectorKernels = DoubleKernels.loadVectorized(); // the test JVM resolves the module
+        assertThat(vectorKernels).isNotNull();
+        for (int length : new int[]{0, 1, 7, 64, 1000, values.length}) {
+            // given
+            int from = Math.min(3, length);
+
+            // when-then
+            assertThat(vectorKernels.sum(values, from, length)).isCloseTo(DoubleKernels.scalarSum(values, from, length), within(1e-6));
+            assertThat(vectorKernels.min(values, from, length)).isEqualTo(DoubleKernels.scalarMin(values, from, length));
+            assertThat(vectorKernels.max(values, from, length)).isEqualTo(DoubleKernels.scalarMax(values, from, length));
+        }
+    }
+
+    @Test
+    void testKernels_throwIfRangeIsOutOfBounds() {
+        // when-then
+        assertThatExceptionOfType(IndexOutOfBoundsException.class)
+                .isThrownBy(() -> DoubleKernels.sum(values, 5, values.length + 1))
+                .withMessageContaining("out of bounds");
+        assertThatExceptionOfType(IndexOutOfBoundsException.class)
+                .isThrownBy(() -> DoubleKernels.min(values, 5, 4));
+    }
+
+    @Test
+    void testDoubleValues_aggregatesItsRange() {
+        // given
+        DoubleValues doubles = DoubleValues.of(new double[]{100.0, 1.0, 2.0, 3.0, 100.0}, 1, 4);
+
+        // when
+        DoubleValues tail = doubles.subList(1, 3);
+
+        // then
+        assertThat(doubles.sum()).isEqualTo(6.0);
+        assertThat(doubles.mean()).isEqualTo(2.0);
+        assertThat(doubles.max()).isEqualTo(3.0);
+        assertThat(tail).containsExactly(2.0, 3.0);
+        assertThat(tail.min()).isEqualTo(2.0);
+        assertThat(PivoterUtils.sum(tail)).isEqualTo(5.0);
+        assertThat(PivoterUtils.average(tail)).isEqualTo(2.5);
+        assertThat(PivoterUtils.compensatedSum(List.of(1e16, 1.0, -1e16))).isEqualTo(1.0);
+    }
+
+    private static double[] randomValues(int count) {
+        Random random = new Random(42);
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++)
+            values[i] = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(6));
+        return values;
+    }
+}
@@ -0,0 +1,60 @@
+package org.pivoter.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DoubleParserTest {
+
+    private final DoubleParser parser = new DoubleParser();
+
+    @Test
+    void testParse_roundTripsAgainstDoubleParseDouble() {
+        // given
+        Random random = new Random(42);
+        List<String> values = new ArrayList<>(List.of("0", "-0", "-0.0", "00012.3400", "1.", ".5", "-.5", "+7",
+                "1e22", "1e23", "9007199254740993", "123456789012345678901234.5", "4.9e-324", "1e-400", "1e400",
+                "1.7976931348623157e308", "NaN", "-Infinity", " 1.5 ", "0x1p3", "1d", "2f"));
+        for (int i = 0; i < 10_000; i++) {
+            double value = random.nextLong() / Math.pow(10, random.nextInt(25));
+            values.add(Double.toString(value));
+            values.add(String.format(Locale.ROOT, "%." + random.nextInt(20) + "f", value));
+            values.add(Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20)));
+        }
+
+        for (String value : values) {
+            // when
+            boolean parsed = parser.parse(value);
+
+            // then
+            assertThat(parsed).isTrue();
+            assertThat(Double.doubleToLongBits(parser.value())).isEqualTo(Double.doubleToLongBits(Double.parseDouble(value)));
+        }
+    }
+
+    @Test
+    void testParse_rejectsInvalidValuesWithoutThrowing() {
+        for (String value : List.of("", ".", "-", "1e", "1e+", "e5", "1.2.3", "N/A", "abc", "M", "12a", "1,5", "--1")) {
+            // when-then
+            assertThat(parser.parse(value)).isFalse();
+        }
+        assertThat(parser.parse((CharSequence) null)).isFalse();
+    }
+
+    @Test
+    void testParse_readsRangesOfCharactersAndBytes() {
+        // given
+        String line = "italy;dark;-12.75;x";
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+
+        // when-then
+        assertThat(parser.parse(line, 11, 17)).isTrue();
+        assertThat(parser.value()).isEqualTo(-12.75);
+        assertThat(parser.parse(bytes, 11, 17)).isTrue();
+        assertThat(parser.value()).isEqualTo(-12.75);
+        assertThat(parser.parse(bytes, 11, 19)).isFalse();
+    }
+}
@@ -0,0 +1,61 @@
+package org.pivoter.utils;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The {@link DoubleKernels} on the incubating Vector API, in its own source set so that only this class is
+ * compiled against the {@code jdk.incubator.vector} module, and only loaded by {@link DoubleKernels#loadVectorized()}
+ * so that the module is not required at run time otherwise.
+ */
+final class VectorKernels implements DoubleKernels.Vectorized {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    VectorKernels() {
+    }
+
+    @Override
+    public double sum(double[] values, int from, int to) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length())
+            sum = sum.add(DoubleVector.fromArray(SPECIES, values, i));
+        double result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++)
+            result += values[i];
+        return result;
+    }
+
+    @Override
+    public double min(double[] values, int from, int to) {
+        DoubleVector min = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            DoubleVector vector = DoubleVector.fromArray(SPECIES, values, i);
+            VectorMask<Double> smaller = vector.compare(VectorOperators.LT, min); // false for NaN, which is skipped
+            min = min.blend(vector, smaller);
+        }
+        double result = min.reduceLanes(VectorOperators.MIN);
+        for (; i < to; i++)
+            result = values[i] < result ? values[i] : result;
+        return result;
+    }
+
+    @Override
+    public double max(double[] values, int from, int to) {
+        DoubleVector max = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            DoubleVector vector = DoubleVector.fromArray(SPECIES, values, i);
+            VectorMask<Double> greater = vector.compare(VectorOperators.GT, max); // false for NaN, which is skipped
+            max = max.blend(vector, greater);
+        }
+        double result = max.reduceLanes(VectorOperators.MAX);
+        for (; i < to; i++)
+            result = values[i] > result ? values[i] : result;
+        return result;
+    }
+}